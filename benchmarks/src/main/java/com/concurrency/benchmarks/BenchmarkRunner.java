@@ -0,0 +1,66 @@
+package com.concurrency.benchmarks;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs the benchmarks once per thread count and writes one JSON file each.
+ *
+ * 📝 NOTE: Accepts every regular JMH option. Without -t it sweeps
+ * 1, 2, 4, ... up to the number of CPUs; results land in
+ * jmh-results/threads-N.json (change the directory with -Djmh.results=dir).
+ *
+ * 🔑 HINT:
+ *   mvn -pl benchmarks -am package -DskipTests
+ *   java -jar benchmarks/target/benchmarks.jar                      # everything
+ *   java -jar benchmarks/target/benchmarks.jar CacheBenchmark -p distribution=ZIPF
+ *   java -jar benchmarks/target/benchmarks.jar -t 8 -f 3            # no sweep
+ *
+ * 💡 THINK: Why one file per thread count?
+ *   Scaling is the point of a concurrent structure. Diffing threads-1.json
+ *   against threads-8.json shows how well it scales; diffing the same file
+ *   across two releases shows regressions.
+ */
+public final class BenchmarkRunner {
+
+    private BenchmarkRunner() {
+    }
+
+    public static void main(String[] args) throws RunnerException, CommandLineOptionException {
+        CommandLineOptions commandLine = new CommandLineOptions(args);
+        File resultDir = new File(System.getProperty("jmh.results", "jmh-results"));
+        if (!resultDir.isDirectory() && !resultDir.mkdirs()) {
+            throw new IllegalStateException("Cannot create " + resultDir);
+        }
+
+        List<Integer> threadCounts = new ArrayList<>();
+        if (commandLine.getThreads().hasValue()) {
+            threadCounts.add(commandLine.getThreads().get());
+        } else {
+            int cpus = Runtime.getRuntime().availableProcessors();
+            for (int threads = 1; threads < cpus; threads *= 2) {
+                threadCounts.add(threads);
+            }
+            threadCounts.add(cpus);
+        }
+
+        for (int threads : threadCounts) {
+            Options options = new OptionsBuilder()
+                .parent(commandLine)
+                .threads(threads)
+                .resultFormat(ResultFormatType.JSON)
+                .result(new File(resultDir, "threads-" + threads + ".json").getPath())
+                .build();
+            new Runner(options).run();
+        }
+    }
+}
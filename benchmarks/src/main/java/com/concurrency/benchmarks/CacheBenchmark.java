@@ -0,0 +1,170 @@
+package com.concurrency.benchmarks;
+
+import com.concurrency.labs.lab06.ReadWriteCache;
+import com.concurrency.problems.tier3.ConcurrentLRUCache;
+import com.concurrency.problems.tier3.TinyLfuAdmission;
+
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Throughput of the cache implementations under mixed get/put load.
+ *
+ * 📝 NOTE: Every combination of cache x distribution x read ratio is one
+ * JMH run. Thread count is NOT a @Param (JMH can't vary it that way) -
+ * BenchmarkRunner repeats the suite for 1..N threads, or pass -t.
+ *
+ * ⚠️ AVOID: Ranking rw-cache-unbounded with the others! ReadWriteCache has
+ * no capacity, so it ends up holding all KEY_SPACE keys and never misses or
+ * evicts - the LRU variants are capped at CAPACITY. It is a separate series:
+ * the upper bound of a single ReadWriteLock map doing no eviction work.
+ *
+ * ⚠️ AVOID: Comparing the absolute numbers across machines. Compare the JSON
+ * of two releases from the SAME machine, with the same thread counts.
+ *
+ * Run with: java -jar benchmarks/target/benchmarks.jar CacheBenchmark
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CacheBenchmark {
+
+    static final int CAPACITY = 10_000;
+    static final int KEY_SPACE = 50_000;
+
+    // Power of two so the per-thread index wraps with a mask
+    private static final int TRACE_LENGTH = 1 << 20;
+    private static final int TRACE_MASK = TRACE_LENGTH - 1;
+
+    /**
+     * The operations a benchmarked cache must support.
+     */
+    interface Cache {
+        Integer get(Integer key);
+
+        void put(Integer key, Integer value);
+    }
+
+    @Param({"lru", "lru-buffered", "lru-tinylfu", "rw-cache-unbounded"})
+    public String cache;
+
+    @Param({"ZIPF", "UNIFORM", "SCAN"})
+    public KeyDistribution distribution;
+
+    @Param({"95", "50"})
+    public int readPercent;
+
+    Cache target;
+
+    // Hands every thread a distinct seed
+    private final AtomicLong seeds = new AtomicLong(42);
+
+    @Setup(Level.Trial)
+    public void createCache() {
+        target = create(cache);
+        // Start warm: fill to capacity with keys from the same distribution
+        for (int key : distribution.trace(KEY_SPACE, CAPACITY * 2, 7)) {
+            target.put(key, key);
+        }
+    }
+
+    static Cache create(String name) {
+        int segments = 16;
+        switch (name) {
+            case "lru":
+                return adapt(new ConcurrentLRUCache<>(CAPACITY, segments));
+            case "lru-buffered":
+                return adapt(new ConcurrentLRUCache<>(CAPACITY, segments, true));
+            case "lru-tinylfu":
+                return adapt(new ConcurrentLRUCache<>(CAPACITY, segments, true, TinyLfuAdmission::new));
+            case "rw-cache-unbounded":
+                // No-eviction upper bound, not a like-for-like baseline (see class doc)
+                ReadWriteCache<Integer, Integer> rw = new ReadWriteCache<>();
+                return new Cache() {
+                    @Override
+                    public Integer get(Integer key) {
+                        return rw.get(key);
+                    }
+
+                    @Override
+                    public void put(Integer key, Integer value) {
+                        rw.put(key, value);
+                    }
+                };
+            default:
+                throw new IllegalArgumentException("Unknown cache: " + name);
+        }
+    }
+
+    private static Cache adapt(ConcurrentLRUCache<Integer, Integer> lru) {
+        return new Cache() {
+            @Override
+            public Integer get(Integer key) {
+                return lru.get(key);
+            }
+
+            @Override
+            public void put(Integer key, Integer value) {
+                lru.put(key, value);
+            }
+        };
+    }
+
+    /**
+     * Each thread's private trace of (boxed) keys and read/write decisions.
+     */
+    @State(Scope.Thread)
+    public static class Accesses {
+        Integer[] keys;
+        boolean[] reads;
+        int index;
+
+        @Setup(Level.Trial)
+        public void generate(CacheBenchmark benchmark) {
+            long seed = benchmark.seeds.getAndIncrement();
+            int[] trace = benchmark.distribution.trace(KEY_SPACE, TRACE_LENGTH, seed);
+            SplittableRandom random = new SplittableRandom(seed);
+            keys = new Integer[TRACE_LENGTH];
+            reads = new boolean[TRACE_LENGTH];
+            for (int i = 0; i < TRACE_LENGTH; i++) {
+                keys[i] = trace[i]; // Box once here, not in the measured loop
+                reads[i] = random.nextInt(100) < benchmark.readPercent;
+            }
+        }
+    }
+
+    /**
+     * One get() or put(); on a read miss the value is put back (cache-aside).
+     */
+    @Benchmark
+    public Integer access(Accesses accesses) {
+        int i = accesses.index++ & TRACE_MASK;
+        Integer key = accesses.keys[i];
+        if (accesses.reads[i]) {
+            Integer value = target.get(key);
+            if (value == null) {
+                target.put(key, key);
+            }
+            return value;
+        }
+        target.put(key, key);
+        return key;
+    }
+}
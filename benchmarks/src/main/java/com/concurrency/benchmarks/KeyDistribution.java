@@ -0,0 +1,93 @@
+package com.concurrency.benchmarks;
+
+import java.util.Arrays;
+import java.util.SplittableRandom;
+
+/**
+ * Key access patterns for cache benchmarks.
+ *
+ * 📝 NOTE: Traces are generated up front, in @Setup - a benchmark must not
+ * measure its own random number generator (or a Zipf binary search).
+ *
+ * 💡 THINK: Why three patterns?
+ *   - ZIPF:    a few keys are very hot (real traffic) - high hit rates,
+ *              contention on the hot keys' segments
+ *   - UNIFORM: every key equally likely - hit rate ~ capacity / key space
+ *   - SCAN:    one pass over all keys in order - the worst case for LRU,
+ *              nearly every access misses and evicts
+ */
+public enum KeyDistribution {
+
+    ZIPF {
+        @Override
+        int[] trace(int keySpace, int length, long seed) {
+            // CDF of P(rank k) ~ 1 / k^s, sampled by binary search
+            double[] cdf = new double[keySpace];
+            double sum = 0;
+            for (int k = 0; k < keySpace; k++) {
+                sum += 1.0 / Math.pow(k + 1, ZIPF_EXPONENT);
+                cdf[k] = sum;
+            }
+            // Scatter hot ranks over the key space so they don't share a segment.
+            // A shuffle is a bijection: every rank gets its own key. Its seed is
+            // fixed so that all threads agree on which keys are hot.
+            int[] keyOfRank = new int[keySpace];
+            for (int k = 0; k < keySpace; k++) {
+                keyOfRank[k] = k;
+            }
+            SplittableRandom shuffle = new SplittableRandom(RANK_SHUFFLE_SEED);
+            for (int k = keySpace - 1; k > 0; k--) {
+                int other = shuffle.nextInt(k + 1);
+                int key = keyOfRank[k];
+                keyOfRank[k] = keyOfRank[other];
+                keyOfRank[other] = key;
+            }
+            SplittableRandom random = new SplittableRandom(seed);
+            int[] trace = new int[length];
+            for (int i = 0; i < length; i++) {
+                int rank = Arrays.binarySearch(cdf, random.nextDouble() * sum);
+                rank = rank >= 0 ? rank : -rank - 1;
+                trace[i] = keyOfRank[rank];
+            }
+            return trace;
+        }
+    },
+
+    UNIFORM {
+        @Override
+        int[] trace(int keySpace, int length, long seed) {
+            SplittableRandom random = new SplittableRandom(seed);
+            int[] trace = new int[length];
+            for (int i = 0; i < length; i++) {
+                trace[i] = random.nextInt(keySpace);
+            }
+            return trace;
+        }
+    },
+
+    SCAN {
+        @Override
+        int[] trace(int keySpace, int length, long seed) {
+            // Each thread starts at a different offset, then walks in order
+            int start = new SplittableRandom(seed).nextInt(keySpace);
+            int[] trace = new int[length];
+            for (int i = 0; i < length; i++) {
+                trace[i] = (start + i) % keySpace;
+            }
+            return trace;
+        }
+    };
+
+    /** Skew used by YCSB and most cache papers. */
+    static final double ZIPF_EXPONENT = 0.99;
+
+    /** Shared by every thread's ZIPF trace, unlike the per-thread seed. */
+    static final long RANK_SHUFFLE_SEED = 0x5EEDL;
+
+    /**
+     * @param keySpace keys are drawn from [0, keySpace)
+     * @param length number of accesses
+     * @param seed per-thread seed, so threads don't replay identical traces
+     */
+    abstract int[] trace(int keySpace, int length, long seed);
+}
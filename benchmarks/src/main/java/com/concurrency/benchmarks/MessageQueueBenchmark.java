@@ -0,0 +1,162 @@
+package com.concurrency.benchmarks;
+
+import com.concurrency.problems.tier3.ConcurrentMessageQueue;
+import com.concurrency.problems.tier3.QueueMetrics;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Throughput of ConcurrentMessageQueue with P producers and C consumers
+ * doing send → receive → acknowledge.
+ *
+ * 📝 NOTE: Producers and consumers are one JMH group sharing one queue.
+ * Choose the mix with -tg P,C (default 1,1); -t N runs N / (P + C) copies
+ * of the group against the same queue. The score that matters is the
+ * "received" counter: messages that made it all the way through per µs.
+ * "sent" minus "received" is backlog that built up.
+ *
+ * 💡 THINK: Why cap the backlog? With more producers than consumers the
+ * queue would just grow until the heap is full - and then we'd measure the
+ * garbage collector. Producers skip a send while the queue holds more
+ * than MAX_BACKLOG messages.
+ *
+ * 📝 NOTE: With -p metrics=true a QueueMetrics listener is installed and
+ * its send→receive and receive→ack percentiles are printed after each
+ * trial. Compare against metrics=false for what the recording costs.
+ *
+ * Run with: java -jar benchmarks/target/benchmarks.jar MessageQueueBenchmark -tg 4,4
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MessageQueueBenchmark {
+
+    static final int MAX_BACKLOG = 100_000;
+
+    // Long enough that no message is redelivered during a run
+    private static final int VISIBILITY_TIMEOUT_MS = 60_000;
+
+    // How often a producer looks at the queue depth
+    private static final int BACKLOG_CHECK_MASK = 63;
+
+    @Param({"1", "32"})
+    public int batchSize;
+
+    @Param({"false", "true"})
+    public boolean metrics;
+
+    ConcurrentMessageQueue<Integer> queue;
+    QueueMetrics queueMetrics;
+
+    @Setup(Level.Trial)
+    public void createQueue() {
+        queue = new ConcurrentMessageQueue<>(VISIBILITY_TIMEOUT_MS, 3);
+        if (metrics) {
+            queueMetrics = new QueueMetrics();
+            queue.setMetricsListener(queueMetrics);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void report() {
+        if (queueMetrics != null) {
+            System.out.println();
+            System.out.println(queueMetrics.report(queue));
+        }
+    }
+
+    /**
+     * A producer's batch (boxed once) and its count of messages sent.
+     */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    public static class Producer {
+        public long sent;
+
+        List<Integer> bodies;
+        int calls;
+        boolean throttled;
+
+        @Setup(Level.Trial)
+        public void prepare(MessageQueueBenchmark benchmark) {
+            bodies = new ArrayList<>(Collections.nCopies(benchmark.batchSize, 42));
+        }
+    }
+
+    /**
+     * A consumer's count of messages received and acknowledged.
+     */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    public static class Consumer {
+        public long received;
+
+        List<String> handles;
+
+        @Setup(Level.Trial)
+        public void prepare(MessageQueueBenchmark benchmark) {
+            handles = new ArrayList<>(benchmark.batchSize);
+        }
+    }
+
+    @Benchmark
+    @Group("sendReceiveAck")
+    @GroupThreads(1)
+    public void produce(Producer producer) {
+        if ((producer.calls++ & BACKLOG_CHECK_MASK) == 0) {
+            producer.throttled = queue.getApproximateMessageCount() > MAX_BACKLOG;
+        }
+        if (producer.throttled) {
+            Thread.onSpinWait();
+            return;
+        }
+        if (batchSize == 1) {
+            queue.send(producer.bodies.get(0));
+            producer.sent++;
+        } else {
+            producer.sent += queue.sendBatch(producer.bodies).size();
+        }
+    }
+
+    @Benchmark
+    @Group("sendReceiveAck")
+    @GroupThreads(1)
+    public void consume(Consumer consumer) throws InterruptedException {
+        if (batchSize == 1) {
+            ConcurrentMessageQueue.Message<Integer> message = queue.receive();
+            if (message != null && queue.acknowledge(message.getReceiptHandle())) {
+                consumer.received++;
+            }
+            return;
+        }
+        List<ConcurrentMessageQueue.Message<Integer>> messages = queue.receiveBatch(batchSize, 0);
+        consumer.handles.clear();
+        for (ConcurrentMessageQueue.Message<Integer> message : messages) {
+            consumer.handles.add(message.getReceiptHandle());
+        }
+        consumer.received += queue.acknowledgeBatch(consumer.handles);
+    }
+}
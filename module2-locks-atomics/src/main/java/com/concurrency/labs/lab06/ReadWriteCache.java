@@ -2,8 +2,12 @@ package com.concurrency.labs.lab06;
 
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.locks.ReadWriteLock;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Function;
 
 /**
  * Lab 06: ReadWriteLock for Read-Heavy Cache
@@ -34,6 +38,9 @@ public class ReadWriteCache<K, V> {
     // 🔑 HINT: ReentrantReadWriteLock() or ReentrantReadWriteLock(true) for fair
     private final ReadWriteLock rwLock = new ReentrantReadWriteLock();
     
+    // One future per key currently being loaded by getOrLoad()
+    private final ConcurrentHashMap<K, CompletableFuture<V>> inFlight = new ConcurrentHashMap<>();
+    
     /**
      * TODO: Get a value from the cache (read operation).
      * 
@@ -79,6 +86,7 @@ public class ReadWriteCache<K, V> {
      * 💡 THINK: How would you implement this correctly?
      *   Option 1: Use write lock for entire operation (simple but blocks readers)
      *   Option 2: Use ConcurrentHashMap.computeIfAbsent() (better!)
+     *   Option 3: Load outside any lock, coalescing concurrent misses - see getOrLoad()
      */
     public V getOrCompute(K key, java.util.function.Function<K, V> compute) {
         // TODO: Implement correctly - this is tricky!
@@ -86,6 +94,66 @@ public class ReadWriteCache<K, V> {
         return null;
     }
     
+    /**
+     * "Get or load" WITHOUT holding any lock while loading, and with at most
+     * one load per key in flight (single-flight / request coalescing).
+     * 
+     * 📝 NOTE: Computing under the write lock (Option 1 above) blocks ALL
+     * readers for as long as the loader runs - and when 100 threads miss on
+     * the same key, they still load it one after another!
+     * 
+     * 💡 THINK: The first thread to miss registers a CompletableFuture;
+     * everyone else who misses on that key waits on it:
+     *   1. Read lock: hit? return it
+     *   2. inFlight.putIfAbsent(key, myFuture) - lost? wait on the winner's future
+     *   3. Won: load with NO lock held, put() (brief write lock), complete future
+     * 
+     * ⚠️ AVOID: Forgetting to remove the future in finally - a failed load
+     * would otherwise poison the key forever.
+     */
+    public V getOrLoad(K key, Function<? super K, ? extends V> loader) {
+        V value = get(key);
+        if (value != null) {
+            return value;
+        }
+        
+        CompletableFuture<V> future = new CompletableFuture<>();
+        CompletableFuture<V> inProgress = inFlight.putIfAbsent(key, future);
+        if (inProgress != null) {
+            try {
+                return inProgress.join();
+            } catch (CompletionException e) {
+                // Rethrow what the loader threw, as the loading thread saw it
+                Throwable cause = e.getCause();
+                if (cause instanceof RuntimeException) {
+                    throw (RuntimeException) cause;
+                }
+                if (cause instanceof Error) {
+                    throw (Error) cause;
+                }
+                throw e;
+            }
+        }
+        
+        try {
+            // The previous loader may have finished right after our get()
+            V loaded = get(key);
+            if (loaded == null) {
+                loaded = loader.apply(key);
+                if (loaded != null) {
+                    put(key, loaded);
+                }
+            }
+            future.complete(loaded);
+            return loaded;
+        } catch (RuntimeException | Error e) {
+            future.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlight.remove(key, future);
+        }
+    }
+    
     public int size() {
         rwLock.readLock().lock();
         try {
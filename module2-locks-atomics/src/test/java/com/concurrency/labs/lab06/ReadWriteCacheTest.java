@@ -0,0 +1,126 @@
+package com.concurrency.labs.lab06;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests for Lab 06: ReadWriteCache.getOrLoad
+ */
+class ReadWriteCacheTest {
+
+    @Test
+    @Timeout(5)
+    void testGetOrLoadCoalescesConcurrentMisses() throws InterruptedException {
+        ReadWriteCache<String, String> cache = new ReadWriteCache<>();
+        AtomicInteger loads = new AtomicInteger(0);
+        AtomicInteger correctResults = new AtomicInteger(0);
+        int threadCount = 10;
+        CountDownLatch start = new CountDownLatch(1);
+        CountDownLatch done = new CountDownLatch(threadCount);
+
+        for (int i = 0; i < threadCount; i++) {
+            new Thread(() -> {
+                try {
+                    start.await();
+                    String value = cache.getOrLoad("key", k -> {
+                        loads.incrementAndGet();
+                        try {
+                            Thread.sleep(200);
+                        } catch (InterruptedException e) {
+                            Thread.currentThread().interrupt();
+                        }
+                        return "loaded-" + k;
+                    });
+                    if ("loaded-key".equals(value)) {
+                        correctResults.incrementAndGet();
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } finally {
+                    done.countDown();
+                }
+            }).start();
+        }
+
+        start.countDown();
+        assertTrue(done.await(3, TimeUnit.SECONDS), "All callers should finish");
+        assertEquals(1, loads.get(), "Only one thread should run the loader");
+        assertEquals(threadCount, correctResults.get(), "Every caller should see the loaded value");
+    }
+
+    @Test
+    @Timeout(5)
+    void testReadersNotBlockedWhileLoading() throws InterruptedException {
+        ReadWriteCache<String, String> cache = new ReadWriteCache<>();
+        cache.put("other", "value");
+        CountDownLatch loaderStarted = new CountDownLatch(1);
+        CountDownLatch releaseLoader = new CountDownLatch(1);
+
+        Thread loader = new Thread(() -> cache.getOrLoad("slow", k -> {
+            loaderStarted.countDown();
+            try {
+                releaseLoader.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return "done";
+        }));
+        loader.start();
+
+        assertTrue(loaderStarted.await(1, TimeUnit.SECONDS));
+        assertEquals("value", cache.get("other"), "Readers must not wait for a slow loader");
+
+        releaseLoader.countDown();
+        loader.join(1000);
+        assertEquals("done", cache.get("slow"));
+    }
+
+    @Test
+    @Timeout(5)
+    void testWaitersSeeLoaderErrorUnwrapped() throws InterruptedException {
+        ReadWriteCache<String, String> cache = new ReadWriteCache<>();
+        CountDownLatch loaderStarted = new CountDownLatch(1);
+        CountDownLatch releaseLoader = new CountDownLatch(1);
+
+        Thread loader = new Thread(() -> {
+            try {
+                cache.getOrLoad("key", k -> {
+                    loaderStarted.countDown();
+                    try {
+                        releaseLoader.await();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                    throw new OutOfMemoryError("loader");
+                });
+            } catch (OutOfMemoryError expected) {
+                // The loading thread sees its own Error
+            }
+        });
+        loader.start();
+        assertTrue(loaderStarted.await(1, TimeUnit.SECONDS));
+
+        AtomicReference<Throwable> waiterSaw = new AtomicReference<>();
+        Thread waiter = new Thread(() -> {
+            try {
+                cache.getOrLoad("key", k -> "unused");
+            } catch (Throwable t) {
+                waiterSaw.set(t);
+            }
+        });
+        waiter.start();
+        Thread.sleep(100); // Let the waiter block on the loader's future
+        releaseLoader.countDown();
+        loader.join(1000);
+        waiter.join(1000);
+
+        assertTrue(waiterSaw.get() instanceof OutOfMemoryError,
+            "Waiters get the loader's Error, not a CompletionException: " + waiterSaw.get());
+    }
+}
@@ -0,0 +1,311 @@
+package com.concurrency.problems.tier3;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.DelayQueue;
+import java.util.concurrent.Delayed;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Hierarchical timing wheel whose BUCKETS sit in a DelayQueue (Kafka's SystemTimer).
+ *
+ * 📝 NOTE: How is this different from TimerWheel?
+ *   TimerWheel is passive - its owner advances the clock, e.g. on every
+ *   cache read. Here a thread must wake exactly when the next entry is due,
+ *   with nobody else calling in. Polling every tick would burn CPU while
+ *   idle, so each bucket that holds entries is put in a DelayQueue, keyed by
+ *   the start of its time span. The worker sleeps in take() until the next
+ *   bucket is due - the heap holds at most ONE item per wheel slot, however
+ *   many entries there are.
+ *
+ *   Level 0:  wheelSize buckets x tick
+ *   Level 1:  wheelSize buckets x (tick * wheelSize)    created on first use
+ *   Level n:  ... each level's whole span is one bucket of the next
+ *
+ *   - add()   = pick the level by "how far away", bucket by deadline: O(1),
+ *               plus one heap insert only if the bucket was empty
+ *   - remove() = unlink from the bucket's intrusive list: O(1). An emptied
+ *               bucket stays queued and simply comes due with nothing in it
+ *   - take()  = for each due bucket: move the clock, then expire or CASCADE
+ *               every entry to a finer level
+ *
+ * 💡 THINK: Why a read-write lock?
+ *   Adds only touch one bucket (each bucket is its own monitor), so any
+ *   number of producers add under the READ lock in parallel. Only moving
+ *   the clock - which changes where every add lands - takes the WRITE lock.
+ *
+ * ⚠️ AVOID: Making a bucket due when its span ENDS! On level n a span is
+ * tick * wheelSize^n, so an entry would wait out the rest of a coarse span
+ * before even cascading - seconds late. As in Kafka, a bucket is due when
+ * its span STARTS, and an entry expires once it is due within the current
+ * tick; anything later cascades to a finer level.
+ *
+ * 💡 THINK: Kafka's "due within the current tick" fires up to a tick EARLY.
+ * add() rounds every deadline up to the next tick boundary first, so here an
+ * entry fires up to one tick late, never early.
+ *
+ * @param <T> the timed element type
+ */
+final class BucketedTimingWheel<T extends BucketedTimingWheel.Entry> {
+
+    /**
+     * Intrusive bucket links and deadline, embedded in the timed element.
+     */
+    abstract static class Entry {
+        Entry prevInBucket;
+        Entry nextInBucket;
+        volatile Bucket bucket;  // null while not in a bucket
+        long deadline;           // nanos relative to the wheel's origin, rounded up to a tick
+    }
+
+    private static final class Sentinel extends Entry {
+        Sentinel() {
+            prevInBucket = this;
+            nextInBucket = this;
+        }
+    }
+
+    /**
+     * One wheel slot: a list of entries plus the time its span starts.
+     */
+    static final class Bucket implements Delayed {
+        private final long origin;
+        private final Sentinel root = new Sentinel();
+        private final AtomicLong expiration = new AtomicLong(-1); // -1 while empty
+
+        Bucket(long origin) {
+            this.origin = origin;
+        }
+
+        synchronized void add(Entry entry) {
+            entry.bucket = this;
+            entry.prevInBucket = root.prevInBucket;
+            entry.nextInBucket = root;
+            root.prevInBucket.nextInBucket = entry;
+            root.prevInBucket = entry;
+        }
+
+        synchronized boolean remove(Entry entry) {
+            if (entry.bucket != this) {
+                return false; // Flushed meanwhile
+            }
+            entry.prevInBucket.nextInBucket = entry.nextInBucket;
+            entry.nextInBucket.prevInBucket = entry.prevInBucket;
+            entry.prevInBucket = null;
+            entry.nextInBucket = null;
+            entry.bucket = null;
+            return true;
+        }
+
+        /**
+         * Detaches every entry and marks the bucket empty.
+         */
+        synchronized void flush(List<Entry> into) {
+            Entry entry = root.nextInBucket;
+            while (entry != root) {
+                Entry next = entry.nextInBucket;
+                entry.prevInBucket = null;
+                entry.nextInBucket = null;
+                entry.bucket = null;
+                into.add(entry);
+                entry = next;
+            }
+            root.prevInBucket = root;
+            root.nextInBucket = root;
+            expiration.set(-1);
+        }
+
+        /**
+         * @return true if the expiration changed - the bucket must be (re)queued
+         */
+        boolean setExpiration(long expiresAt) {
+            return expiration.getAndSet(expiresAt) != expiresAt;
+        }
+
+        long getExpiration() {
+            return expiration.get();
+        }
+
+        @Override
+        public long getDelay(TimeUnit unit) {
+            return unit.convert(expiration.get() - (System.nanoTime() - origin), TimeUnit.NANOSECONDS);
+        }
+
+        @Override
+        public int compareTo(Delayed other) {
+            return Long.compare(expiration.get(), ((Bucket) other).expiration.get());
+        }
+    }
+
+    /**
+     * One wheel of the hierarchy.
+     */
+    private final class Level {
+        final long tick;
+        final long interval;
+        final Bucket[] buckets;
+        volatile long currentTime; // start of the current tick
+        volatile Level overflow;
+
+        Level(long tick, long startTime) {
+            this.tick = tick;
+            // The top levels can't overflow a long - the last one just spans "forever"
+            this.interval = tick > Long.MAX_VALUE / wheelSize ? Long.MAX_VALUE : tick * wheelSize;
+            this.buckets = new Bucket[wheelSize];
+            for (int i = 0; i < wheelSize; i++) {
+                buckets[i] = new Bucket(origin);
+            }
+            this.currentTime = startTime - startTime % tick;
+        }
+
+        /**
+         * Caller holds the read (or write) lock.
+         */
+        void add(Entry entry) {
+            // A deadline that passed meanwhile lands in the current tick
+            long deadline = Math.max(entry.deadline, currentTime);
+            if (deadline - currentTime < interval) {
+                long virtualId = deadline / tick;
+                Bucket bucket = buckets[(int) (virtualId % wheelSize)];
+                bucket.add(entry);
+                if (bucket.setExpiration(virtualId * tick)) {
+                    delayQueue.offer(bucket);
+                }
+            } else {
+                overflow().add(entry);
+            }
+        }
+
+        Level overflow() {
+            Level level = overflow;
+            if (level == null) {
+                synchronized (this) {
+                    level = overflow;
+                    if (level == null) {
+                        overflow = level = new Level(interval, currentTime);
+                    }
+                }
+            }
+            return level;
+        }
+
+        /**
+         * Caller holds the write lock.
+         */
+        void advanceClock(long time) {
+            if (time >= currentTime + tick) {
+                currentTime = time - time % tick;
+                Level level = overflow;
+                if (level != null) {
+                    level.advanceClock(currentTime);
+                }
+            }
+        }
+    }
+
+    private final long origin = System.nanoTime();
+    private final int wheelSize;
+    private final DelayQueue<Bucket> delayQueue = new DelayQueue<>();
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private final AtomicInteger size = new AtomicInteger();
+    private final Level root;
+
+    /**
+     * @param tickNanos resolution of the finest level
+     * @param wheelSize buckets per level
+     */
+    BucketedTimingWheel(long tickNanos, int wheelSize) {
+        if (tickNanos <= 0 || wheelSize <= 0) {
+            throw new IllegalArgumentException("Tick and wheel size must be positive");
+        }
+        this.wheelSize = wheelSize;
+        this.root = new Level(tickNanos, 0);
+    }
+
+    /**
+     * Adds an entry that expires at deadlineNanos (a System.nanoTime() value).
+     */
+    void add(T entry, long deadlineNanos) {
+        entry.deadline = deadlineNanos - origin + root.tick - 1;
+        lock.readLock().lock();
+        try {
+            root.add(entry);
+        } finally {
+            lock.readLock().unlock();
+        }
+        size.incrementAndGet();
+    }
+
+    /**
+     * Removes an entry before it expires.
+     *
+     * 💡 THINK: Why the read lock? take() flushes under the write lock, so
+     * while we hold the read lock the entry is either in its bucket or
+     * already handed out as expired - never in between, being cascaded.
+     *
+     * @return false if the entry already expired (or was never added)
+     */
+    boolean remove(T entry) {
+        lock.readLock().lock();
+        try {
+            Bucket bucket = entry.bucket;
+            if (bucket == null || !bucket.remove(entry)) {
+                return false;
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        size.decrementAndGet();
+        return true;
+    }
+
+    /**
+     * Waits for the next bucket to come due, then collects every expired
+     * entry of every due bucket.
+     *
+     * 📝 NOTE: The expired entries are returned, not run - whatever the
+     * caller does with them happens after the write lock is released.
+     */
+    @SuppressWarnings("unchecked")
+    void take(List<T> expired) throws InterruptedException {
+        Bucket bucket = delayQueue.take();
+        int before = expired.size();
+        List<Entry> flushed = new ArrayList<>();
+        lock.writeLock().lock();
+        try {
+            while (bucket != null) {
+                root.advanceClock(bucket.getExpiration());
+                bucket.flush(flushed);
+                for (Entry entry : flushed) {
+                    if (entry.deadline - root.currentTime < root.tick) {
+                        expired.add((T) entry);
+                    } else {
+                        root.add(entry); // Cascade to a finer level
+                    }
+                }
+                flushed.clear();
+                bucket = delayQueue.poll();
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+        size.addAndGet(before - expired.size());
+    }
+
+    /**
+     * Returns number of entries added and not yet expired.
+     */
+    int size() {
+        return size.get();
+    }
+
+    /**
+     * Returns number of buckets in the delay queue - at most one per slot.
+     */
+    int queuedBuckets() {
+        return delayQueue.size();
+    }
+}
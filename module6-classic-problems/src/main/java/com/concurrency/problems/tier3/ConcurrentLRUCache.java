@@ -1,214 +1,1490 @@
 package com.concurrency.problems.tier3;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.IntFunction;
+import java.util.function.LongSupplier;
 
 /**
  * Classic Problem #6: Thread-Safe LRU Cache
- * 
+ *
  * TODO: Implement an LRU cache that is thread-safe AND performant.
- * 
+ *
  * ⚠️ AVOID: Wrapping LinkedHashMap with synchronized!
- *   
+ *
  *   // BAD - This kills ALL concurrency!
  *   Collections.synchronizedMap(new LinkedHashMap<>(capacity, 0.75f, true) {
  *       @Override protected boolean removeEldestEntry(Map.Entry eldest) {
  *           return size() > capacity;
  *       }
  *   });
- *   
+ *
  *   Why is this bad? Every get() AND every put() acquires the same lock!
  *   Readers block readers. Terrible for read-heavy workloads.
- * 
+ *
  * 💡 THINK: Better approach using two data structures:
  *   1. ConcurrentHashMap for O(1) thread-safe key-value lookup
  *   2. Custom Doubly Linked List for LRU ordering (with fine-grained locking)
- * 
+ *
  * 📝 NOTE: On every access:
  *   - Move the accessed node to the head (most recently used)
  *   - On eviction, remove from tail (least recently used)
- * 
+ *
+ * 🚀 SEGMENTED MODE (lock striping):
+ *   Even with a separate list lock, every cache HIT still needs that one lock
+ *   to call moveToHead() - so all readers serialize on it. Pass segmentCount > 1
+ *   to split the cache into N independent LRU segments (same idea as the
+ *   original Java 7 ConcurrentHashMap). Each segment owns its own sentinel list,
+ *   lock and share of the capacity; a key always hashes to the same segment.
+ *
+ *   TRADE-OFF: Eviction is LRU *per segment*, not global. With a good hash the
+ *   difference is small, and getSegmentStats() shows whether keys are skewed.
+ *
+ * 🚀 BUFFERED READS (Caffeine-style):
+ *   Segmenting divides the contention, buffering removes it. With bufferReads
+ *   a hit only appends the node to a striped lossy ReadBuffer (one CAS, no
+ *   lock, no allocation). The buffered reads are replayed in a batch whenever
+ *   the list lock is held anyway (every put) or a stripe fills up and a reader
+ *   wins tryLock() - nobody ever WAITS for the lock on the read path.
+ *
+ *   TRADE-OFF: LRU order becomes approximate - a full stripe drops reads, and
+ *   reorders are applied late. Run main() for a throughput comparison.
+ *
+ * 🚀 ADMISSION POLICY (W-TinyLFU):
+ *   Pure LRU always evicts the tail, so ONE scan over cold keys flushes the
+ *   hot working set. Pass an AdmissionPolicy factory (e.g. TinyLfuAdmission)
+ *   and each segment splits into a ~1% window LRU plus a main LRU: entries
+ *   leaving the window only enter main if they are seen more often than
+ *   main's LRU victim. Compare policies with getStats().getHitRate().
+ *
+ * 🚀 EXPIRY (TTL / TTI):
+ *   expireAfterWrite drops an entry a fixed time after its last put;
+ *   expireAfterAccess after its last get or put. No background thread scans
+ *   the map: each segment keeps a hierarchical TimerWheel that is advanced
+ *   (under the list lock) whenever a put or a read drain happens anyway.
+ *   get() checks the deadline itself, so an expired entry is never returned
+ *   even if the wheel hasn't cleaned it up yet - but size() may still count
+ *   it until then. Call cleanUp() to force maintenance.
+ *
+ * 🚀 WEIGHTED CAPACITY:
+ *   Counting entries is meaningless when values range from 100B to 5MB. Pass
+ *   a Weigher and a maximumWeight (e.g. bytes) instead: each segment keeps a
+ *   running total of its entries' weights and evicts from the LRU end until
+ *   the total is back under its share - no ConcurrentHashMap.size() needed.
+ *
+ * 🚀 LOADING (single-flight):
+ *   getOrLoad() turns N concurrent misses on one key into ONE loader call:
+ *   the first thread registers a CompletableFuture in an in-flight map and
+ *   loads WITHOUT holding any lock; the others just wait on that future.
+ *   With expireAfterWrite, a hit in the last 20% of an entry's lifetime
+ *   also starts an async reload ("refresh-ahead"), so hot keys are replaced
+ *   before they expire and callers never see the miss.
+ *
+ * 🚀 OFF-HEAP VALUES:
+ *   Tens of GB of values on the heap means long GC pauses. Pass a
+ *   Serializer and an off-heap budget and values are stored as bytes in
+ *   slab-allocated direct ByteBuffers (see OffHeapStore); each node keeps only
+ *   a packed long handle. When a segment's slabs are full, put() evicts from
+ *   the LRU end - preferring victims of the same size class, whose chunks are
+ *   immediately reusable - until the new value fits.
+ *
+ *   TRADE-OFF: Every get() copies and deserializes the value, so hits cost
+ *   more CPU and return a fresh object each time.
+ *
+ * 🚀 SNAPSHOTS (warm start):
+ *   A restarted service with an empty cache sends its whole read load to the
+ *   backing store. writeSnapshot() streams every entry, least recent first,
+ *   into a memory-mapped file (one section per segment, see SnapshotFile);
+ *   loadSnapshot() replays the sections in parallel, one thread per segment,
+ *   so each segment comes back in its original LRU order.
+ *
  * @param <K> key type
  * @param <V> value type
  */
 public class ConcurrentLRUCache<K, V> {
-    
+
+    /**
+     * Pluggable admission policy: decides whether a new entry may displace
+     * the main region's LRU victim.
+     *
+     * 📝 NOTE: Each segment gets its own instance and only calls it with its
+     * list lock held, so implementations need no synchronization of their own.
+     *
+     * @param <K> key type
+     */
+    public interface AdmissionPolicy<K> {
+
+        /** Called on every hit and every put of a key. */
+        void recordAccess(K key);
+
+        /**
+         * @return true to admit the candidate and evict the victim,
+         *         false to evict the candidate instead
+         */
+        boolean admit(K candidate, K victim);
+    }
+
+    /**
+     * Computes the relative weight (e.g. size in bytes) of an entry.
+     *
+     * 📝 NOTE: Called once per put, under the segment lock - keep it cheap.
+     * The weight is fixed until the entry is put again.
+     *
+     * @param <K> key type
+     * @param <V> value type
+     */
+    @FunctionalInterface
+    public interface Weigher<K, V> {
+
+        /**
+         * @return a non-negative weight (0 = never evicted for size)
+         */
+        int weigh(K key, V value);
+    }
+
+    // Every entry weighs 1 - maximumWeight is then simply the entry count
+    private static final Weigher<Object, Object> SINGLETON_WEIGHER = (key, value) -> 1;
+
+    // TinyLFU sketches are sized per entry, so cap the hint for byte-weighted caches
+    private static final int MAX_ADMISSION_SIZE_HINT = 1 << 20;
+
+    // Refresh once less than 1/5 of the time-to-live remains
+    private static final int REFRESH_AHEAD_DIVISOR = 5;
+
+    // How far from the LRU end to look for a victim in the needed size class
+    private static final int SLAB_VICTIM_SCAN = 32;
+
     /**
      * Doubly-linked list node.
-     * 
+     *
      * 📝 NOTE: We store the key so we can remove from ConcurrentHashMap on eviction.
+     * list == null means the node is no longer linked (evicted), so a racing
+     * get() must not move it back into a list.
+     *
+     * Extends TimerWheel.Timer so the expiry links live on the node itself -
+     * scheduling an entry allocates nothing. In off-heap mode value stays null
+     * and handle locates the serialized bytes instead.
      */
-    private static class Node<K, V> {
+    private static class Node<K, V> extends TimerWheel.Timer implements OffHeapStore.HandleSource {
         final K key;
-        V value;
+        volatile V value;
+        volatile long handle = OffHeapStore.NO_HANDLE;
+        volatile long writeTime; // relative nanos of the last put
+        int weight;              // guarded by the segment's listLock
         Node<K, V> prev;
         Node<K, V> next;
-        
+        LruList<K, V> list; // which list (window or main) holds this node
+
         Node(K key, V value) {
             this.key = key;
             this.value = value;
         }
+
+        boolean isLinked() {
+            return list != null;
+        }
+
+        @Override
+        public long currentHandle() {
+            return handle;
+        }
+    }
+
+    /**
+     * A doubly-linked list with sentinels: head = most recent, tail = least recent.
+     * All methods must be called with the owning segment's listLock held.
+     */
+    private static final class LruList<K, V> {
+        final Node<K, V> head = new Node<>(null, null); // Sentinel node
+        final Node<K, V> tail = new Node<>(null, null); // Sentinel node
+        int size;
+        // Written under the lock, read lock-free by getWeightedSize()
+        volatile long weight;
+
+        LruList() {
+            head.next = tail;
+            tail.prev = head;
+        }
+
+        /**
+         * Adds a node right after head (most recently used position).
+         */
+        void addToHead(Node<K, V> node) {
+            node.prev = head;
+            node.next = head.next;
+            head.next.prev = node;
+            head.next = node;
+            node.list = this;
+            size++;
+            weight += node.weight;
+        }
+
+        /**
+         * Removes a node from its current position in the list.
+         */
+        void removeNode(Node<K, V> node) {
+            node.prev.next = node.next;
+            node.next.prev = node.prev;
+            node.prev = null;
+            node.next = null;
+            node.list = null;
+            size--;
+            weight -= node.weight;
+        }
+
+        /**
+         * Changes the weight of a node in this list, keeping the total in sync.
+         */
+        void reweigh(Node<K, V> node, int newWeight) {
+            weight += newWeight - node.weight;
+            node.weight = newWeight;
+        }
+
+        /**
+         * Moves an existing node to the head (most recently used).
+         */
+        void moveToHead(Node<K, V> node) {
+            removeNode(node);
+            addToHead(node);
+        }
+
+        /**
+         * @return the least recently used node, or null if list is empty
+         */
+        Node<K, V> peekTail() {
+            Node<K, V> lru = tail.prev;
+            return lru == head ? null : lru;
+        }
+
+        /**
+         * Removes and returns the tail node (least recently used).
+         *
+         * @return the removed node, or null if list is empty
+         */
+        Node<K, V> removeTail() {
+            Node<K, V> lru = peekTail();
+            if (lru != null) {
+                removeNode(lru);
+            }
+            return lru;
+        }
     }
-    
-    private final int capacity;
-    
+
+    /**
+     * Point-in-time counters for one segment (or the whole cache).
+     */
+    public static final class CacheStats {
+        private final long hitCount;
+        private final long missCount;
+        private final long evictionCount;
+        private final long rejectionCount;
+        private final long expirationCount;
+        private final int size;
+
+        CacheStats(long hitCount, long missCount, long evictionCount, long rejectionCount,
+                   long expirationCount, int size) {
+            this.hitCount = hitCount;
+            this.missCount = missCount;
+            this.evictionCount = evictionCount;
+            this.rejectionCount = rejectionCount;
+            this.expirationCount = expirationCount;
+            this.size = size;
+        }
+
+        public long getHitCount() { return hitCount; }
+        public long getMissCount() { return missCount; }
+        public long getEvictionCount() { return evictionCount; }
+        /** New entries the admission policy evicted instead of an older victim. */
+        public long getRejectionCount() { return rejectionCount; }
+        public long getExpirationCount() { return expirationCount; }
+        public int getSize() { return size; }
+
+        public double getHitRate() {
+            long requests = hitCount + missCount;
+            return requests == 0 ? 1.0 : (double) hitCount / requests;
+        }
+
+        CacheStats plus(CacheStats other) {
+            return new CacheStats(hitCount + other.hitCount, missCount + other.missCount,
+                    evictionCount + other.evictionCount, rejectionCount + other.rejectionCount,
+                    expirationCount + other.expirationCount, size + other.size);
+        }
+
+        @Override
+        public String toString() {
+            return String.format(
+                    "hits=%d, misses=%d, evictions=%d, rejections=%d, expirations=%d, size=%d, hitRate=%.3f",
+                    hitCount, missCount, evictionCount, rejectionCount, expirationCount, size, getHitRate());
+        }
+    }
+
+    /**
+     * One independently locked cache segment.
+     *
+     * 📝 NOTE: Without an admission policy the window is empty and every
+     * entry lives in the main list - plain LRU. With a policy this becomes
+     * W-TinyLFU: new entries land in a small window LRU, and an entry
+     * leaving the window must beat the main list's LRU victim to stay.
+     *
+     * 💡 THINK: Why LongAdder for the counters?
+     *   Hits are recorded by every reader - an AtomicLong would become the
+     *   next contention point right after we removed the lock!
+     */
+    private static final class Segment<K, V> {
+        final long windowMaximum; // maximum total weight of each region
+        final long mainMaximum;
+
+        final LruList<K, V> window = new LruList<>();
+        final LruList<K, V> main = new LruList<>();
+
+        // Fine-grained lock for this segment's list operations
+        final Lock listLock = new ReentrantLock();
+
+        final LongAdder hits = new LongAdder();
+        final LongAdder misses = new LongAdder();
+        final LongAdder evictions = new LongAdder();
+        final LongAdder rejections = new LongAdder();
+        final LongAdder expirations = new LongAdder();
+
+        // null = plain LRU, no window
+        final AdmissionPolicy<K> admission;
+
+        // null = eager mode (move to head under the lock on every hit)
+        final ReadBuffer<Node<K, V>> readBuffer;
+        final Consumer<Node<K, V>> applyRead = this::applyRead;
+
+        // null = entries never expire
+        final TimerWheel<Node<K, V>> timerWheel;
+        final LongSupplier ticker;
+        final Consumer<Node<K, V>> expire = this::expire;
+
+        // Drops a removed node from the cache's map
+        final Consumer<Node<K, V>> onRemoval;
+
+        // null = values live on the heap in Node.value
+        final OffHeapStore store;
+        final Serializer<V> serializer;
+
+        Segment(long maximumWeight, boolean bufferReads, AdmissionPolicy<K> admission,
+                boolean expires, LongSupplier ticker, Consumer<Node<K, V>> onRemoval,
+                Serializer<V> serializer, long offHeapBytes) {
+            this.admission = admission;
+            this.serializer = serializer;
+            this.store = serializer == null ? null : new OffHeapStore(offHeapBytes);
+            this.ticker = ticker;
+            this.onRemoval = onRemoval;
+            this.timerWheel = expires ? new TimerWheel<>(ticker.getAsLong()) : null;
+            // ~1% window, as in Caffeine; a 1-slot segment has no room for one
+            this.windowMaximum =
+                (admission == null || maximumWeight < 2) ? 0 : Math.max(1, maximumWeight / 100);
+            this.mainMaximum = maximumWeight - windowMaximum;
+            this.readBuffer = bufferReads
+                ? new ReadBuffer<>(Runtime.getRuntime().availableProcessors())
+                : null;
+        }
+
+        int size() {
+            return window.size + main.size;
+        }
+
+        long weightedSize() {
+            return window.weight + main.weight;
+        }
+
+        /**
+         * Records a hit: eagerly under the lock, or via the read buffer.
+         */
+        void recordRead(Node<K, V> node) {
+            if (readBuffer == null) {
+                listLock.lock();
+                try {
+                    applyRead(node);
+                    expireEntries();
+                } finally {
+                    listLock.unlock();
+                }
+            } else if (readBuffer.offer(node) && listLock.tryLock()) {
+                // 💡 THINK: tryLock, not lock! If a writer holds the lock it
+                // will drain for us - a reader never waits.
+                try {
+                    maintenance();
+                } finally {
+                    listLock.unlock();
+                }
+            }
+        }
+
+        /**
+         * Catches up on deferred work: buffered reads, then expired entries.
+         * Must be called with listLock held.
+         */
+        void maintenance() {
+            drainReads();
+            expireEntries();
+        }
+
+        /**
+         * Must be called with listLock held.
+         */
+        void expireEntries() {
+            if (timerWheel != null) {
+                timerWheel.advance(ticker.getAsLong(), expire);
+            }
+        }
+
+        /**
+         * Replays buffered reads onto the lists.
+         * Must be called with listLock held.
+         */
+        void drainReads() {
+            if (readBuffer != null) {
+                readBuffer.drainTo(applyRead);
+            }
+        }
+
+        /**
+         * Must be called with listLock held.
+         */
+        private void applyRead(Node<K, V> node) {
+            // ⚠️ AVOID: Re-linking a node that was evicted after our CHM lookup!
+            if (node.isLinked()) {
+                node.list.moveToHead(node);
+                if (timerWheel != null) {
+                    timerWheel.schedule(node); // get() may have pushed out expiresAt
+                }
+                if (admission != null) {
+                    admission.recordAccess(node.key);
+                }
+            }
+        }
+
+        /**
+         * Called by the timer wheel for each entry past its deadline.
+         */
+        private void expire(Node<K, V> node) {
+            if (node.isLinked()) {
+                node.list.removeNode(node);
+                expirations.increment();
+                releaseValue(node);
+                onRemoval.accept(node);
+            }
+        }
+
+        /**
+         * Removes an evicted node from the timer wheel and the map.
+         */
+        private void discard(Node<K, V> node) {
+            if (timerWheel != null) {
+                timerWheel.deschedule(node);
+            }
+            releaseValue(node);
+            onRemoval.accept(node);
+        }
+
+        /**
+         * Reads a node's value - from the heap, or copied out of its slab.
+         * Safe without the lock.
+         *
+         * @return the value, or null if the node was evicted meanwhile
+         */
+        V readValue(Node<K, V> node) {
+            if (store == null) {
+                return node.value;
+            }
+            byte[] bytes = store.read(node);
+            return bytes == null ? null
+                : serializer.deserialize(ByteBuffer.wrap(bytes).asReadOnlyBuffer());
+        }
+
+        /**
+         * Stores a node's new value (bytes is the serialized form in off-heap mode).
+         * Must be called with listLock held.
+         *
+         * @return false if the value could not be stored off-heap
+         */
+        boolean writeValue(Node<K, V> node, V value, byte[] bytes) {
+            if (store == null) {
+                node.value = value;
+                return true;
+            }
+            long handle = allocate(bytes, node);
+            if (handle == OffHeapStore.NO_HANDLE) {
+                return false;
+            }
+            // Publish the new handle BEFORE freeing the old chunk - see OffHeapStore
+            long old = node.handle;
+            node.handle = handle;
+            if (old != OffHeapStore.NO_HANDLE) {
+                store.free(old);
+            }
+            return true;
+        }
+
+        /**
+         * Frees a removed node's off-heap chunk.
+         * Must be called with listLock held.
+         */
+        private void releaseValue(Node<K, V> node) {
+            if (store != null && node.handle != OffHeapStore.NO_HANDLE) {
+                long handle = node.handle;
+                node.handle = OffHeapStore.NO_HANDLE; // Readers now see a miss
+                store.free(handle);
+            }
+        }
+
+        /**
+         * Allocates a chunk, evicting LRU entries while the slabs are full.
+         *
+         * @param owner the node being written - never chosen as a victim
+         */
+        private long allocate(byte[] bytes, Node<K, V> owner) {
+            long handle;
+            while ((handle = store.allocate(bytes)) == OffHeapStore.NO_HANDLE) {
+                Node<K, V> victim = slabVictim(store.sizeClassOf(bytes.length), owner);
+                if (victim == null) {
+                    return OffHeapStore.NO_HANDLE;
+                }
+                victim.list.removeNode(victim);
+                evictions.increment();
+                discard(victim);
+            }
+            return handle;
+        }
+
+        /**
+         * Picks the entry to evict for a full size class.
+         *
+         * 💡 THINK: Evicting the plain LRU tail may free a 64B chunk when we
+         * need a 4KB one - memory is freed but nothing fits. So we look a few
+         * entries up from the LRU end for one in the SAME size class first;
+         * only if there is none do we take the tail and hope its slab empties
+         * (an empty slab can be reassigned to any class).
+         */
+        private Node<K, V> slabVictim(int sizeClass, Node<K, V> owner) {
+            Node<K, V> victim = scanForSizeClass(main, sizeClass, owner);
+            if (victim == null) {
+                victim = scanForSizeClass(window, sizeClass, owner);
+            }
+            if (victim != null) {
+                return victim;
+            }
+            victim = leastRecentOtherThan(main, owner);
+            return victim != null ? victim : leastRecentOtherThan(window, owner);
+        }
+
+        private Node<K, V> leastRecentOtherThan(LruList<K, V> list, Node<K, V> owner) {
+            Node<K, V> node = list.tail.prev;
+            if (node == owner) {
+                node = node.prev;
+            }
+            return node == list.head ? null : node;
+        }
+
+        private Node<K, V> scanForSizeClass(LruList<K, V> list, int sizeClass, Node<K, V> owner) {
+            Node<K, V> node = list.tail.prev;
+            for (int scanned = 0; node != list.head && scanned < SLAB_VICTIM_SCAN; scanned++) {
+                if (node != owner
+                        && store.sizeClassOf(OffHeapStore.lengthOf(node.handle)) == sizeClass) {
+                    return node;
+                }
+                node = node.prev;
+            }
+            return null;
+        }
+
+        /**
+         * Records a write of an existing or new node with its (new) weight.
+         * Must be called with listLock held.
+         */
+        void recordWrite(Node<K, V> node, int weight) {
+            if (node.isLinked()) {
+                node.list.reweigh(node, weight);
+                node.list.moveToHead(node);
+            } else {
+                node.weight = weight;
+                window.addToHead(node); // with no window, evict() moves it straight to main
+            }
+            if (timerWheel != null) {
+                timerWheel.schedule(node);
+            }
+            if (admission != null) {
+                admission.recordAccess(node.key);
+            }
+        }
+
+        /**
+         * Moves window overflow into main, evicting whoever loses admission.
+         * Must be called with listLock held.
+         */
+        void evict() {
+            while (window.weight > windowMaximum) {
+                Node<K, V> candidate = window.removeTail();
+                if (!makeRoomInMain(candidate)) {
+                    evictions.increment();
+                    discard(candidate);
+                    continue;
+                }
+                main.addToHead(candidate);
+            }
+
+            // An update may have made main heavier than its share
+            while (main.weight > mainMaximum) {
+                evictions.increment();
+                discard(main.removeTail());
+            }
+        }
+
+        /**
+         * Evicts main's LRU victims until the candidate fits, as long as the
+         * candidate keeps winning admission.
+         *
+         * 💡 THINK: A 5MB candidate may need to push out many small victims -
+         * it must beat EACH of them, one at a time.
+         *
+         * @return false if the candidate lost (or can never fit)
+         */
+        private boolean makeRoomInMain(Node<K, V> candidate) {
+            if (candidate.weight > mainMaximum) {
+                return false; // No main region, or heavier than all of it
+            }
+            while (main.weight + candidate.weight > mainMaximum) {
+                Node<K, V> victim = main.peekTail();
+                if (admission != null && !admission.admit(candidate.key, victim.key)) {
+                    rejections.increment();
+                    return false;
+                }
+                main.removeNode(victim);
+                evictions.increment();
+                discard(victim);
+            }
+            return true;
+        }
+
+        /**
+         * Copies the node order, least recently used first (main, then window -
+         * window entries are the newest).
+         */
+        List<Node<K, V>> recencyOrder() {
+            listLock.lock();
+            try {
+                maintenance();
+                List<Node<K, V>> nodes = new ArrayList<>(size());
+                for (Node<K, V> node = main.tail.prev; node != main.head; node = node.prev) {
+                    nodes.add(node);
+                }
+                for (Node<K, V> node = window.tail.prev; node != window.head; node = node.prev) {
+                    nodes.add(node);
+                }
+                return nodes;
+            } finally {
+                listLock.unlock();
+            }
+        }
+
+        CacheStats snapshot() {
+            int currentSize;
+            listLock.lock();
+            try {
+                maintenance();
+                currentSize = size();
+            } finally {
+                listLock.unlock();
+            }
+            return new CacheStats(hits.sum(), misses.sum(), evictions.sum(),
+                    rejections.sum(), expirations.sum(), currentSize);
+        }
+    }
+
+    private final long maximumWeight;
+    private final Weigher<? super K, ? super V> weigher;
+
     // TODO: Use ConcurrentHashMap for thread-safe key-to-node mapping
     // 🔑 HINT: ConcurrentHashMap<K, Node<K, V>>
     private final ConcurrentHashMap<K, Node<K, V>> cache;
-    
-    // Doubly-linked list: head = most recent, tail = least recent
-    private final Node<K, V> head; // Sentinel node
-    private final Node<K, V> tail; // Sentinel node
-    
-    // TODO: Fine-grained lock for the linked list operations
-    // 💡 THINK: Why a separate lock instead of synchronizing on 'this'?
-    //   The CHM handles its own synchronization - we only need to protect the list!
-    private final Lock listLock = new ReentrantLock();
-    
+
+    // 💡 THINK: Why a separate lock per segment instead of synchronizing on 'this'?
+    //   The CHM handles its own synchronization - we only need to protect the lists!
+    private final Segment<K, V>[] segments;
+    private final int segmentShift;
+    private final int segmentMask;
+
+    // 0 = never expire
+    private final long expireAfterWriteNanos;
+    private final long expireAfterAccessNanos;
+    private final long startNanos = System.nanoTime();
+
+    // One future per key being loaded (or refreshed) right now
+    private final ConcurrentHashMap<K, CompletableFuture<V>> inFlight = new ConcurrentHashMap<>();
+
+    // null = values live on the heap
+    private final Serializer<V> serializer;
+
     public ConcurrentLRUCache(int capacity) {
-        if (capacity <= 0) {
+        this(capacity, 1);
+    }
+
+    /**
+     * Creates a segmented cache.
+     *
+     * @param capacity total number of entries across all segments
+     * @param segmentCount number of independently locked segments
+     *                     (rounded up to a power of two; 1 = classic single-list LRU)
+     */
+    public ConcurrentLRUCache(int capacity, int segmentCount) {
+        this(capacity, segmentCount, false);
+    }
+
+    /**
+     * Creates a segmented cache, optionally with buffered read recording.
+     *
+     * @param capacity total number of entries across all segments
+     * @param segmentCount number of independently locked segments
+     *                     (rounded up to a power of two; 1 = classic single-list LRU)
+     * @param bufferReads true to record hits in lossy read buffers instead of
+     *                    taking the list lock on every get()
+     */
+    public ConcurrentLRUCache(int capacity, int segmentCount, boolean bufferReads) {
+        this(capacity, segmentCount, bufferReads, null);
+    }
+
+    /**
+     * Creates a cache with an admission policy (W-TinyLFU when combined with
+     * the window every policy-enabled segment gets).
+     *
+     * 🔑 HINT: new ConcurrentLRUCache<>(10_000, 16, true, TinyLfuAdmission::new)
+     *
+     * @param capacity total number of entries across all segments
+     * @param segmentCount number of independently locked segments
+     *                     (rounded up to a power of two; 1 = classic single-list LRU)
+     * @param bufferReads true to record hits in lossy read buffers instead of
+     *                    taking the list lock on every get()
+     * @param admissionFactory creates one policy per segment from the segment's
+     *                         capacity, or null for pure LRU
+     */
+    public ConcurrentLRUCache(int capacity, int segmentCount, boolean bufferReads,
+                              IntFunction<? extends AdmissionPolicy<K>> admissionFactory) {
+        this(capacity, segmentCount, bufferReads, admissionFactory, 0, 0, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Creates a single-segment cache whose entries expire.
+     *
+     * @param capacity maximum number of entries
+     * @param expireAfterWrite time-to-live after the last put (0 = never)
+     * @param expireAfterAccess time-to-idle after the last get or put (0 = never)
+     * @param unit unit of both durations
+     */
+    public ConcurrentLRUCache(int capacity, long expireAfterWrite, long expireAfterAccess,
+                              TimeUnit unit) {
+        this(capacity, 1, false, null, expireAfterWrite, expireAfterAccess, unit);
+    }
+
+    /**
+     * Creates an entry-bounded cache with every other option.
+     *
+     * @param capacity total number of entries across all segments
+     * @param segmentCount number of independently locked segments
+     *                     (rounded up to a power of two; 1 = classic single-list LRU)
+     * @param bufferReads true to record hits in lossy read buffers instead of
+     *                    taking the list lock on every get()
+     * @param admissionFactory creates one policy per segment from the segment's
+     *                         capacity, or null for pure LRU
+     * @param expireAfterWrite time-to-live after the last put (0 = never)
+     * @param expireAfterAccess time-to-idle after the last get or put (0 = never)
+     * @param unit unit of both durations
+     */
+    public ConcurrentLRUCache(int capacity, int segmentCount, boolean bufferReads,
+                              IntFunction<? extends AdmissionPolicy<K>> admissionFactory,
+                              long expireAfterWrite, long expireAfterAccess, TimeUnit unit) {
+        this(capacity, SINGLETON_WEIGHER, segmentCount, bufferReads, admissionFactory,
+            expireAfterWrite, expireAfterAccess, unit);
+    }
+
+    /**
+     * Creates a single-segment cache bounded by total weight instead of entry count.
+     *
+     * 🔑 HINT: new ConcurrentLRUCache<String, byte[]>(64 << 20, (k, v) -> v.length)
+     *
+     * @param maximumWeight maximum total weight of all entries
+     * @param weigher computes each entry's weight
+     */
+    public ConcurrentLRUCache(long maximumWeight, Weigher<? super K, ? super V> weigher) {
+        this(maximumWeight, weigher, 1, false, null, 0, 0, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Creates a cache with every option.
+     *
+     * @param maximumWeight maximum total weight across all segments
+     *                      (the entry count when every entry weighs 1)
+     * @param weigher computes each entry's weight
+     * @param segmentCount number of independently locked segments
+     *                     (rounded up to a power of two; 1 = classic single-list LRU)
+     * @param bufferReads true to record hits in lossy read buffers instead of
+     *                    taking the list lock on every get()
+     * @param admissionFactory creates one policy per segment from the segment's
+     *                         capacity, or null for pure LRU
+     * @param expireAfterWrite time-to-live after the last put (0 = never)
+     * @param expireAfterAccess time-to-idle after the last get or put (0 = never)
+     * @param unit unit of both durations
+     */
+    public ConcurrentLRUCache(long maximumWeight, Weigher<? super K, ? super V> weigher,
+                              int segmentCount, boolean bufferReads,
+                              IntFunction<? extends AdmissionPolicy<K>> admissionFactory,
+                              long expireAfterWrite, long expireAfterAccess, TimeUnit unit) {
+        this(maximumWeight, weigher, segmentCount, bufferReads, admissionFactory,
+            expireAfterWrite, expireAfterAccess, unit, null, 0);
+    }
+
+    /**
+     * Creates a cache whose values are stored off-heap.
+     *
+     * 🔑 HINT: new ConcurrentLRUCache<>(1_000_000, 16, true, serializer, 20L << 30)
+     *
+     * @param capacity total number of entries across all segments
+     * @param segmentCount number of independently locked segments
+     *                     (rounded up to a power of two; 1 = classic single-list LRU)
+     * @param bufferReads true to record hits in lossy read buffers instead of
+     *                    taking the list lock on every get()
+     * @param serializer converts values to and from their off-heap bytes
+     * @param offHeapBytes direct memory budget, split evenly across segments
+     */
+    public ConcurrentLRUCache(int capacity, int segmentCount, boolean bufferReads,
+                              Serializer<V> serializer, long offHeapBytes) {
+        this(capacity, SINGLETON_WEIGHER, segmentCount, bufferReads, null,
+            0, 0, TimeUnit.NANOSECONDS, serializer, offHeapBytes);
+        if (serializer == null) {
+            throw new IllegalArgumentException("Serializer must not be null");
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private ConcurrentLRUCache(long maximumWeight, Weigher<? super K, ? super V> weigher,
+                               int segmentCount, boolean bufferReads,
+                               IntFunction<? extends AdmissionPolicy<K>> admissionFactory,
+                               long expireAfterWrite, long expireAfterAccess, TimeUnit unit,
+                               Serializer<V> serializer, long offHeapBytes) {
+        if (maximumWeight <= 0) {
             throw new IllegalArgumentException("Capacity must be positive");
         }
-        this.capacity = capacity;
+        if (weigher == null) {
+            throw new IllegalArgumentException("Weigher must not be null");
+        }
+        if (expireAfterWrite < 0 || expireAfterAccess < 0) {
+            throw new IllegalArgumentException("Expiry durations must not be negative");
+        }
+        if (segmentCount <= 0) {
+            throw new IllegalArgumentException("Segment count must be positive");
+        }
+        int segmentBits = 32 - Integer.numberOfLeadingZeros(segmentCount - 1);
+        int count = 1 << segmentBits;
+        if (count > maximumWeight) {
+            throw new IllegalArgumentException(
+                "Segment count (" + count + ") must not exceed capacity (" + maximumWeight + ")");
+        }
+        this.maximumWeight = maximumWeight;
+        this.weigher = weigher;
+        this.serializer = serializer;
         this.cache = new ConcurrentHashMap<>();
-        
-        // Initialize sentinel nodes
-        this.head = new Node<>(null, null);
-        this.tail = new Node<>(null, null);
-        head.next = tail;
-        tail.prev = head;
+        this.expireAfterWriteNanos = unit.toNanos(expireAfterWrite);
+        this.expireAfterAccessNanos = unit.toNanos(expireAfterAccess);
+        boolean expires = expireAfterWriteNanos > 0 || expireAfterAccessNanos > 0;
+        this.segmentShift = 32 - segmentBits;
+        this.segmentMask = count - 1;
+
+        // Split capacity evenly; the first (maximumWeight % count) segments get one extra unit
+        this.segments = (Segment<K, V>[]) new Segment[count];
+        for (int i = 0; i < count; i++) {
+            long segmentMaximum = maximumWeight / count + (i < maximumWeight % count ? 1 : 0);
+            AdmissionPolicy<K> admission = admissionFactory == null ? null
+                : admissionFactory.apply((int) Math.min(segmentMaximum, MAX_ADMISSION_SIZE_HINT));
+            segments[i] = new Segment<>(segmentMaximum, bufferReads, admission,
+                expires, this::now, this::removeFromMap, serializer, offHeapBytes / count);
+        }
     }
-    
+
+    /**
+     * Picks the segment for a key.
+     *
+     * 📝 NOTE: We use the HIGH bits of a re-mixed hash. ConcurrentHashMap uses
+     * the low bits for its bins, so reusing them would correlate the two.
+     */
+    private Segment<K, V> segmentFor(Object key) {
+        int h = key.hashCode() * 0x9E3779B9;
+        return segments[(h >>> segmentShift) & segmentMask];
+    }
+
     /**
      * TODO: Get a value from the cache.
-     * 
+     *
      * 🔑 HINT:
      *   1. Look up node in ConcurrentHashMap (no lock needed!)
      *   2. If found, move to head of list (lock needed)
      *   3. Return value
-     * 
+     *
      * 📝 NOTE: ConcurrentHashMap.get() is thread-safe and non-blocking!
-     * We only need the lock for list manipulation.
-     * 
+     * We only need the lock for list manipulation - and only the lock of
+     * the key's segment, so hits on different segments run in parallel.
+     * In buffered mode the hit is recorded without taking any lock.
+     *
      * @param key the key to look up
      * @return the value, or null if not found
      */
     public V get(K key) {
+        Segment<K, V> segment = segmentFor(key);
         Node<K, V> node = cache.get(key);
         if (node == null) {
+            segment.misses.increment();
             return null;
         }
-        
-        // TODO: Move node to head (most recently used)
-        // 🔑 HINT: moveToHead(node) with listLock held
-        listLock.lock();
-        try {
-            moveToHead(node);
-        } finally {
-            listLock.unlock();
+        if (expires()) {
+            long now = now();
+            if (node.expiresAt - now <= 0) {
+                // Expired but not yet cleaned up by the timer wheel
+                segment.misses.increment();
+                return null;
+            }
+            if (expireAfterAccessNanos > 0) {
+                // Lock-free: the wheel reschedules the node when the read is applied
+                node.expiresAt = deadline(node.writeTime, now);
+            }
+        }
+        V value = segment.readValue(node);
+        if (value == null) {
+            // Off-heap chunk freed by a racing eviction
+            segment.misses.increment();
+            return null;
         }
-        
-        return node.value;
+        segment.hits.increment();
+
+        // TODO: Move node to head (most recently used)
+        // 🔑 HINT: moveToHead(node) with the segment's listLock held
+        segment.recordRead(node);
+
+        return value;
     }
-    
+
     /**
      * TODO: Put a value into the cache.
-     * 
+     *
      * 🔑 HINT:
      *   1. Check if key exists in cache
      *   2. If exists: update value, move to head
      *   3. If new: create node, add to head, evict if over capacity
-     * 
+     *
      * ⚠️ AVOID: Race condition between check and insert!
      *   Use ConcurrentHashMap.compute() or computeIfAbsent() for atomicity.
-     * 
+     *
      * @param key the key
      * @param value the value
      */
     public void put(K key, V value) {
         // TODO: Implement thread-safe put with eviction
-        
+
         // 💡 THINK: There's a subtle race condition here.
         // What if two threads try to put the same key simultaneously?
         // What if size check and eviction are not atomic?
-        
+
         // Option 1: Use cache.compute() for atomic check-and-update
-        // Option 2: Hold listLock for entire operation (simpler but less concurrent)
-        
-        listLock.lock();
+        // Option 2: Hold the segment's listLock for entire operation (simpler but less concurrent)
+        //   → Every put for a key goes through the same segment lock, so
+        //     check-then-insert is atomic per key.
+
+        int weight = weigher.weigh(key, value);
+        if (weight < 0) {
+            throw new IllegalArgumentException("Weight must not be negative: " + weight);
+        }
+        // Serialize outside the lock - it can be the most expensive step
+        byte[] bytes = serializer == null ? null : serializer.serialize(value);
+
+        Segment<K, V> segment = segmentFor(key);
+        segment.listLock.lock();
         try {
+            // Apply earlier reads first so they can't "undo" this write's ordering
+            segment.maintenance();
+
             Node<K, V> existing = cache.get(key);
             if (existing != null) {
-                // Update existing node
-                existing.value = value;
-                moveToHead(existing);
+                update(segment, existing, value, weight, bytes);
             } else {
                 // Create new node
-                Node<K, V> newNode = new Node<>(key, value);
+                Node<K, V> newNode = new Node<>(key, null);
+                if (!segment.writeValue(newNode, value, bytes)) {
+                    return; // Nothing left to evict and it still doesn't fit
+                }
+                setWriteTime(newNode);
                 cache.put(key, newNode);
-                addToHead(newNode);
-                
-                // Evict if over capacity
-                if (cache.size() > capacity) {
-                    Node<K, V> lru = removeTail();
-                    if (lru != null) {
-                        cache.remove(lru.key);
-                    }
+                segment.recordWrite(newNode, weight);
+
+                // Evict if this segment is over its share of the capacity
+                segment.evict();
+            }
+        } finally {
+            segment.listLock.unlock();
+        }
+    }
+
+    /**
+     * Updates an existing node in place.
+     * Must be called with the segment's listLock held.
+     */
+    private void update(Segment<K, V> segment, Node<K, V> node, V value, int weight, byte[] bytes) {
+        if (!segment.writeValue(node, value, bytes)) {
+            return; // Keep the old value rather than lose the entry
+        }
+        setWriteTime(node);
+        segment.recordWrite(node, weight);
+
+        // A heavier value may push the segment over its share
+        segment.evict();
+    }
+
+    /**
+     * Returns the cached value, or loads it - at most once per key at a time.
+     *
+     * 🔑 HINT - The single-flight pattern:
+     *   1. Hit? Return it (maybe kicking off a refresh-ahead)
+     *   2. Miss: putIfAbsent(key, myFuture) into the in-flight map
+     *   3. Lost the race? Wait on the winner's future instead of loading
+     *   4. Won? Load with NO lock held, put(), complete the future, unregister
+     *
+     * ⚠️ AVOID: Calling the loader inside cache.compute() or under a lock!
+     *   A slow loader would block every other key in the same bin/segment.
+     *
+     * 📝 NOTE: If the loader throws, every waiter sees the same exception and
+     * nothing is cached - the next call tries again. A null result is not cached.
+     *
+     * @param key the key
+     * @param loader computes the value on a miss (or refresh)
+     * @return the cached or loaded value
+     */
+    public V getOrLoad(K key, Function<? super K, ? extends V> loader) {
+        V value = get(key);
+        if (value != null) {
+            refreshAheadIfNeeded(key, value, loader);
+            return value;
+        }
+
+        CompletableFuture<V> future = new CompletableFuture<>();
+        CompletableFuture<V> inProgress = inFlight.putIfAbsent(key, future);
+        if (inProgress != null) {
+            return await(inProgress); // Someone else is already loading this key
+        }
+
+        try {
+            // 💡 THINK: The previous leader may have finished between our get()
+            // and putIfAbsent() - double-check before loading again.
+            V loaded = peek(key);
+            if (loaded == null) {
+                loaded = loader.apply(key);
+                if (loaded != null) {
+                    put(key, loaded);
                 }
             }
+            future.complete(loaded);
+            return loaded;
+        } catch (RuntimeException | Error e) {
+            future.completeExceptionally(e);
+            throw e;
         } finally {
-            listLock.unlock();
+            inFlight.remove(key, future);
         }
     }
-    
-    // === Helper methods for doubly-linked list ===
-    
+
     /**
-     * Adds a node right after head (most recently used position).
-     * Must be called with listLock held.
+     * Starts an async reload if the entry is close to its write expiry and
+     * nobody is loading the key already. The caller keeps the current value.
      */
-    private void addToHead(Node<K, V> node) {
-        node.prev = head;
-        node.next = head.next;
-        head.next.prev = node;
-        head.next = node;
+    private void refreshAheadIfNeeded(K key, V currentValue, Function<? super K, ? extends V> loader) {
+        if (expireAfterWriteNanos == 0) {
+            return;
+        }
+        Node<K, V> node = cache.get(key);
+        if (node == null) {
+            return;
+        }
+        long remaining = node.writeTime + expireAfterWriteNanos - now();
+        if (remaining > expireAfterWriteNanos / REFRESH_AHEAD_DIVISOR) {
+            return;
+        }
+
+        CompletableFuture<V> future = new CompletableFuture<>();
+        if (inFlight.putIfAbsent(key, future) != null) {
+            return; // Already loading or refreshing
+        }
+        long writeTime = node.writeTime;
+        ForkJoinPool.commonPool().execute(() -> {
+            try {
+                V refreshed = loader.apply(key);
+                if (refreshed != null) {
+                    replaceIfUnchanged(key, node, writeTime, refreshed);
+                }
+                future.complete(refreshed != null ? refreshed : currentValue);
+            } catch (Throwable t) {
+                // Keep serving the old value until it expires; the next hit retries
+                future.completeExceptionally(t);
+            } finally {
+                inFlight.remove(key, future);
+            }
+        });
     }
-    
+
     /**
-     * Removes a node from its current position in the list.
-     * Must be called with listLock held.
+     * Installs a refreshed value unless the entry was removed or rewritten
+     * while the loader ran.
+     *
+     * ⚠️ AVOID: A blind put() here - it could overwrite a NEWER value that
+     * another thread put during the refresh.
      */
-    private void removeNode(Node<K, V> node) {
-        node.prev.next = node.next;
-        node.next.prev = node.prev;
+    private void replaceIfUnchanged(K key, Node<K, V> expectedNode, long expectedWriteTime, V newValue) {
+        int weight = weigher.weigh(key, newValue);
+        if (weight < 0) {
+            throw new IllegalArgumentException("Weight must not be negative: " + weight);
+        }
+        byte[] bytes = serializer == null ? null : serializer.serialize(newValue);
+
+        Segment<K, V> segment = segmentFor(key);
+        segment.listLock.lock();
+        try {
+            segment.maintenance();
+            // 📝 NOTE: Compare write times, not values - off-heap values are
+            // fresh copies on every read, so identity means nothing there.
+            if (cache.get(key) == expectedNode && expectedNode.isLinked()
+                    && expectedNode.writeTime == expectedWriteTime) {
+                update(segment, expectedNode, newValue, weight, bytes);
+            }
+        } finally {
+            segment.listLock.unlock();
+        }
+    }
+
+    /**
+     * Looks up a live value without touching recency or stats.
+     */
+    private V peek(K key) {
+        Node<K, V> node = cache.get(key);
+        if (node == null || (expires() && node.expiresAt - now() <= 0)) {
+            return null;
+        }
+        return segmentFor(key).readValue(node);
     }
-    
+
     /**
-     * Moves an existing node to the head (most recently used).
-     * Must be called with listLock held.
+     * Waits for another thread's load, rethrowing its failure unwrapped.
      */
-    private void moveToHead(Node<K, V> node) {
-        removeNode(node);
-        addToHead(node);
+    private static <V> V await(CompletableFuture<V> future) {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw e;
+        }
     }
-    
+
     /**
-     * Removes and returns the tail node (least recently used).
-     * Must be called with listLock held.
-     * 
-     * @return the removed node, or null if list is empty
+     * Forces pending maintenance (buffered reads, expired entries) in every segment.
      */
-    private Node<K, V> removeTail() {
-        Node<K, V> lru = tail.prev;
-        if (lru == head) {
-            return null; // List is empty
+    public void cleanUp() {
+        for (Segment<K, V> segment : segments) {
+            segment.listLock.lock();
+            try {
+                segment.maintenance();
+            } finally {
+                segment.listLock.unlock();
+            }
         }
-        removeNode(lru);
-        return lru;
     }
-    
+
+    private boolean expires() {
+        return expireAfterWriteNanos > 0 || expireAfterAccessNanos > 0;
+    }
+
+    /**
+     * Nanoseconds since this cache was created - never negative, unlike nanoTime().
+     */
+    private long now() {
+        return System.nanoTime() - startNanos;
+    }
+
+    private void setWriteTime(Node<K, V> node) {
+        if (expires()) {
+            long now = now();
+            node.writeTime = now;
+            node.expiresAt = deadline(now, now);
+        }
+    }
+
+    /**
+     * The earlier of "TTL after the last write" and "TTI after the last access".
+     */
+    private long deadline(long writeTime, long accessTime) {
+        long deadline = Long.MAX_VALUE;
+        if (expireAfterWriteNanos > 0) {
+            deadline = writeTime + expireAfterWriteNanos;
+        }
+        if (expireAfterAccessNanos > 0) {
+            deadline = Math.min(deadline, accessTime + expireAfterAccessNanos);
+        }
+        return deadline;
+    }
+
+    /**
+     * Drops an evicted node from the map (only if the map still points at it).
+     */
+    private void removeFromMap(Node<K, V> node) {
+        cache.remove(node.key, node);
+    }
+
     public int size() {
         return cache.size();
     }
+
+    public long getMaximumWeight() {
+        return maximumWeight;
+    }
+
+    /**
+     * Returns the total weight of all entries (the entry count without a Weigher).
+     *
+     * 📝 NOTE: Reads each segment's running total lock-free - O(segments),
+     * not O(entries).
+     */
+    public long getWeightedSize() {
+        long total = 0;
+        for (Segment<K, V> segment : segments) {
+            total += segment.weightedSize();
+        }
+        return total;
+    }
+
+    public int getSegmentCount() {
+        return segments.length;
+    }
+
+    /**
+     * Returns per-segment counters, in segment order.
+     *
+     * 💡 THINK: If one segment has far more hits or evictions than the
+     * others, keys are skewed - that segment's lock is your new bottleneck.
+     */
+    public List<CacheStats> getSegmentStats() {
+        List<CacheStats> stats = new ArrayList<>(segments.length);
+        for (Segment<K, V> segment : segments) {
+            stats.add(segment.snapshot());
+        }
+        return Collections.unmodifiableList(stats);
+    }
+
+    /**
+     * Returns counters summed over all segments.
+     */
+    public CacheStats getStats() {
+        CacheStats total = new CacheStats(0, 0, 0, 0, 0, 0);
+        for (CacheStats stats : getSegmentStats()) {
+            total = total.plus(stats);
+        }
+        return total;
+    }
+
+    // ==================== Snapshots ====================
+
+    /**
+     * Writes every live entry to a snapshot file, replacing it atomically.
+     *
+     * 📝 NOTE: Each segment's lock is held only while its node order is
+     * copied - serialization and I/O happen outside the lock, so the cache
+     * keeps serving. Entries written meanwhile may or may not be included.
+     *
+     * @param file where to write the snapshot
+     * @param keySerializer converts keys to bytes (and back, on load)
+     * @param valueSerializer converts values to bytes (and back, on load)
+     * @return number of entries written
+     */
+    public int writeSnapshot(Path file, Serializer<K> keySerializer,
+                             Serializer<V> valueSerializer) throws IOException {
+        try (SnapshotFile.Writer writer = new SnapshotFile.Writer(file, segments.length)) {
+            for (Segment<K, V> segment : segments) {
+                writer.beginSection();
+                for (Node<K, V> node : segment.recencyOrder()) {
+                    V value = segment.readValue(node);
+                    if (value == null || (expires() && node.expiresAt - now() <= 0)) {
+                        continue; // Evicted or expired since we copied the order
+                    }
+                    writer.write(keySerializer.serialize(node.key), valueSerializer.serialize(value));
+                }
+                writer.endSection();
+            }
+            return writer.finish();
+        }
+    }
+
+    /**
+     * Puts every entry of a snapshot file into this cache.
+     *
+     * 💡 THINK: Sections are replayed in parallel, each in file order. With
+     * the same segment count (and stable key hash codes) section i lands in
+     * segment i, so every segment is rebuilt in its original LRU order by a
+     * single thread while the others proceed under their own locks.
+     *
+     * ⚠️ AVOID: Expecting expiry deadlines to survive a restart - a loaded
+     * entry counts as freshly written.
+     *
+     * @param file a file written by writeSnapshot()
+     * @param keySerializer converts the stored key bytes back to keys
+     * @param valueSerializer converts the stored value bytes back to values
+     * @return number of entries loaded
+     * @throws IOException if the file is missing, truncated or not a snapshot
+     */
+    public int loadSnapshot(Path file, Serializer<K> keySerializer,
+                            Serializer<V> valueSerializer) throws IOException {
+        List<ByteBuffer> sections = SnapshotFile.readSections(file);
+        try {
+            return sections.parallelStream()
+                .mapToInt(section -> loadSection(section, keySerializer, valueSerializer))
+                .sum();
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    private int loadSection(ByteBuffer section, Serializer<K> keySerializer,
+                            Serializer<V> valueSerializer) {
+        int loaded = 0;
+        try {
+            while (section.hasRemaining()) {
+                K key = keySerializer.deserialize(SnapshotFile.nextField(section));
+                V value = valueSerializer.deserialize(SnapshotFile.nextField(section));
+                put(key, value);
+                loaded++;
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return loaded;
+    }
+
+    // ==================== Throughput Comparison ====================
+
+    /**
+     * Compares eager moveToHead() against buffered read recording.
+     *
+     * ⚠️ AVOID: Using this as a proper benchmark!
+     *   For accurate results, use JMH (Java Microbenchmark Harness).
+     *   This is just for demonstration.
+     */
+    public static void main(String[] args) throws InterruptedException {
+        int threads = Runtime.getRuntime().availableProcessors();
+        int capacity = 10_000;
+        long durationMs = 1_000;
+
+        // Hit ratio: a skewed hot set, interrupted by scans over cold keys
+        int[] trace = scanPollutedTrace(capacity, 2_000_000);
+        ConcurrentLRUCache<Integer, Integer> lru = new ConcurrentLRUCache<>(capacity, 16);
+        ConcurrentLRUCache<Integer, Integer> tinyLfu =
+            new ConcurrentLRUCache<>(capacity, 16, false, TinyLfuAdmission::new);
+        System.out.printf("Hit rate LRU:       %.3f%n", replay(lru, trace));
+        System.out.printf("Hit rate W-TinyLFU: %.3f%n", replay(tinyLfu, trace));
+        System.out.println();
+
+        System.out.println("Threads: " + threads + ", capacity: " + capacity
+            + ", 90% reads over " + (capacity * 2) + " keys");
+        System.out.println();
+
+        for (int segmentCount : new int[] {1, 16}) {
+            long eager = benchmark(new ConcurrentLRUCache<>(capacity, segmentCount, false),
+                threads, capacity * 2, durationMs);
+            long buffered = benchmark(new ConcurrentLRUCache<>(capacity, segmentCount, true),
+                threads, capacity * 2, durationMs);
+
+            System.out.printf("segments=%-3d eager:    %,12d ops/s%n", segmentCount, eager);
+            System.out.printf("segments=%-3d buffered: %,12d ops/s (%.2fx)%n",
+                segmentCount, buffered, buffered / (double) eager);
+        }
+    }
+
+    /**
+     * Replays a key trace (get, then put on miss) and returns the hit rate.
+     */
+    static double replay(ConcurrentLRUCache<Integer, Integer> cache, int[] trace) {
+        for (int key : trace) {
+            if (cache.get(key) == null) {
+                cache.put(key, key);
+            }
+        }
+        return cache.getStats().getHitRate();
+    }
+
+    private static int[] scanPollutedTrace(int capacity, int length) {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        int[] trace = new int[length];
+        int nextColdKey = Integer.MAX_VALUE / 2;
+        for (int i = 0; i < length; i++) {
+            if ((i / capacity) % 4 == 3) {
+                trace[i] = nextColdKey++;              // every 4th block: a one-time scan
+            } else {
+                double u = random.nextDouble();        // skewed: low keys are much hotter
+                trace[i] = (int) (capacity * 2 * u * u * u);
+            }
+        }
+        return trace;
+    }
+
+    private static long benchmark(ConcurrentLRUCache<Integer, Integer> cache, int threads,
+                                  int keySpace, long durationMs) throws InterruptedException {
+        for (int i = 0; i < keySpace; i++) {
+            cache.put(i, i);
+        }
+
+        LongAdder ops = new LongAdder();
+        Thread[] threadArray = new Thread[threads];
+        long deadline = System.nanoTime() + durationMs * 1_000_000L;
+
+        for (int i = 0; i < threads; i++) {
+            threadArray[i] = new Thread(() -> {
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                long count = 0;
+                while (System.nanoTime() < deadline) {
+                    int key = random.nextInt(keySpace);
+                    if (random.nextInt(10) == 0) {
+                        cache.put(key, key);
+                    } else {
+                        cache.get(key);
+                    }
+                    count++;
+                }
+                ops.add(count);
+            });
+        }
+
+        for (Thread t : threadArray) {
+            t.start();
+        }
+        for (Thread t : threadArray) {
+            t.join();
+        }
+
+        return ops.sum() * 1_000 / durationMs;
+    }
 }
@@ -1,6 +1,29 @@
 package com.concurrency.problems.tier3;
 
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ThreadLocalRandom;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongFieldUpdater;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
 
 /**
  * Classic Problem: SQS-like Message Queue with Competing Consumers
@@ -68,46 +91,428 @@ import java.util.concurrent.TimeUnit;
  * 
  * This enables AT-LEAST-ONCE delivery: if consumer crashes, message retries!
  * 
+ * 🚀 SHARDED DESIGN (scales with consumers):
+ *   One lock around one queue caps throughput at one core. Instead:
+ *   - Visible messages live in N shards, each a lock-free MPMC queue
+ *     (ConcurrentLinkedQueue, Michael-Scott). Producers pick a random shard.
+ *   - A consumer polls a random "home" shard; if it is empty it STEALS,
+ *     scanning the other shards from a random offset - so consumers rarely
+ *     collide on the same queue head.
+ *   - Each receive creates a delivery record with its own receiptHandle and
+ *     puts it in a ConcurrentHashMap (internally lock-striped per bin).
+ *   - acknowledge(), extendVisibility() and the timeout all race on ONE CAS
+ *     of the delivery's deadline - exactly one of "acked" or "returned to
+ *     the queue" can win, with no lock.
+ *
+ * 🚀 VISIBILITY TIMEOUTS (timing wheel):
+ *   Scanning every in-flight message for timeouts is O(in-flight) and a
+ *   DelayQueue is one shared heap. Each delivery is instead an intrusive
+ *   timer in one of a few lock-striped TimerWheels (~1ms ticks): receive()
+ *   schedules it in O(1) and advancing the clock visits only due buckets.
+ *   acknowledge() and extendVisibility() never touch the wheel at all -
+ *   when a bucket comes due, an acked delivery is dropped and an extended
+ *   one is simply re-bucketed at its new deadline. Nothing is reallocated.
+ *
+ * 🚀 DEAD-LETTER QUEUE:
+ *   When a delivery times out after its maxReceiveCount-th receive, the
+ *   timeout hands it to the DLQ instead of a shard - it is never visible
+ *   again, and no consumer can see it half-moved. Once the bug is fixed,
+ *   redrive(max) moves messages back (receive count reset) in small
+ *   lock-free batches, so live send/receive traffic keeps flowing.
+ *
+ * 🚀 PRIORITY LANES:
+ *   send(body, priority) puts a message in its priority's lane - each lane
+ *   its own set of lock-free shards, with its own LongAdder count. A
+ *   consumer picks the lane to try first at random, weighted 4:2:1 for
+ *   HIGH:NORMAL:LOW, then falls back to the others from high to low.
+ *   Urgent messages mostly go first, yet while LOW has messages about one
+ *   receive in seven tries it first - bulk traffic slows down but never
+ *   starves. The weighted pick uses ThreadLocalRandom: no shared
+ *   round-robin counter for consumers to fight over.
+ *
+ * 🚀 LONG POLLING (dual stack, targeted wakeup):
+ *   A consumer that finds every shard empty pushes a Waiter - a reservation,
+ *   as in a dual queue (see SynchronousDualQueue in ch10) - on a lock-free
+ *   stack and parks. A producer that sees a waiter pops it and hands the
+ *   message straight into its slot: one CAS, one unpark, no shard, and no
+ *   other consumer wakes up. With no waiters, send() pays one volatile read.
+ *   Idle consumers are parked for their whole timeout, except one
+ *   "timekeeper" that wakes every tick while deliveries are in flight, so
+ *   visibility timeouts still fire without a background thread.
+ *
+ * 🚀 BATCHES:
+ *   sendBatch(), receiveBatch() and acknowledgeBatch() pay the fixed costs
+ *   once per batch instead of once per message: one shard (or one group
+ *   lock), one counter update, one wheel lock, one log append and one
+ *   metrics callback for up to N messages.
+ *
+ * 🚀 FIFO MESSAGE GROUPS:
+ *   send(groupId, body) orders messages within a group and allows one in
+ *   flight per group. Only a group's HEAD message is ever in the shards;
+ *   the rest wait in the group's own sub-queue. Acknowledging the head (or
+ *   its move to the DLQ) releases the next one, and a timed-out head is
+ *   simply requeued - so the shards act as the ready-group scheduler and
+ *   different groups are received in parallel like any other messages.
+ *
+ * 🚀 DEDUPLICATION:
+ *   A producer that times out and retries would send the message twice.
+ *   sendDeduplicated(deduplicationId, body) - or sendDeduplicated(body),
+ *   which uses the content itself - drops a send whose id was already seen
+ *   within the deduplication window (5 minutes, like SQS) and returns the
+ *   original message ID. Seen ids live in a time-bucketed set (see
+ *   DeduplicationWindow) that expires a whole bucket at a time.
+ *
+ *   TRADE-OFF: The window is in memory only - a retry that arrives after a
+ *   restart of a durable queue is not recognized.
+ *
+ * 🚀 DURABILITY (optional write-ahead log):
+ *   Give the queue a directory and a serializer and every send, receive,
+ *   ack, dead-letter and redrive is appended to a segmented, memory-mapped
+ *   log (see MessageLog). send() returns only once its record is on disk,
+ *   with concurrent producers sharing each fsync (group commit). On startup
+ *   the log is replayed: unacknowledged messages become visible again with
+ *   their receive counts, dead letters return to the DLQ. Segments whose
+ *   messages are all acknowledged are deleted, oldest first.
+ *
+ *   📝 NOTE: extendVisibility() is not logged - after a restart every
+ *   in-flight message is visible again anyway, as if its consumer crashed.
+ *
+ * 🚀 METRICS:
+ *   setMetricsListener() plugs in a MetricsListener that hears about every
+ *   send, receive (with its send→receive latency and receive count, so
+ *   redeliveries stand out), acknowledgement (with its receive→ack latency)
+ *   and visibility timeout. QueueMetrics records the latencies in lock-free
+ *   log-linear histograms (see LatencyHistogram) for p50/p99/max reports.
+ *   Without a listener each event is one call to an empty default method,
+ *   which the JIT inlines away.
+ *
+ *   TRADE-OFF: Like standard SQS, ordering is best-effort only.
+ * 
  * @param <T> message type
  */
-public class ConcurrentMessageQueue<T> {
+public class ConcurrentMessageQueue<T> implements Closeable {
     
     /**
      * A message wrapper with metadata for visibility tracking.
+     * 
+     * 📝 NOTE: Every receive() returns a NEW Message - one per delivery - with
+     * its own receiptHandle and receiveCount. A consumer's handle therefore
+     * never changes under it when the message is redelivered to someone else.
      */
-    public static class Message<T> {
+    public static class Message<T> extends TimerWheel.Timer {
+        // expiresAt once the delivery was acknowledged or returned to the queue
+        private static final long SETTLED = Long.MIN_VALUE;
+        
+        // Visibility tracking: the inherited expiresAt is the (relative nanos)
+        // time this delivery becomes visible again - changed by CAS only
+        private static final AtomicLongFieldUpdater<TimerWheel.Timer> VISIBLE_AT =
+            AtomicLongFieldUpdater.newUpdater(TimerWheel.Timer.class, "expiresAt");
+        
         private final String messageId;
+        private final String groupId;        // FIFO group, or null
+        private final Priority priority;
         private final T body;
         private final long enqueuedAt;
         
-        // Visibility tracking
-        private long visibleAt;        // When message becomes visible again
-        private int receiveCount;      // How many times message was received
-        private String receiptHandle;  // Token for acknowledging this receipt
+        private final int receiveCount;      // How many times message was received
+        private final String receiptHandle;  // Token for acknowledging this receipt
+        
+        // System.nanoTime() of the send (or redrive) and of this delivery, for metrics
+        private final long sentAt;
+        private final long receivedAt;
+        
+        // Log segment holding the SEND record (null without a log)
+        private final MessageLog.Segment segment;
         
         public Message(String messageId, T body) {
+            this(messageId, null, Priority.NORMAL, body, System.currentTimeMillis(), 0, null);
+        }
+        
+        private Message(String messageId, String groupId, Priority priority, T body, long enqueuedAt,
+                        int receiveCount, MessageLog.Segment segment) {
             this.messageId = messageId;
+            this.groupId = groupId;
+            this.priority = priority;
             this.body = body;
-            this.enqueuedAt = System.currentTimeMillis();
-            this.visibleAt = System.currentTimeMillis(); // Visible immediately
-            this.receiveCount = 0;
+            this.enqueuedAt = enqueuedAt;
+            this.receiveCount = receiveCount;
+            this.receiptHandle = null;
+            this.segment = segment;
+            this.sentAt = System.nanoTime();
+            this.receivedAt = 0;
+        }
+        
+        private Message(Message<T> deadLetter) {
+            this(deadLetter.messageId, deadLetter.groupId, deadLetter.priority, deadLetter.body,
+                deadLetter.enqueuedAt, 0, deadLetter.segment);
+        }
+        
+        private Message(Message<T> previous, String receiptHandle, long visibleAt) {
+            this.messageId = previous.messageId;
+            this.groupId = previous.groupId;
+            this.priority = previous.priority;
+            this.body = previous.body;
+            this.enqueuedAt = previous.enqueuedAt;
+            this.expiresAt = visibleAt;
+            this.receiveCount = previous.receiveCount + 1;
+            this.receiptHandle = receiptHandle;
+            this.segment = previous.segment;
+            this.sentAt = previous.sentAt;
+            this.receivedAt = System.nanoTime();
         }
         
         public String getMessageId() { return messageId; }
+        public String getGroupId() { return groupId; }
+        public Priority getPriority() { return priority; }
         public T getBody() { return body; }
+        public long getEnqueuedAt() { return enqueuedAt; }
         public String getReceiptHandle() { return receiptHandle; }
         public int getReceiveCount() { return receiveCount; }
         
-        // TODO: Add visibility management methods
+        /**
+         * Creates a fresh copy for redrive - receive count starts over.
+         */
+        Message<T> redrive() {
+            return new Message<>(this);
+        }
+        
+        /**
+         * Creates the record of this message's next delivery.
+         */
+        Message<T> deliver(String receiptHandle, long visibleAt) {
+            return new Message<>(this, receiptHandle, visibleAt);
+        }
+        
+        /**
+         * Ends this delivery (acknowledge). Fails if it already ended.
+         */
+        boolean settle() {
+            long current;
+            do {
+                current = expiresAt;
+                if (current == SETTLED) {
+                    return false;
+                }
+            } while (!VISIBLE_AT.compareAndSet(this, current, SETTLED));
+            return true;
+        }
+        
+        /**
+         * @return true until the delivery is acknowledged or timed out
+         */
+        boolean isPending() {
+            return expiresAt != SETTLED;
+        }
+        
+        /**
+         * Ends this delivery because its visibility timeout passed.
+         */
+        boolean settleIfExpired(long now) {
+            long current;
+            do {
+                current = expiresAt;
+                if (current == SETTLED || current > now) {
+                    return false;
+                }
+            } while (!VISIBLE_AT.compareAndSet(this, current, SETTLED));
+            return true;
+        }
+        
+        /**
+         * Pushes the deadline out - only while the delivery is still invisible.
+         * 
+         * 💡 THINK: No reschedule here! The timer stays in its old (earlier)
+         * bucket; when that bucket comes due the wheel sees the later deadline
+         * and cascades the timer to the right bucket.
+         */
+        boolean extend(long additionalNanos, long now) {
+            long current;
+            do {
+                current = expiresAt;
+                if (current == SETTLED || current <= now) {
+                    return false; // Too late: acknowledged or already timed out
+                }
+            } while (!VISIBLE_AT.compareAndSet(this, current, current + additionalNanos));
+            return true;
+        }
+    }
+    
+    /**
+     * Priority lanes, highest first. The weight is a lane's share of
+     * "try me first" picks while it has messages.
+     */
+    public enum Priority {
+        HIGH(4),
+        NORMAL(2),
+        LOW(1);
+        
+        private final int weight;
+        
+        Priority(int weight) {
+            this.weight = weight;
+        }
+        
+        public int getWeight() {
+            return weight;
+        }
     }
     
+    /**
+     * Hears about queue events - see QueueMetrics for a ready-made one.
+     * 
+     * 📝 NOTE: Called on the sending, receiving and acknowledging threads,
+     * often concurrently, so implementations must be thread-safe and cheap
+     * (LongAdder, not synchronized). Every method does nothing by default.
+     */
+    public interface MetricsListener {
+        
+        /**
+         * A message was sent (not called for dropped duplicates).
+         */
+        default void onSend() {
+        }
+        
+        /**
+         * A message was received.
+         * 
+         * @param sendToReceiveNanos time since it was sent (or redriven)
+         * @param receiveCount 1 for the first delivery, more for a redelivery
+         */
+        default void onReceive(long sendToReceiveNanos, int receiveCount) {
+        }
+        
+        /**
+         * A delivery was acknowledged.
+         * 
+         * @param receiveToAckNanos time since it was received
+         */
+        default void onAcknowledge(long receiveToAckNanos) {
+        }
+        
+        /**
+         * Several deliveries were acknowledged by one acknowledgeBatch() call.
+         * Override to record them in one go; by default each is reported
+         * to onAcknowledge().
+         * 
+         * @param receiveToAckNanos time since each was received
+         */
+        default void onAcknowledgeBatch(long[] receiveToAckNanos) {
+            for (long nanos : receiveToAckNanos) {
+                onAcknowledge(nanos);
+            }
+        }
+        
+        /**
+         * A delivery's visibility timeout passed before it was acknowledged.
+         * 
+         * @param movedToDeadLetters true if it went to the DLQ, false if it was requeued
+         */
+        default void onVisibilityTimeout(boolean movedToDeadLetters) {
+        }
+    }
+    
+    private static final MetricsListener NO_METRICS = new MetricsListener() { };
+    
+    private static final Priority[] PRIORITIES = Priority.values();
+    private static final int TOTAL_WEIGHT = Arrays.stream(PRIORITIES).mapToInt(Priority::getWeight).sum();
+    
+    // How long sendDeduplicated() remembers an id unless configured (as SQS)
+    static final long DEFAULT_DEDUPLICATION_WINDOW_MS = 5 * 60 * 1000;
+    private static final int DEDUPLICATION_BUCKETS = 10;
+    
+    // Messages moved per redrive() batch before yielding to live traffic
+    static final int REDRIVE_BATCH_SIZE = 64;
+    
+    // Level 0 wheel tick: 2^20 ns ~ 1ms
+    private static final int WHEEL_RESOLUTION_SHIFT = 20;
+    private static final long TICK_NANOS = 1L << WHEEL_RESOLUTION_SHIFT;
+    
     private final int visibilityTimeoutMs;  // How long message stays invisible
     private final int maxReceiveCount;       // Max receives before DLQ
     
-    // TODO: Add data structures for:
-    // - Main queue of messages
-    // - Map of message ID → Message for quick lookup
-    // - Track in-flight (invisible) messages
+    // Visible messages: lanes[priority][shard], lock-free MPMC queues, with
+    // one LongAdder per lane (ConcurrentLinkedQueue.size() is O(n))
+    private final ConcurrentLinkedQueue<Message<T>>[][] lanes;
+    private final int shardMask;
+    private final LongAdder[] laneCounts = new LongAdder[PRIORITIES.length];
+    
+    // receiptHandle -> current delivery (size() sums striped counter cells)
+    private final ConcurrentHashMap<String, Message<T>> inFlight = new ConcurrentHashMap<>();
+    
+    // Visibility timers, striped like the shards: each wheel has its own lock
+    private final TimerWheel<Message<T>>[] wheels;
+    private final ReentrantLock[] wheelLocks;
+    private final Consumer<Message<T>>[] onVisibilityTimeout;
+    private final long startNanos = System.nanoTime();
+    private final AtomicLong nextTickAt = new AtomicLong();
+    
+    /**
+     * Messages of one FIFO group waiting behind its head.
+     * 
+     * 📝 NOTE: The group is in the map exactly while its head is visible or
+     * in flight. The last release removes it, so idle groups cost nothing.
+     */
+    private static final class MessageGroup<T> {
+        final ArrayDeque<Message<T>> waiting = new ArrayDeque<>();
+        boolean active;   // The head is visible or in flight
+        boolean removed;  // Dropped from the map - senders must retry
+    }
+    
+    // groupId -> its waiting messages, plus how many wait in all groups
+    private final ConcurrentHashMap<String, MessageGroup<T>> groups = new ConcurrentHashMap<>();
+    private final LongAdder groupedWaiting = new LongAdder();
+    
+    // Messages whose last allowed delivery timed out, plus O(1) counters
+    private final ConcurrentLinkedQueue<Message<T>> deadLetters = new ConcurrentLinkedQueue<>();
+    private final LongAdder deadLetterDepth = new LongAdder();
+    private final LongAdder deadLettered = new LongAdder();
+    private final LongAdder redriven = new LongAdder();
+    private final LongAdder redriveNanos = new LongAdder();
+    
+    /**
+     * A consumer parked in receive(timeout, unit): the reservation node of the dual stack.
+     * 
+     * 📝 NOTE: The slot is claimed exactly once - by a producer handing over
+     * a message, or by the waiter itself cancelling. Whoever loses the CAS
+     * knows the other side owns the outcome.
+     */
+    private static final class Waiter<T> {
+        final Thread thread = Thread.currentThread();
+        final AtomicReference<Object> slot = new AtomicReference<>();
+        Waiter<T> next; // Written before the push CAS publishes the node
+        
+        boolean cancel() {
+            return slot.compareAndSet(null, CANCELLED);
+        }
+        
+        boolean isCancelled() {
+            return slot.get() == CANCELLED;
+        }
+        
+        @SuppressWarnings("unchecked")
+        Message<T> handedOff() {
+            Object item = slot.get();
+            return item == CANCELLED ? null : (Message<T>) item;
+        }
+    }
+    
+    private static final Object CANCELLED = new Object();
+    
+    // Long polling: a Treiber stack of parked consumers (LIFO - the most
+    // recently parked thread has the warmest cache), plus the one waiter
+    // that keeps the visibility timers ticking
+    private final AtomicReference<Waiter<T>> waiters = new AtomicReference<>();
+    private final AtomicReference<Waiter<T>> timekeeper = new AtomicReference<>();
+    
+    // Optional write-ahead log (both null for an in-memory queue)
+    private final MessageLog log;
+    private final Serializer<T> serializer;
+    
+    // Recently seen deduplication ids -> the message ID they produced
+    private final DeduplicationWindow deduplication;
+    private final LongAdder duplicates = new LongAdder();
+    
+    private volatile MetricsListener metrics = NO_METRICS;
     
     /**
      * Creates a message queue with specified visibility timeout.
@@ -116,13 +521,104 @@ public class ConcurrentMessageQueue<T> {
      * @param maxReceiveCount max times a message can be received before DLQ
      */
     public ConcurrentMessageQueue(int visibilityTimeoutMs, int maxReceiveCount) {
+        this(visibilityTimeoutMs, maxReceiveCount, Runtime.getRuntime().availableProcessors());
+    }
+    
+    /**
+     * Creates a message queue with an explicit shard count.
+     * 
+     * @param visibilityTimeoutMs how long a received message stays invisible
+     * @param maxReceiveCount max times a message can be received before DLQ
+     * @param shardCount number of visible-message queues (rounded up to a power of two)
+     */
+    public ConcurrentMessageQueue(int visibilityTimeoutMs, int maxReceiveCount, int shardCount) {
+        this(visibilityTimeoutMs, maxReceiveCount, shardCount, DEFAULT_DEDUPLICATION_WINDOW_MS, null, null);
+    }
+    
+    /**
+     * Creates a message queue with an explicit deduplication window.
+     * 
+     * @param visibilityTimeoutMs how long a received message stays invisible
+     * @param maxReceiveCount max times a message can be received before DLQ
+     * @param shardCount number of visible-message queues (rounded up to a power of two)
+     * @param deduplicationWindowMs how long sendDeduplicated() remembers an id
+     */
+    public ConcurrentMessageQueue(int visibilityTimeoutMs, int maxReceiveCount, int shardCount,
+                                  long deduplicationWindowMs) {
+        this(visibilityTimeoutMs, maxReceiveCount, shardCount, deduplicationWindowMs, null, null);
+    }
+    
+    /**
+     * Creates a durable message queue, recovering any messages already in
+     * the log directory.
+     * 
+     * @param visibilityTimeoutMs how long a received message stays invisible
+     * @param maxReceiveCount max times a message can be received before DLQ
+     * @param shardCount number of visible-message queues (rounded up to a power of two)
+     * @param logDirectory directory of the write-ahead log (created if missing)
+     * @param serializer converts message bodies to and from log records
+     */
+    public ConcurrentMessageQueue(int visibilityTimeoutMs, int maxReceiveCount, int shardCount,
+                                  Path logDirectory, Serializer<T> serializer)
+            throws IOException {
+        this(visibilityTimeoutMs, maxReceiveCount, shardCount, logDirectory, serializer,
+            MessageLog.DEFAULT_SEGMENT_BYTES);
+    }
+    
+    ConcurrentMessageQueue(int visibilityTimeoutMs, int maxReceiveCount, int shardCount,
+                           Path logDirectory, Serializer<T> serializer,
+                           int segmentBytes) throws IOException {
+        this(visibilityTimeoutMs, maxReceiveCount, shardCount, DEFAULT_DEDUPLICATION_WINDOW_MS,
+            openLog(logDirectory, serializer, segmentBytes), serializer);
+    }
+    
+    @SuppressWarnings("unchecked")
+    private ConcurrentMessageQueue(int visibilityTimeoutMs, int maxReceiveCount, int shardCount,
+                                   long deduplicationWindowMs, MessageLog log,
+                                   Serializer<T> serializer) {
+        if (visibilityTimeoutMs <= 0 || maxReceiveCount <= 0 || shardCount <= 0 || deduplicationWindowMs <= 0) {
+            throw new IllegalArgumentException(
+                "Visibility timeout, max receive count, shard count and deduplication window must be positive");
+        }
         this.visibilityTimeoutMs = visibilityTimeoutMs;
         this.maxReceiveCount = maxReceiveCount;
-        // TODO: Initialize data structures
+        int count = 1 << (32 - Integer.numberOfLeadingZeros(shardCount - 1));
+        this.lanes = (ConcurrentLinkedQueue<Message<T>>[][]) new ConcurrentLinkedQueue[PRIORITIES.length][count];
+        for (int lane = 0; lane < PRIORITIES.length; lane++) {
+            for (int i = 0; i < count; i++) {
+                lanes[lane][i] = new ConcurrentLinkedQueue<>();
+            }
+            laneCounts[lane] = new LongAdder();
+        }
+        this.shardMask = count - 1;
+        this.wheels = (TimerWheel<Message<T>>[]) new TimerWheel[count];
+        this.wheelLocks = new ReentrantLock[count];
+        this.onVisibilityTimeout = (Consumer<Message<T>>[]) new Consumer[count];
+        for (int i = 0; i < count; i++) {
+            final int stripe = i;
+            wheels[i] = new TimerWheel<>(0, WHEEL_RESOLUTION_SHIFT);
+            wheelLocks[i] = new ReentrantLock();
+            onVisibilityTimeout[i] = delivery -> onVisibilityTimeout(stripe, delivery);
+        }
+        this.deduplication = new DeduplicationWindow(
+            TimeUnit.MILLISECONDS.toNanos(deduplicationWindowMs), DEDUPLICATION_BUCKETS);
+        this.log = log;
+        this.serializer = serializer;
+        if (log != null) {
+            recover();
+        }
+    }
+    
+    private static MessageLog openLog(Path logDirectory, Serializer<?> serializer,
+                                      int segmentBytes) throws IOException {
+        if (logDirectory == null || serializer == null) {
+            throw new IllegalArgumentException("A durable queue needs a log directory and a serializer");
+        }
+        return new MessageLog(logDirectory, segmentBytes);
     }
     
     /**
-     * TODO: Send a message to the queue.
+     * Send a message to the queue.
      * 
      * 🔑 HINT:
      *   - Generate unique message ID (UUID)
@@ -133,16 +629,177 @@ public class ConcurrentMessageQueue<T> {
      * @return the message ID
      */
     public String send(T body) {
-        // TODO: Implement send
-        // Step 1: Generate UUID for message ID
-        // Step 2: Create Message wrapper
-        // Step 3: Add to queue (synchronized or use concurrent collection)
-        // Step 4: Return message ID
-        return null;
+        return send(body, Priority.NORMAL);
+    }
+    
+    /**
+     * Sends a message to a priority lane.
+     * 
+     * @param body the message content
+     * @param priority the lane to send to
+     * @return the message ID
+     */
+    public String send(T body, Priority priority) {
+        if (priority == null) {
+            throw new IllegalArgumentException("priority must not be null");
+        }
+        Message<T> message = newMessage(newId(), null, priority, body);
+        if (log != null) {
+            log.sync(); // Group commit: shares the fsync with concurrent senders
+        }
+        enqueue(message);
+        return message.getMessageId();
+    }
+    
+    /**
+     * Sends a message to a FIFO group.
+     * 
+     * Messages of one group are received in send order, one at a time: the
+     * next becomes visible only when the previous one is acknowledged or
+     * moved to the DLQ. Messages of different groups don't wait for each other.
+     * 
+     * ⚠️ AVOID: One global "ordered" queue! Ordering is only promised per
+     * group, so a slow group must never hold up the others.
+     * 
+     * @param groupId the ordering group
+     * @param body the message content
+     * @return the message ID
+     */
+    public String send(String groupId, T body) {
+        if (groupId == null) {
+            throw new IllegalArgumentException("groupId must not be null");
+        }
+        Message<T> message = newMessage(newId(), groupId, Priority.NORMAL, body);
+        if (log != null) {
+            log.sync();
+        }
+        sendToGroup(message);
+        return message.getMessageId();
+    }
+    
+    /**
+     * Sends a message unless one with the same deduplication id was sent
+     * within the deduplication window.
+     * 
+     * 📝 NOTE: The id is recorded BEFORE the message is sent, so a retry
+     * racing with the original on another thread is dropped too. If the
+     * send then fails (e.g. the log append throws), the id is forgotten
+     * again so the caller's retry goes through.
+     * 
+     * @param deduplicationId identifies the logical message across retries
+     * @param body the message content
+     * @return the message ID - of the original message for a duplicate
+     */
+    public String sendDeduplicated(String deduplicationId, T body) {
+        if (deduplicationId == null) {
+            throw new IllegalArgumentException("deduplicationId must not be null");
+        }
+        return sendUnlessSeen(deduplicationId, body);
     }
     
     /**
-     * TODO: Receive a message from the queue.
+     * Sends a message unless the same content was sent within the
+     * deduplication window (content-based deduplication).
+     * 
+     * 💡 THINK: What is "the same content"? A durable queue hashes the
+     * serialized body (SHA-256, as SQS does), so only 32 bytes are kept per
+     * message. An in-memory queue has no serializer and keys the window by
+     * the body itself - its equals() and hashCode() decide.
+     * 
+     * @param body the message content
+     * @return the message ID - of the original message for a duplicate
+     */
+    public String sendDeduplicated(T body) {
+        if (body == null) {
+            throw new IllegalArgumentException("Content-based deduplication needs a body");
+        }
+        return sendUnlessSeen(serializer == null ? body : sha256(serializer.serialize(body)), body);
+    }
+    
+    /**
+     * Sends several messages at once.
+     * 
+     * @param bodies the message contents
+     * @return the message IDs, in the same order as bodies
+     */
+    public List<String> sendBatch(List<T> bodies) {
+        return sendBatch(bodies, Priority.NORMAL);
+    }
+    
+    /**
+     * Sends several messages at once to a priority lane.
+     * 
+     * 💡 THINK: What does a batch save? All messages go to ONE shard and the
+     * visible count is bumped once - instead of n random shards and n
+     * counter updates. Parked consumers are then handed messages from it.
+     * 
+     * 📝 NOTE: Batches are not deduplicated - retry a failed batch with
+     * sendDeduplicated() per message if duplicates matter.
+     * 
+     * @param bodies the message contents
+     * @param priority the lane to send to
+     * @return the message IDs, in the same order as bodies
+     */
+    public List<String> sendBatch(List<T> bodies, Priority priority) {
+        if (priority == null) {
+            throw new IllegalArgumentException("priority must not be null");
+        }
+        List<String> messageIds = new ArrayList<>(bodies.size());
+        if (bodies.isEmpty()) {
+            return messageIds;
+        }
+        List<Message<T>> messages = new ArrayList<>(bodies.size());
+        for (T body : bodies) {
+            messages.add(newMessage(newId(), null, priority, body));
+        }
+        if (log != null) {
+            log.sync(); // One fsync for the whole batch
+        }
+        int lane = priority.ordinal();
+        ConcurrentLinkedQueue<Message<T>> shard = lanes[lane][ThreadLocalRandom.current().nextInt() & shardMask];
+        for (Message<T> message : messages) {
+            shard.offer(message);
+            messageIds.add(message.getMessageId());
+        }
+        laneCounts[lane].add(messageIds.size());
+        // Publish the whole batch first, so a woken receiveBatch() can take all of it
+        wakeLateWaiters();
+        return messageIds;
+    }
+    
+    /**
+     * Sends several messages at once to a FIFO group, in list order.
+     * 
+     * 📝 NOTE: The group is locked once for the whole batch: the first
+     * message becomes visible if the group is idle, the rest queue behind it.
+     * 
+     * @param groupId the ordering group
+     * @param bodies the message contents
+     * @return the message IDs, in the same order as bodies
+     */
+    public List<String> sendBatch(String groupId, List<T> bodies) {
+        if (groupId == null) {
+            throw new IllegalArgumentException("groupId must not be null");
+        }
+        List<String> messageIds = new ArrayList<>(bodies.size());
+        if (bodies.isEmpty()) {
+            return messageIds;
+        }
+        List<Message<T>> messages = new ArrayList<>(bodies.size());
+        for (T body : bodies) {
+            Message<T> message = newMessage(newId(), groupId, Priority.NORMAL, body);
+            messages.add(message);
+            messageIds.add(message.getMessageId());
+        }
+        if (log != null) {
+            log.sync();
+        }
+        sendToGroup(groupId, messages);
+        return messageIds;
+    }
+    
+    /**
+     * Receive a message from the queue.
      * 
      * 🔑 HINT:
      *   - Find a VISIBLE message (visibleAt <= now)
@@ -156,83 +813,772 @@ public class ConcurrentMessageQueue<T> {
      * @return a message, or null if no visible messages
      */
     public Message<T> receive() {
-        // TODO: Implement receive
-        // Step 1: Lock the queue
-        // Step 2: Find first message where visibleAt <= now
-        // Step 3: Update visibleAt = now + visibilityTimeoutMs
-        // Step 4: Generate unique receipt handle (UUID)
-        // Step 5: Increment receiveCount
-        // Step 6: If receiveCount > maxReceiveCount, move to DLQ
-        // Step 7: Return message (or null)
-        return null;
+        advanceWheels(now());
+        Message<T> message = pollAnyShard();
+        return message == null ? null : deliver(message);
     }
     
     /**
-     * TODO: Receive with long polling (wait if queue is empty).
+     * Receive with long polling (wait if queue is empty).
      * 
-     * 💡 THINK: Use wait/notify or Condition to avoid busy waiting!
+     * 💡 THINK: Why not a Condition and signalAll() on every send?
+     *   With hundreds of idle consumers every message would wake them all,
+     *   and all but one would find nothing and park again (thundering herd).
+     *   Here a parked consumer is only ever woken by the producer that hands
+     *   it a message - or, as timekeeper, by the clock.
+     * 
+     * ⚠️ AVOID: Parking without re-checking! A producer that looked at the
+     * stack just before our push offered to a shard instead, so we poll the
+     * shards AFTER pushing. Producers re-check the stack after offering too
+     * (see wakeLateWaiters), so one of the two always sees the other.
      * 
      * @param timeout max time to wait
      * @param unit time unit
      * @return a message, or null if timeout expires
      */
     public Message<T> receive(long timeout, TimeUnit unit) throws InterruptedException {
-        // TODO: Implement long polling receive
-        // Step 1: Try receive()
-        // Step 2: If null, wait until timeout or notify
-        // Step 3: Retry receive() after wake
-        return null;
+        Message<T> delivery = receive();
+        if (delivery != null || timeout <= 0) {
+            return delivery;
+        }
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        Waiter<T> waiter = new Waiter<>();
+        push(waiter);
+        try {
+            while (true) {
+                advanceWheels(now()); // A timed-out delivery may be handed to us right here
+                Message<T> message = waiter.handedOff();
+                if (message != null) {
+                    return deliver(message);
+                }
+                message = pollAnyShard();
+                if (message != null) {
+                    if (!waiter.cancel()) {
+                        enqueue(waiter.handedOff()); // Got one each way - give one back
+                    }
+                    return deliver(message);
+                }
+                long remaining = deadline - System.nanoTime();
+                boolean interrupted = Thread.interrupted();
+                if (remaining <= 0 || interrupted) {
+                    if (!waiter.cancel()) {
+                        message = waiter.handedOff(); // A producer beat the deadline
+                        if (!interrupted) {
+                            return deliver(message);
+                        }
+                        enqueue(message);
+                    }
+                    if (interrupted) {
+                        throw new InterruptedException();
+                    }
+                    return null;
+                }
+                LockSupport.parkNanos(this, keepsTime(waiter) ? Math.min(remaining, TICK_NANOS) : remaining);
+            }
+        } finally {
+            leave(waiter);
+        }
     }
     
     /**
-     * TODO: Acknowledge successful processing of a message.
+     * Receives up to maxMessages messages, waiting only if none is visible.
      * 
-     * 🔑 HINT:
-     *   - Validate receipt handle matches current receipt
-     *   - Remove message from queue permanently
-     *   - Return true if successful
+     * 📝 NOTE: Like SQS ReceiveMessage, the call returns as soon as it has
+     * ANY messages - it never waits to fill the batch. The wheel is advanced
+     * once and all deliveries are scheduled under a single stripe lock.
+     * 
+     * @param maxMessages maximum number of messages to return
+     * @param waitTimeMs how long to wait for the first message (0 = don't wait)
+     * @return the received messages (empty if none arrived in time)
+     */
+    public List<Message<T>> receiveBatch(int maxMessages, long waitTimeMs) throws InterruptedException {
+        if (maxMessages <= 0) {
+            throw new IllegalArgumentException("maxMessages must be positive: " + maxMessages);
+        }
+        List<Message<T>> deliveries = new ArrayList<>(Math.min(maxMessages, 256));
+        receiveUpTo(maxMessages, deliveries);
+        if (deliveries.isEmpty() && waitTimeMs > 0) {
+            Message<T> first = receive(waitTimeMs, TimeUnit.MILLISECONDS);
+            if (first != null) {
+                deliveries.add(first);
+                receiveUpTo(maxMessages - 1, deliveries);
+            }
+        }
+        return deliveries;
+    }
+    
+    /**
+     * Acknowledge successful processing of a message.
      * 
      * ⚠️ AVOID: Accepting stale receipt handles!
      *   If message was re-received by another consumer, old handle is invalid.
+     *   Here that falls out naturally: a timed-out delivery is settled and
+     *   removed from the in-flight map before the message is requeued.
      * 
      * @param receiptHandle the handle from receive()
      * @return true if acknowledged, false if handle invalid/expired
      */
     public boolean acknowledge(String receiptHandle) {
-        // TODO: Implement acknowledge
-        // Step 1: Find message by receipt handle
-        // Step 2: Verify handle is still valid (not re-received)
-        // Step 3: Remove message from queue
-        // Step 4: Return success/failure
-        return false;
+        Message<T> delivery = settle(receiptHandle);
+        if (delivery == null) {
+            return false;
+        }
+        metrics.onAcknowledge(System.nanoTime() - delivery.receivedAt);
+        if (log != null) {
+            log.appendAck(delivery.getMessageId(), delivery.segment);
+        }
+        if (delivery.groupId != null) {
+            releaseGroup(delivery.groupId);
+        }
+        return true;
+    }
+    
+    /**
+     * Acknowledges several deliveries at once.
+     * 
+     * 📝 NOTE: Each handle still needs its own CAS - they are independent
+     * deliveries, and any of them may have timed out. Stale and unknown
+     * handles are skipped, not an error for the whole batch. What follows
+     * is paid once: one clock read, one metrics callback, one log append.
+     * 
+     * @param receiptHandles handles from receive() or receiveBatch()
+     * @return number of deliveries acknowledged
+     */
+    public int acknowledgeBatch(Collection<String> receiptHandles) {
+        List<Message<T>> settled = new ArrayList<>(receiptHandles.size());
+        for (String receiptHandle : receiptHandles) {
+            Message<T> delivery = settle(receiptHandle);
+            if (delivery != null) {
+                settled.add(delivery);
+            }
+        }
+        int count = settled.size();
+        if (count == 0) {
+            return 0;
+        }
+        long now = System.nanoTime();
+        long[] receiveToAck = new long[count];
+        for (int i = 0; i < count; i++) {
+            receiveToAck[i] = now - settled.get(i).receivedAt;
+        }
+        metrics.onAcknowledgeBatch(receiveToAck);
+        if (log != null) {
+            log.appendAcks(settled, Message::getMessageId, delivery -> delivery.segment);
+        }
+        for (Message<T> delivery : settled) {
+            if (delivery.groupId != null) {
+                releaseGroup(delivery.groupId);
+            }
+        }
+        return count;
     }
     
     /**
-     * TODO: Extend visibility timeout (consumer needs more time).
+     * Ends a delivery on behalf of its consumer: one CAS, then out of the
+     * in-flight map.
+     * 
+     * @return the delivery, or null if the handle is unknown or the timeout won the race
+     */
+    private Message<T> settle(String receiptHandle) {
+        if (receiptHandle == null) {
+            return null;
+        }
+        Message<T> delivery = inFlight.get(receiptHandle);
+        if (delivery == null || !delivery.settle()) {
+            return null;
+        }
+        inFlight.remove(receiptHandle, delivery);
+        return delivery;
+    }
+    
+    /**
+     * Extend visibility timeout (consumer needs more time).
      * 
      * @param receiptHandle the handle from receive()
      * @param additionalTimeMs additional time in milliseconds
      * @return true if extended, false if handle invalid
      */
     public boolean extendVisibility(String receiptHandle, int additionalTimeMs) {
-        // TODO: Implement visibility extension
-        return false;
+        if (receiptHandle == null || additionalTimeMs < 0) {
+            return false;
+        }
+        Message<T> delivery = inFlight.get(receiptHandle);
+        return delivery != null
+            && delivery.extend(TimeUnit.MILLISECONDS.toNanos(additionalTimeMs), now());
     }
     
     /**
-     * Returns approximate number of visible messages.
+     * Returns approximate number of messages waiting to be received -
+     * visible ones plus those queued behind their FIFO group's head.
+     * 
+     * 📝 NOTE: O(1) in the queue size - a few LongAdder sums (one per lane),
+     * each over its striped cells, never a walk over the queues.
      */
     public int getApproximateMessageCount() {
-        // TODO: Count messages where visibleAt <= now
-        return 0;
+        advanceWheels(now());
+        long visible = 0;
+        for (LongAdder count : laneCounts) {
+            visible += count.sum();
+        }
+        return (int) Math.max(0, visible + groupedWaiting.sum());
+    }
+    
+    /**
+     * Returns approximate number of visible messages in one priority lane.
+     */
+    public int getApproximateMessageCount(Priority priority) {
+        advanceWheels(now());
+        return (int) Math.max(0, laneCounts[priority.ordinal()].sum());
     }
     
     /**
      * Returns number of messages currently being processed (invisible).
+     * 
+     * 📝 NOTE: ConcurrentHashMap.size() sums striped counter cells, like a
+     * LongAdder - it does not count the entries.
      */
     public int getInFlightCount() {
-        // TODO: Count messages where visibleAt > now
-        return 0;
+        advanceWheels(now());
+        return inFlight.size();
+    }
+    
+    /**
+     * Returns how many timers the visibility wheels hold, acknowledged
+     * deliveries not yet dropped included - O(timers), for tests.
+     */
+    int getWheelTimerCount() {
+        int count = 0;
+        for (int i = 0; i < wheels.length; i++) {
+            wheelLocks[i].lock();
+            try {
+                count += wheels[i].size();
+            } finally {
+                wheelLocks[i].unlock();
+            }
+        }
+        return count;
+    }
+    
+    /**
+     * Moves up to max dead letters back to the queue, oldest first.
+     * 
+     * 💡 THINK: Why batches? Moving 1M messages in one go would flood the
+     * shards and starve the consumers' wakeups. After each batch we wake
+     * waiting consumers and yield, so redrive interleaves with live traffic.
+     * Every step is a lock-free poll/offer - nothing blocks send() or receive().
+     * 
+     * @param max maximum number of messages to move
+     * @return number of messages moved
+     */
+    public int redrive(int max) {
+        if (max < 0) {
+            throw new IllegalArgumentException("max must not be negative: " + max);
+        }
+        long start = now();
+        advanceWheels(start); // Expired poison messages belong in the DLQ first
+        int moved = 0;
+        while (moved < max) {
+            int batch = 0;
+            Message<T> deadLetter;
+            while (batch < REDRIVE_BATCH_SIZE && moved + batch < max
+                    && (deadLetter = deadLetters.poll()) != null) {
+                deadLetterDepth.decrement();
+                if (log != null) {
+                    log.appendRedrive(deadLetter.getMessageId());
+                }
+                Message<T> message = deadLetter.redrive();
+                if (message.groupId == null) {
+                    offerToShard(message);
+                } else {
+                    sendToGroup(message); // Back to the END of its group
+                }
+                batch++;
+            }
+            if (batch == 0) {
+                break; // DLQ is empty
+            }
+            moved += batch;
+            wakeLateWaiters();
+            Thread.yield();
+        }
+        redriven.add(moved);
+        redriveNanos.add(now() - start);
+        return moved;
+    }
+    
+    /**
+     * Returns number of messages currently in the dead-letter queue.
+     */
+    public int getDeadLetterCount() {
+        advanceWheels(now());
+        return (int) Math.max(0, deadLetterDepth.sum());
+    }
+    
+    /**
+     * Returns number of messages ever moved to the dead-letter queue.
+     */
+    public long getDeadLetteredCount() {
+        return deadLettered.sum();
+    }
+    
+    /**
+     * Returns number of messages ever moved back by redrive().
+     */
+    public long getRedrivenCount() {
+        return redriven.sum();
+    }
+    
+    /**
+     * Returns messages moved per second while redrive() was running.
+     */
+    public double getRedriveRate() {
+        long nanos = redriveNanos.sum();
+        return nanos == 0 ? 0.0 : redriven.sum() * 1e9 / nanos;
+    }
+    
+    /**
+     * Returns number of sends dropped as duplicates.
+     */
+    public long getDuplicateCount() {
+        return duplicates.sum();
+    }
+    
+    public int getShardCount() {
+        return shardMask + 1;
+    }
+    
+    /**
+     * Installs the listener that receives this queue's events from now on,
+     * replacing the previous one.
+     * 
+     * 🔑 HINT: new QueueMetrics() gives latency histograms and counters.
+     */
+    public void setMetricsListener(MetricsListener listener) {
+        if (listener == null) {
+            throw new IllegalArgumentException("listener must not be null");
+        }
+        this.metrics = listener;
+    }
+    
+    /**
+     * Returns number of fsyncs of the write-ahead log (0 for an in-memory queue).
+     * 
+     * 💡 THINK: Compare with the number of send() calls - the gap is what
+     * group commit saved.
+     */
+    public long getLogSyncCount() {
+        return log == null ? 0 : log.syncCount();
+    }
+    
+    /**
+     * Flushes the write-ahead log. The queue must not be used afterwards.
+     */
+    @Override
+    public void close() throws IOException {
+        if (log != null) {
+            log.close();
+        }
+    }
+    
+    private String sendUnlessSeen(Object deduplicationKey, T body) {
+        String messageId = newId();
+        String original = deduplication.putIfAbsent(deduplicationKey, messageId, now());
+        if (original != null) {
+            duplicates.increment();
+            return original;
+        }
+        try {
+            Message<T> message = newMessage(messageId, null, Priority.NORMAL, body);
+            if (log != null) {
+                log.sync();
+            }
+            enqueue(message);
+        } catch (RuntimeException | Error e) {
+            // ⚠️ AVOID: Keeping the id! Nothing was sent, and the caller's
+            // retry would be dropped as a duplicate for the whole window.
+            deduplication.remove(deduplicationKey, messageId);
+            throw e;
+        }
+        return messageId;
+    }
+    
+    private static String sha256(byte[] bytes) {
+        try {
+            return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(bytes));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("Every JVM must support SHA-256", e);
+        }
+    }
+    
+    /**
+     * Creates a new message and, for a durable queue, appends its SEND record.
+     */
+    private Message<T> newMessage(String messageId, String groupId, Priority priority, T body) {
+        long enqueuedAt = System.currentTimeMillis();
+        MessageLog.Segment segment = log == null ? null
+            : log.appendSend(messageId, groupId, priority.ordinal(), enqueuedAt, serializer.serialize(body));
+        metrics.onSend();
+        return new Message<>(messageId, groupId, priority, body, enqueuedAt, 0, segment);
+    }
+    
+    /**
+     * Makes the message visible if its group is idle, else queues it behind the head.
+     */
+    private void sendToGroup(Message<T> message) {
+        while (true) {
+            MessageGroup<T> group = groups.computeIfAbsent(message.groupId, id -> new MessageGroup<>());
+            synchronized (group) {
+                if (group.removed) {
+                    continue; // Raced with the group's last release - look it up again
+                }
+                if (group.active) {
+                    group.waiting.add(message);
+                    groupedWaiting.increment();
+                    return;
+                }
+                group.active = true;
+            }
+            enqueue(message);
+            return;
+        }
+    }
+    
+    /**
+     * sendToGroup() for a batch of one group's messages, under a single group lock.
+     */
+    private void sendToGroup(String groupId, List<Message<T>> messages) {
+        while (true) {
+            MessageGroup<T> group = groups.computeIfAbsent(groupId, id -> new MessageGroup<>());
+            Message<T> head = null;
+            synchronized (group) {
+                if (group.removed) {
+                    continue;
+                }
+                int first = 0;
+                if (!group.active) {
+                    group.active = true;
+                    head = messages.get(0);
+                    first = 1;
+                }
+                group.waiting.addAll(messages.subList(first, messages.size()));
+                groupedWaiting.add(messages.size() - first);
+            }
+            if (head != null) {
+                enqueue(head);
+            }
+            return;
+        }
+    }
+    
+    /**
+     * The group's head is done (acknowledged or dead-lettered): make the next one visible.
+     */
+    private void releaseGroup(String groupId) {
+        MessageGroup<T> group = groups.get(groupId);
+        Message<T> next;
+        synchronized (group) {
+            next = group.waiting.poll();
+            if (next == null) {
+                group.active = false;
+                group.removed = true;
+                groups.remove(groupId, group);
+                return;
+            }
+            groupedWaiting.decrement();
+        }
+        enqueue(next);
+    }
+    
+    /**
+     * Rebuilds the queue from the log: unacknowledged messages become visible,
+     * dead letters (and messages that used up their receives) go to the DLQ.
+     */
+    private void recover() {
+        for (MessageLog.Recovered recovered : log.recovered()) {
+            Message<T> message = new Message<>(recovered.messageId, recovered.groupId,
+                PRIORITIES[recovered.priority], serializer.deserialize(ByteBuffer.wrap(recovered.body).asReadOnlyBuffer()),
+                recovered.enqueuedAt, recovered.receiveCount, recovered.segment);
+            if (recovered.deadLetter || recovered.receiveCount >= maxReceiveCount) {
+                deadLetters.add(message);
+                deadLetterDepth.increment();
+            } else if (message.groupId != null) {
+                sendToGroup(message); // Replayed in send order, so groups keep their order
+            } else {
+                offerToShard(message);
+            }
+        }
+    }
+    
+    /**
+     * Makes a message receivable: straight to a parked consumer if there is
+     * one, otherwise into a shard.
+     */
+    private void enqueue(Message<T> message) {
+        if (!handOff(message)) {
+            offerToShard(message);
+            wakeLateWaiters();
+        }
+    }
+    
+    private void offerToShard(Message<T> message) {
+        int lane = message.priority.ordinal();
+        lanes[lane][ThreadLocalRandom.current().nextInt() & shardMask].offer(message);
+        laneCounts[lane].increment();
+    }
+    
+    /**
+     * Pops waiters until one accepts the message.
+     * 
+     * @return false if there was no (uncancelled) waiter
+     */
+    private boolean handOff(Message<T> message) {
+        Waiter<T> waiter;
+        while ((waiter = waiters.get()) != null) {
+            if (waiters.compareAndSet(waiter, waiter.next) && waiter.slot.compareAndSet(null, message)) {
+                LockSupport.unpark(waiter.thread);
+                return true;
+            }
+        }
+        return false;
+    }
+    
+    /**
+     * Called after offering to a shard: a consumer may have parked between
+     * our look at the stack and the offer. Move messages to such waiters.
+     */
+    private void wakeLateWaiters() {
+        Message<T> message;
+        while (waiters.get() != null && (message = pollAnyShard()) != null) {
+            if (!handOff(message)) {
+                offerToShard(message); // Loop: re-check for a waiter that came meanwhile
+            }
+        }
+    }
+    
+    private void push(Waiter<T> waiter) {
+        Waiter<T> top;
+        do {
+            top = waiters.get();
+            waiter.next = top;
+        } while (!waiters.compareAndSet(top, waiter));
+    }
+    
+    /**
+     * Tidies up after a waiter returns: pops cancelled waiters off the top
+     * of the stack and passes on the timekeeper role.
+     */
+    private void leave(Waiter<T> waiter) {
+        Waiter<T> top;
+        while ((top = waiters.get()) != null && top.isCancelled()) {
+            waiters.compareAndSet(top, top.next);
+        }
+        if (timekeeper.compareAndSet(waiter, null)) {
+            wakeTimekeeper();
+        }
+    }
+    
+    /**
+     * At most one parked consumer wakes every tick, and only while deliveries
+     * are in flight - everyone else sleeps until a message or their deadline.
+     */
+    private boolean keepsTime(Waiter<T> waiter) {
+        if (inFlight.isEmpty()) {
+            timekeeper.compareAndSet(waiter, null); // Nothing can time out - sleep through
+            return false;
+        }
+        return timekeeper.get() == waiter || timekeeper.compareAndSet(null, waiter);
+    }
+    
+    /**
+     * Wakes the top waiter if deliveries are in flight and nobody keeps time.
+     */
+    private void wakeTimekeeper() {
+        Waiter<T> top = waiters.get();
+        if (top != null && timekeeper.get() == null && !inFlight.isEmpty()) {
+            LockSupport.unpark(top.thread);
+        }
+    }
+    
+    /**
+     * Picks the lane to try first: HIGH, NORMAL and LOW in proportion to their weights.
+     */
+    private static int pickLane() {
+        int ticket = ThreadLocalRandom.current().nextInt(TOTAL_WEIGHT);
+        for (int lane = 0; lane < PRIORITIES.length - 1; lane++) {
+            ticket -= PRIORITIES[lane].weight;
+            if (ticket < 0) {
+                return lane;
+            }
+        }
+        return PRIORITIES.length - 1;
+    }
+    
+    /**
+     * The n-th lane to try: the picked one, then the rest from high to low.
+     */
+    private static int laneAt(int first, int n) {
+        if (n == 0) {
+            return first;
+        }
+        return n <= first ? n - 1 : n;
+    }
+    
+    /**
+     * Polls a weighted-random lane first, then the others; within a lane a
+     * random home shard, then steals from the others in turn.
+     */
+    private Message<T> pollAnyShard() {
+        int first = pickLane();
+        int start = ThreadLocalRandom.current().nextInt();
+        for (int n = 0; n < PRIORITIES.length; n++) {
+            int lane = laneAt(first, n);
+            ConcurrentLinkedQueue<Message<T>>[] shards = lanes[lane];
+            for (int i = 0; i <= shardMask; i++) {
+                Message<T> message = shards[(start + i) & shardMask].poll();
+                if (message != null) {
+                    laneCounts[lane].decrement();
+                    return message;
+                }
+            }
+        }
+        return null;
+    }
+    
+    /**
+     * Drains up to max visible messages (home shard first, then stealing)
+     * and hands each one out as a new delivery.
+     */
+    private void receiveUpTo(int max, List<Message<T>> deliveries) {
+        long now = now();
+        advanceWheels(now);
+        
+        int start = deliveries.size();
+        int first = pickLane();
+        int home = ThreadLocalRandom.current().nextInt();
+        for (int n = 0; n < PRIORITIES.length && deliveries.size() - start < max; n++) {
+            int lane = laneAt(first, n);
+            int fromLane = deliveries.size();
+            for (int i = 0; i <= shardMask && deliveries.size() - start < max; i++) {
+                ConcurrentLinkedQueue<Message<T>> shard = lanes[lane][(home + i) & shardMask];
+                Message<T> message;
+                while (deliveries.size() - start < max && (message = shard.poll()) != null) {
+                    Message<T> delivery = message.deliver(newId(),
+                        now + TimeUnit.MILLISECONDS.toNanos(visibilityTimeoutMs));
+                    inFlight.put(delivery.getReceiptHandle(), delivery);
+                    if (log != null) {
+                        log.appendReceive(delivery.getMessageId());
+                    }
+                    metrics.onReceive(delivery.receivedAt - delivery.sentAt, delivery.getReceiveCount());
+                    deliveries.add(delivery);
+                }
+            }
+            laneCounts[lane].add(fromLane - deliveries.size());
+        }
+        if (deliveries.size() == start) {
+            return;
+        }
+        
+        int stripe = ThreadLocalRandom.current().nextInt() & shardMask;
+        wheelLocks[stripe].lock();
+        try {
+            for (int i = start; i < deliveries.size(); i++) {
+                wheels[stripe].schedule(deliveries.get(i));
+            }
+        } finally {
+            wheelLocks[stripe].unlock();
+        }
+        wakeTimekeeper();
+    }
+    
+    /**
+     * Hands a message out as a new delivery: invisible, in flight, on a timer.
+     */
+    private Message<T> deliver(Message<T> message) {
+        Message<T> delivery = message.deliver(newId(),
+            now() + TimeUnit.MILLISECONDS.toNanos(visibilityTimeoutMs));
+        inFlight.put(delivery.getReceiptHandle(), delivery);
+        if (log != null) {
+            log.appendReceive(delivery.getMessageId());
+        }
+        metrics.onReceive(delivery.receivedAt - delivery.sentAt, delivery.getReceiveCount());
+        int stripe = ThreadLocalRandom.current().nextInt() & shardMask;
+        wheelLocks[stripe].lock();
+        try {
+            wheels[stripe].schedule(delivery);
+        } finally {
+            wheelLocks[stripe].unlock();
+        }
+        wakeTimekeeper(); // Parked consumers must now watch the clock
+        return delivery;
+    }
+    
+    /**
+     * Moves every wheel's clock forward, at most once per tick.
+     * 
+     * 💡 THINK: Only the thread that wins the CAS on nextTickAt advances,
+     * and it uses tryLock - a stripe busy with schedule() is simply caught
+     * up on the next tick. Nobody waits for timer maintenance.
+     */
+    private void advanceWheels(long now) {
+        long due = nextTickAt.get();
+        if (now < due || !nextTickAt.compareAndSet(due, now + TICK_NANOS)) {
+            return;
+        }
+        for (int i = 0; i < wheels.length; i++) {
+            if (wheelLocks[i].tryLock()) {
+                try {
+                    wheels[i].advance(now, onVisibilityTimeout[i]);
+                } finally {
+                    wheelLocks[i].unlock();
+                }
+            }
+        }
+    }
+    
+    /**
+     * Called by a wheel (under its lock) for each delivery whose deadline passed.
+     */
+    private void onVisibilityTimeout(int stripe, Message<T> delivery) {
+        if (delivery.settleIfExpired(now())) {
+            inFlight.remove(delivery.getReceiptHandle(), delivery);
+            boolean poison = delivery.getReceiveCount() >= maxReceiveCount;
+            metrics.onVisibilityTimeout(poison);
+            if (poison) {
+                // Poison message: straight to the DLQ, never visible again
+                if (log != null) {
+                    log.appendDeadLetter(delivery.getMessageId());
+                }
+                deadLetters.add(delivery);
+                deadLetterDepth.increment();
+                deadLettered.increment();
+                if (delivery.groupId != null) {
+                    releaseGroup(delivery.groupId); // Don't block the group behind a poison message
+                }
+            } else {
+                enqueue(delivery);
+            }
+        } else if (delivery.isPending()) {
+            // ⚠️ AVOID: Dropping it! extendVisibility() won the race after the
+            // wheel read the old deadline - put the timer back.
+            wheels[stripe].schedule(delivery);
+        }
+        // Otherwise it was acknowledged and is simply dropped from the wheel
+    }
+    
+    /**
+     * Nanoseconds since this queue was created - never negative, as the wheel requires.
+     */
+    private long now() {
+        return System.nanoTime() - startNanos;
+    }
+    
+    /**
+     * Random UUID without SecureRandom - UUID.randomUUID() contends on a
+     * shared generator and would become the bottleneck of send().
+     */
+    private static String newId() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        return new UUID(random.nextLong(), random.nextLong()).toString();
     }
     
     // ==================== Demo ====================
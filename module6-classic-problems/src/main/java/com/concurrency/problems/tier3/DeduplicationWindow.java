@@ -0,0 +1,134 @@
+package com.concurrency.problems.tier3;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * A concurrent set of recently seen keys that forgets them after a window.
+ *
+ * 📝 NOTE: Time is cut into buckets of window / bucketCount. Each key goes
+ * into the bucket of the moment it was added; a ring of bucketCount + 1
+ * buckets holds exactly the ones that may still be inside the window.
+ * When the clock reaches a new bucket, its ring slot still holds the bucket
+ * from one full ring ago - it is replaced with ONE CAS, and every key in
+ * it expires at once. No per-entry timestamps, no cleanup scan.
+ *
+ * 💡 THINK: How long is a key remembered?
+ *   At least the window, at most one bucket longer. More buckets make
+ *   that slack smaller but make every lookup check more maps.
+ *
+ * ⚠️ AVOID: "Check every bucket, then insert" without a lock! Two senders
+ * with the same key could both miss and both insert - right at a bucket
+ * boundary even into different buckets. The check and the insert run under
+ * one of a few striped locks, chosen by the key's hash.
+ */
+final class DeduplicationWindow {
+
+    private static final int STRIPES = 64;
+
+    private static final class Bucket {
+        final long epoch;
+        final ConcurrentHashMap<Object, String> ids = new ConcurrentHashMap<>();
+
+        Bucket(long epoch) {
+            this.epoch = epoch;
+        }
+    }
+
+    private final long bucketNanos;
+    private final int bucketCount;
+    private final AtomicReferenceArray<Bucket> ring;
+    private final Object[] stripes = new Object[STRIPES];
+
+    /**
+     * @param windowNanos how long a key is remembered (at least)
+     * @param bucketCount number of buckets the window is cut into
+     */
+    DeduplicationWindow(long windowNanos, int bucketCount) {
+        if (windowNanos <= 0 || bucketCount <= 0) {
+            throw new IllegalArgumentException("Window and bucket count must be positive");
+        }
+        this.bucketNanos = Math.max(1, (windowNanos + bucketCount - 1) / bucketCount);
+        this.bucketCount = bucketCount;
+        this.ring = new AtomicReferenceArray<>(bucketCount + 1);
+        for (int i = 0; i < STRIPES; i++) {
+            stripes[i] = new Object();
+        }
+    }
+
+    /**
+     * Records key with its id unless it was already seen within the window.
+     *
+     * @param now current time in nanos (never negative)
+     * @return the id recorded earlier for key, or null if key is new
+     */
+    String putIfAbsent(Object key, String id, long now) {
+        long epoch = now / bucketNanos;
+        Bucket current = bucketFor(epoch);
+        int hash = key.hashCode();
+        synchronized (stripes[(hash ^ (hash >>> 16)) & (STRIPES - 1)]) {
+            for (int i = 0; i < ring.length(); i++) {
+                Bucket bucket = ring.get(i);
+                if (bucket != null && bucket.epoch >= epoch - bucketCount) {
+                    String seen = bucket.ids.get(key);
+                    if (seen != null) {
+                        return seen;
+                    }
+                }
+            }
+            current.ids.put(key, id);
+            return null;
+        }
+    }
+
+    /**
+     * Forgets key - but only if it is still recorded with id, so a failed
+     * send never erases a later sender's record.
+     *
+     * @return true if the key was removed
+     */
+    boolean remove(Object key, String id) {
+        int hash = key.hashCode();
+        boolean removed = false;
+        synchronized (stripes[(hash ^ (hash >>> 16)) & (STRIPES - 1)]) {
+            for (int i = 0; i < ring.length(); i++) {
+                Bucket bucket = ring.get(i);
+                if (bucket != null) {
+                    removed |= bucket.ids.remove(key, id);
+                }
+            }
+        }
+        return removed;
+    }
+
+    /**
+     * Returns number of keys remembered at time now (approximate under updates).
+     */
+    int size(long now) {
+        long epoch = now / bucketNanos;
+        int size = 0;
+        for (int i = 0; i < ring.length(); i++) {
+            Bucket bucket = ring.get(i);
+            if (bucket != null && bucket.epoch >= epoch - bucketCount) {
+                size += bucket.ids.size();
+            }
+        }
+        return size;
+    }
+
+    /**
+     * Returns the bucket for epoch, replacing (expiring) the stale one in its slot.
+     */
+    private Bucket bucketFor(long epoch) {
+        int slot = (int) (epoch % ring.length());
+        while (true) {
+            Bucket bucket = ring.get(slot);
+            if (bucket != null && bucket.epoch >= epoch) {
+                return bucket; // Ours - or newer, if this thread's clock lags a full ring
+            }
+            if (ring.compareAndSet(slot, bucket, new Bucket(epoch))) {
+                return ring.get(slot);
+            }
+        }
+    }
+}
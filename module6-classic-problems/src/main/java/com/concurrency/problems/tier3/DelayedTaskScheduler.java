@@ -1,7 +1,14 @@
 package com.concurrency.problems.tier3;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
 import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import java.util.concurrent.atomic.LongAdder;
 import java.util.concurrent.locks.Condition;
 import java.util.concurrent.locks.ReentrantLock;
 
@@ -85,19 +92,87 @@ import java.util.concurrent.locks.ReentrantLock;
  * 
  * 💡 THINK: How to wait efficiently?
  * Calculate time until next task, then wait exactly that long.
+ * 
+ * 🚀 TIMING WHEEL MODE (millions of short timeouts):
+ *   The default mode keeps every task in one heap: O(log n) per schedule,
+ *   all behind one lock. new DelayedTaskScheduler(tick, unit, wheelSize)
+ *   puts tasks in a hierarchical timing wheel instead (see
+ *   BucketedTimingWheel, the design of Kafka's purgatory timer):
+ *   - schedule() appends the task to the bucket of its deadline: O(1),
+ *     under a shared READ lock, so producers don't serialize
+ *   - only buckets go in the DelayQueue the worker sleeps on - one heap
+ *     entry per wheel slot, not one per task
+ *   - a bucket comes due when its span STARTS: its tasks run, or cascade
+ *     to a finer level, so even far-out tasks are never a coarse span late
+ *   TRADE-OFF: Tasks fire at tick resolution - up to one tick late.
+ * 
+ * 🚀 DISPATCH TO AN EXECUTOR:
+ *   By default the worker runs each due task itself, so one slow task
+ *   delays every timer behind it. Pass an Executor and the worker only
+ *   DISPATCHES: it hands due tasks to the executor and goes straight back
+ *   to waiting. Any executor works - a fixed pool, a ForkJoinPool, or on
+ *   Java 21+ Executors.newVirtualThreadPerTaskExecutor().
+ *   Lateness (actual time minus executeAtNanos) is recorded twice, in
+ *   LatencyHistograms: when the worker dispatches a task (timer jitter)
+ *   and when the task starts running (plus the executor's queueing).
+ * 
+ * 🚀 CANCELLATION:
+ *   schedule() returns a ScheduledHandle. cancel() is one CAS on the
+ *   task's state - it wins only if the task has not been dispatched yet.
+ *   - Timing wheel mode: the task is also unlinked from its bucket, O(1).
+ *   - Heap mode: removing from the middle of a heap is O(n), so the task
+ *     stays in the heap as a TOMBSTONE and is skipped when it reaches the
+ *     head. Once tombstones are more than half of the heap, the cancelling
+ *     thread purges them all in one O(n) pass - amortized O(1) per cancel,
+ *     and the heap never grows past about twice the live tasks, even when
+ *     nearly every timeout is cancelled.
  */
 public class DelayedTaskScheduler {
     
+    /**
+     * Handle to a scheduled task, returned by schedule().
+     */
+    public interface ScheduledHandle {
+        
+        /**
+         * Cancels the task unless it was already dispatched.
+         * 
+         * @return true if this call cancelled the task
+         */
+        boolean cancel();
+        
+        boolean isCancelled();
+        
+        /**
+         * @return true once the task was dispatched or cancelled
+         */
+        boolean isDone();
+    }
+    
     /**
      * A scheduled task wrapper.
      */
-    public static class ScheduledTask implements Comparable<ScheduledTask> {
+    public static class ScheduledTask extends BucketedTimingWheel.Entry
+            implements Comparable<ScheduledTask>, ScheduledHandle {
+        private static final int PENDING = 0;
+        private static final int CANCELLED = 1;
+        private static final int DISPATCHED = 2;
+        private static final AtomicIntegerFieldUpdater<ScheduledTask> STATE =
+            AtomicIntegerFieldUpdater.newUpdater(ScheduledTask.class, "state");
+        
         private final Runnable task;
         private final long executeAtNanos;
+        private final DelayedTaskScheduler scheduler; // Told about cancels (null if standalone)
+        private volatile int state;
         
         public ScheduledTask(Runnable task, long delayNanos) {
+            this(task, delayNanos, null);
+        }
+        
+        private ScheduledTask(Runnable task, long delayNanos, DelayedTaskScheduler scheduler) {
             this.task = task;
             this.executeAtNanos = System.nanoTime() + delayNanos;
+            this.scheduler = scheduler;
         }
         
         public long getDelay() {
@@ -108,6 +183,34 @@ public class DelayedTaskScheduler {
             task.run();
         }
         
+        @Override
+        public boolean cancel() {
+            if (!STATE.compareAndSet(this, PENDING, CANCELLED)) {
+                return false; // Already dispatched (or cancelled)
+            }
+            if (scheduler != null) {
+                scheduler.onCancel(this);
+            }
+            return true;
+        }
+        
+        @Override
+        public boolean isCancelled() {
+            return state == CANCELLED;
+        }
+        
+        @Override
+        public boolean isDone() {
+            return state != PENDING;
+        }
+        
+        /**
+         * Claims the task for dispatch - fails if it was cancelled.
+         */
+        boolean markDispatched() {
+            return STATE.compareAndSet(this, PENDING, DISPATCHED);
+        }
+        
         @Override
         public int compareTo(ScheduledTask other) {
             // Earlier tasks should come first
@@ -115,20 +218,97 @@ public class DelayedTaskScheduler {
         }
     }
     
+    // Runs tasks on the worker thread itself
+    private static final Executor INLINE = Runnable::run;
+    
+    // Heap mode purges tombstones once they exceed this share of the heap
+    static final double PURGE_RATIO = 0.5;
+    // ...and there are at least this many (don't scan tiny heaps)
+    static final int MIN_PURGE_TOMBSTONES = 64;
+    
+    // Heap mode only (null in timing wheel mode)
     private final PriorityBlockingQueue<ScheduledTask> queue;
     private final ReentrantLock lock;
     private final Condition available;
     private final Thread worker;
     private volatile boolean running;
     
+    // Heap mode: cancelled tasks still in the heap, and how often they were purged
+    private final AtomicInteger tombstones = new AtomicInteger();
+    private final LongAdder purges = new LongAdder();
+    
+    // Timing wheel mode only (null in heap mode)
+    private final BucketedTimingWheel<ScheduledTask> wheel;
+    
+    // Where due tasks run, and how late they got there
+    private final Executor executor;
+    private final LatencyHistogram dispatchLateness = new LatencyHistogram();
+    private final LatencyHistogram startLateness = new LatencyHistogram();
+    private final LongAdder rejected = new LongAdder();
+    
     public DelayedTaskScheduler() {
-        this.queue = new PriorityBlockingQueue<>();
-        this.lock = new ReentrantLock();
-        this.available = lock.newCondition();
+        this(INLINE);
+    }
+    
+    /**
+     * Creates a heap-backed scheduler that runs due tasks on executor.
+     * 
+     * 📝 NOTE: The scheduler does not own the executor - shut it down
+     * yourself after shutdown().
+     * 
+     * @param executor runs the due tasks
+     */
+    public DelayedTaskScheduler(Executor executor) {
+        this(null, executor);
+    }
+    
+    /**
+     * Creates a scheduler backed by a hierarchical timing wheel.
+     * 
+     * 💡 THINK: Choosing the tick. Tasks fire up to one tick late, but a
+     * finer tick means more buckets come due (and wake the worker) per
+     * second. 1ms with 64 buckets covers 64ms on the first level, ~4s on
+     * the second, ~4.5min on the third.
+     * 
+     * @param tick resolution of the finest wheel
+     * @param unit unit of tick
+     * @param wheelSize buckets per wheel level
+     */
+    public DelayedTaskScheduler(long tick, TimeUnit unit, int wheelSize) {
+        this(tick, unit, wheelSize, INLINE);
+    }
+    
+    /**
+     * Creates a timing-wheel-backed scheduler that runs due tasks on executor.
+     * 
+     * @param tick resolution of the finest wheel
+     * @param unit unit of tick
+     * @param wheelSize buckets per wheel level
+     * @param executor runs the due tasks
+     */
+    public DelayedTaskScheduler(long tick, TimeUnit unit, int wheelSize, Executor executor) {
+        this(new BucketedTimingWheel<>(unit.toNanos(tick), wheelSize), executor);
+    }
+    
+    private DelayedTaskScheduler(BucketedTimingWheel<ScheduledTask> wheel, Executor executor) {
+        if (executor == null) {
+            throw new IllegalArgumentException("executor must not be null");
+        }
+        this.wheel = wheel;
+        this.executor = executor;
+        if (wheel == null) {
+            this.queue = new PriorityBlockingQueue<>();
+            this.lock = new ReentrantLock();
+            this.available = lock.newCondition();
+        } else {
+            this.queue = null;
+            this.lock = null;
+            this.available = null;
+        }
         this.running = true;
         
         // Start worker thread
-        this.worker = new Thread(this::runWorker, "Scheduler-Worker");
+        this.worker = new Thread(wheel == null ? this::runWorker : this::runWheelWorker, "Scheduler-Worker");
         this.worker.start();
     }
     
@@ -137,10 +317,16 @@ public class DelayedTaskScheduler {
      * 
      * 🔑 HINT: Add to queue and signal the worker if this might be
      * the new earliest task.
+     * 
+     * @return a handle to cancel the task
      */
-    public void schedule(Runnable task, long delay, TimeUnit unit) {
+    public ScheduledHandle schedule(Runnable task, long delay, TimeUnit unit) {
         long delayNanos = unit.toNanos(delay);
-        ScheduledTask scheduled = new ScheduledTask(task, delayNanos);
+        ScheduledTask scheduled = new ScheduledTask(task, delayNanos, this);
+        if (wheel != null) {
+            wheel.add(scheduled, scheduled.executeAtNanos); // Wakes the worker if its bucket is the new head
+            return scheduled;
+        }
         
         lock.lock();
         try {
@@ -152,6 +338,40 @@ public class DelayedTaskScheduler {
         } finally {
             lock.unlock();
         }
+        return scheduled;
+    }
+    
+    /**
+     * Called once for each successful cancel().
+     */
+    private void onCancel(ScheduledTask task) {
+        if (wheel != null) {
+            wheel.remove(task); // O(1) unlink; false if it is being dispatched right now
+            return;
+        }
+        if (tombstones.incrementAndGet() >= MIN_PURGE_TOMBSTONES && needsPurge()) {
+            lock.lock();
+            try {
+                if (needsPurge()) { // Another canceller may have purged meanwhile
+                    queue.removeIf(this::dropTombstone);
+                    purges.increment();
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+    
+    private boolean needsPurge() {
+        return tombstones.get() > PURGE_RATIO * queue.size();
+    }
+    
+    private boolean dropTombstone(ScheduledTask task) {
+        if (task.isCancelled()) {
+            tombstones.decrementAndGet();
+            return true;
+        }
+        return false;
     }
     
     /**
@@ -195,6 +415,13 @@ public class DelayedTaskScheduler {
                 ScheduledTask task = queue.peek();
                 if (task == null) continue;
                 
+                if (task.isCancelled()) {
+                    // Tombstone at the head: drop it, don't wait for its deadline
+                    queue.poll();
+                    tombstones.decrementAndGet();
+                    continue;
+                }
+                
                 long delay = task.getDelay();
                 
                 if (delay > 0) {
@@ -208,7 +435,9 @@ public class DelayedTaskScheduler {
                     // ⚠️ CRITICAL: Release lock before running task!
                     lock.unlock();
                     try {
-                        task.run();
+                        if (!dispatch(task)) {
+                            tombstones.decrementAndGet(); // Cancelled after we polled it
+                        }
                     } finally {
                         // Re-acquire for next iteration
                         lock.lock();
@@ -222,16 +451,107 @@ public class DelayedTaskScheduler {
         }
     }
     
+    /**
+     * Worker loop of timing wheel mode: sleep until a bucket is due, run
+     * its expired tasks - outside the wheel's lock - and repeat.
+     */
+    private void runWheelWorker() {
+        List<ScheduledTask> due = new ArrayList<>();
+        while (running) {
+            try {
+                wheel.take(due);
+            } catch (InterruptedException e) {
+                continue; // shutdown() - the loop condition decides
+            }
+            for (ScheduledTask task : due) {
+                dispatch(task);
+            }
+            due.clear();
+        }
+    }
+    
+    /**
+     * Hands a due task to the executor, recording how late it is.
+     * 
+     * ⚠️ AVOID: Letting a RejectedExecutionException escape! It would kill
+     * the worker and silently stop every later timer. A rejected task is
+     * counted and dropped.
+     */
+    private boolean dispatch(ScheduledTask task) {
+        if (!task.markDispatched()) {
+            return false; // Cancelled
+        }
+        dispatchLateness.record(System.nanoTime() - task.executeAtNanos);
+        try {
+            executor.execute(() -> {
+                startLateness.record(System.nanoTime() - task.executeAtNanos);
+                task.run();
+            });
+        } catch (RejectedExecutionException e) {
+            rejected.increment();
+        }
+        return true;
+    }
+    
+    /**
+     * Returns how late tasks were handed to the executor (timer jitter).
+     */
+    public LatencyHistogram getDispatchLateness() {
+        return dispatchLateness;
+    }
+    
+    /**
+     * Returns how late tasks started running - dispatch lateness plus the
+     * executor's queueing delay.
+     */
+    public LatencyHistogram getStartLateness() {
+        return startLateness;
+    }
+    
+    /**
+     * Returns number of due tasks the executor rejected.
+     */
+    public long getRejectedCount() {
+        return rejected.sum();
+    }
+    
+    /**
+     * Returns number of tasks scheduled and not yet started.
+     */
+    public int getPendingCount() {
+        return wheel != null ? wheel.size() : Math.max(0, queue.size() - tombstones.get());
+    }
+    
+    /**
+     * Returns how often heap mode purged its tombstones.
+     */
+    public long getPurgeCount() {
+        return purges.sum();
+    }
+    
+    /**
+     * Returns number of items in the heap the worker waits on: one per task
+     * (tombstones included) in heap mode, one per queued bucket in timing
+     * wheel mode.
+     */
+    int getHeapSize() {
+        return wheel != null ? wheel.queuedBuckets() : queue.size();
+    }
+    
     /**
      * Shutdown the scheduler.
      */
     public void shutdown() {
         running = false;
-        lock.lock();
-        try {
-            available.signal();
-        } finally {
-            lock.unlock();
+        if (wheel != null) {
+            worker.interrupt(); // Wakes it from DelayQueue.take()
+        } else {
+            lock.lock();
+            try {
+                available.signal();
+            } finally {
+                lock.unlock();
+            }
         }
         
         try {
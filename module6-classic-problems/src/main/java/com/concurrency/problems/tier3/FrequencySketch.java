@@ -0,0 +1,104 @@
+package com.concurrency.problems.tier3;
+
+/**
+ * Count-Min Sketch of access frequencies with periodic aging (TinyLFU).
+ *
+ * 📝 NOTE: Estimates "how often was this key seen recently" in a few bytes
+ * per entry instead of a HashMap of counters:
+ *   - 4 hash functions each pick a 4-bit counter (16 counters per long)
+ *   - increment() bumps all 4 (saturating at 15)
+ *   - frequency() returns the MINIMUM of the 4 - collisions can only
+ *     over-estimate, so the smallest counter is the best guess
+ *
+ * 💡 THINK: Why age the counters?
+ *   A key that was hot yesterday shouldn't keep its protection forever.
+ *   After sampleSize increments every counter is halved ("reset"), so the
+ *   sketch tracks RECENT frequency.
+ *
+ * ⚠️ AVOID: Sharing one sketch between threads without a lock - it is not
+ * thread-safe. ConcurrentLRUCache only touches it under a segment lock.
+ */
+final class FrequencySketch {
+
+    private static final long[] SEEDS = {
+        0xc3a5c85c97cb3127L, 0xb492b66fbe98f273L, 0x9ae16a3b2f90404fL, 0xcbf29ce484222325L
+    };
+    private static final long RESET_MASK = 0x7777777777777777L;
+
+    private final long[] table;
+    private final int tableMask;
+    private final int sampleSize;
+    private int additions;
+
+    FrequencySketch(int maximumSize) {
+        int size = Math.max(maximumSize, 16);
+        int tableSize = 1 << (32 - Integer.numberOfLeadingZeros(size - 1));
+        this.table = new long[tableSize];
+        this.tableMask = tableSize - 1;
+        this.sampleSize = 10 * size;
+    }
+
+    /**
+     * Returns the estimated number of recent occurrences of the key (0..15).
+     */
+    int frequency(Object key) {
+        int hash = spread(key.hashCode());
+        int frequency = 15;
+        for (int i = 0; i < SEEDS.length; i++) {
+            long h = indexHash(hash, i);
+            frequency = Math.min(frequency, counterAt(h));
+        }
+        return frequency;
+    }
+
+    /**
+     * Records one occurrence of the key, aging the sketch when the sample is full.
+     */
+    void increment(Object key) {
+        int hash = spread(key.hashCode());
+        boolean added = false;
+        for (int i = 0; i < SEEDS.length; i++) {
+            long h = indexHash(hash, i);
+            if (counterAt(h) < 15) {
+                table[slot(h)] += 1L << shift(h);
+                added = true;
+            }
+        }
+        if (added && ++additions == sampleSize) {
+            reset();
+        }
+    }
+
+    /**
+     * Halves every counter - the "aging" step of TinyLFU.
+     */
+    private void reset() {
+        for (int i = 0; i < table.length; i++) {
+            table[i] = (table[i] >>> 1) & RESET_MASK;
+        }
+        additions /= 2;
+    }
+
+    private int counterAt(long h) {
+        return (int) ((table[slot(h)] >>> shift(h)) & 15L);
+    }
+
+    private int slot(long h) {
+        return (int) h & tableMask;
+    }
+
+    private static int shift(long h) {
+        return (int) ((h >>> 32) & 15) << 2; // which 4-bit counter inside the long
+    }
+
+    private static long indexHash(int hash, int i) {
+        long h = (hash + SEEDS[i]) * SEEDS[i];
+        return h + (h >>> 32);
+    }
+
+    private static int spread(int x) {
+        x = ((x >>> 16) ^ x) * 0x45d9f3b;
+        x = ((x >>> 16) ^ x) * 0x45d9f3b;
+        return (x >>> 16) ^ x;
+    }
+}
@@ -0,0 +1,112 @@
+package com.concurrency.problems.tier3;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A lock-free latency histogram in the style of HdrHistogram.
+ *
+ * 📝 NOTE: Log-linear buckets. Values below 256 get a bucket each; above
+ * that, every power of two [2^k, 2^(k+1)) is split into 128 equal buckets.
+ * So any value - 1ns or 1 hour - is recorded with under 1% relative error,
+ * in a fixed array of ~7K counters, with no resizing and no allocation.
+ *
+ *   index(v) = shift * 128 + (v >>> shift),  shift = max(0, bitLength(v) - 8)
+ *
+ * 💡 THINK: Why not keep every sample and sort?
+ *   A queue records millions of latencies a second. Percentiles of a
+ *   histogram cost a walk over 7K counters, whenever someone asks - the
+ *   recording side is one atomic increment.
+ *
+ * ⚠️ AVOID: Averages alone! Latency is long-tailed; the p99 and max are
+ * what users feel. getMean() is here for completeness, not for alerts.
+ */
+public final class LatencyHistogram {
+
+    private static final int SUB_BUCKET_BITS = 8;
+    private static final int HALF = 1 << (SUB_BUCKET_BITS - 1);
+    private static final int BUCKET_COUNT = (64 - SUB_BUCKET_BITS + 1) * HALF;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKET_COUNT);
+    private final LongAdder count = new LongAdder();
+    private final LongAdder sum = new LongAdder();
+    private final LongAccumulator max = new LongAccumulator(Long::max, 0);
+
+    /**
+     * Records one value (negative values count as 0).
+     */
+    public void record(long nanos) {
+        long value = Math.max(0, nanos);
+        counts.incrementAndGet(indexOf(value));
+        count.increment();
+        sum.add(value);
+        max.accumulate(value);
+    }
+
+    public long getCount() {
+        return count.sum();
+    }
+
+    public long getMax() {
+        return max.get();
+    }
+
+    public double getMean() {
+        long n = count.sum();
+        return n == 0 ? 0.0 : (double) sum.sum() / n;
+    }
+
+    /**
+     * Returns the value that percentile percent of the recorded values are
+     * at or below (the highest value of that bucket, capped at the max).
+     *
+     * @param percentile between 0 and 100
+     */
+    public long getValueAtPercentile(double percentile) {
+        if (percentile < 0 || percentile > 100) {
+            throw new IllegalArgumentException("Percentile must be between 0 and 100: " + percentile);
+        }
+        long total = 0;
+        long[] snapshot = new long[BUCKET_COUNT];
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            snapshot[i] = counts.get(i);
+            total += snapshot[i];
+        }
+        if (total == 0) {
+            return 0;
+        }
+        long target = Math.max(1, (long) Math.ceil(percentile / 100 * total));
+        long seen = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            seen += snapshot[i];
+            if (seen >= target) {
+                return Math.min(highestValueAt(i), getMax());
+            }
+        }
+        return getMax();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("count=%d p50=%dus p99=%dus p99.9=%dus max=%dus",
+            getCount(), micros(getValueAtPercentile(50)), micros(getValueAtPercentile(99)),
+            micros(getValueAtPercentile(99.9)), micros(getMax()));
+    }
+
+    static int indexOf(long value) {
+        int shift = Math.max(0, 64 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS);
+        return shift * HALF + (int) (value >>> shift);
+    }
+
+    static long highestValueAt(int index) {
+        int shift = Math.max(0, index / HALF - 1);
+        long mantissa = index - (long) shift * HALF;
+        return ((mantissa + 1) << shift) - 1; // Wraps to Long.MAX_VALUE for the last bucket
+    }
+
+    private static long micros(long nanos) {
+        return TimeUnit.NANOSECONDS.toMicros(nanos);
+    }
+}
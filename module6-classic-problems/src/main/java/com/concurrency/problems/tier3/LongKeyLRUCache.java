@@ -0,0 +1,327 @@
+package com.concurrency.problems.tier3;
+
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Thread-safe LRU cache specialized for primitive long keys.
+ *
+ * 📝 NOTE: ConcurrentLRUCache<Long, V> pays per entry for a boxed Long, a
+ * ConcurrentHashMap.Node and our own Node with four references - roughly
+ * 80 bytes, plus a Long allocation on every get(). Here an entry is just a
+ * row in parallel arrays:
+ *
+ *   keys[e]   long  - the key
+ *   values[e] ref   - the value
+ *   prev[e]   int   - recency list links, as array INDICES (no pointers)
+ *   next[e]   int
+ *   table[]   int   - open-addressing index: slot -> e + 1 (0 = empty)
+ *
+ *   = 20 bytes per entry + 8 for the half-empty index table, no Node objects,
+ *   and get(long) allocates nothing.
+ *
+ * 💡 THINK: Why a separate int table instead of storing entries in the slots?
+ *   With linear probing a delete shifts later slots back to close the hole.
+ *   If entries lived in the slots, every shift would move a list node and
+ *   force us to re-point its neighbours. Shifting ints in an index table
+ *   leaves the entries (and their links) where they are.
+ *
+ * ⚠️ AVOID: Tombstones for deletes! Under constant eviction they pile up
+ * until every probe walks the whole table. Backward-shift deletion keeps
+ * probe sequences as short as if the key had never been there.
+ *
+ * Concurrency: same lock striping as ConcurrentLRUCache's SEGMENTED MODE.
+ * Each segment is an independent table + list behind its own lock.
+ *
+ * @param <V> value type
+ */
+public class LongKeyLRUCache<V> {
+
+    private static final int NIL = -1;
+
+    /**
+     * One independently locked table + recency list.
+     * Every field is guarded by lock.
+     */
+    private static final class Segment<V> {
+        final Lock lock = new ReentrantLock();
+
+        final int capacity;
+        final long[] keys;
+        final Object[] values;
+        final int[] prev;
+        final int[] next;
+        int head = NIL; // most recently used
+        int tail = NIL; // least recently used
+        int size;
+
+        final int[] table;
+        final int tableMask;
+
+        long hits;
+        long misses;
+        long evictions;
+
+        Segment(int capacity) {
+            this.capacity = capacity;
+            this.keys = new long[capacity];
+            this.values = new Object[capacity];
+            this.prev = new int[capacity];
+            this.next = new int[capacity];
+            // Power of two >= 2x capacity: load factor <= 0.5 keeps probes short
+            int tableSize = Integer.highestOneBit(Math.max(2, capacity) * 2 - 1) << 1;
+            this.table = new int[tableSize];
+            this.tableMask = tableSize - 1;
+        }
+
+        @SuppressWarnings("unchecked")
+        V get(long key, int hash) {
+            int slot = findSlot(key, hash);
+            if (slot < 0) {
+                misses++;
+                return null;
+            }
+            int entry = table[slot] - 1;
+            moveToHead(entry);
+            hits++;
+            return (V) values[entry];
+        }
+
+        void put(long key, int hash, V value) {
+            int slot = findSlot(key, hash);
+            if (slot >= 0) {
+                int entry = table[slot] - 1;
+                values[entry] = value;
+                moveToHead(entry);
+                return;
+            }
+
+            int entry;
+            if (size < capacity) {
+                entry = size++;
+            } else {
+                // Full: recycle the LRU entry's row for the new key
+                entry = tail;
+                unlink(entry);
+                deleteSlot(findSlot(keys[entry], hash(keys[entry])));
+                evictions++;
+            }
+            keys[entry] = key;
+            values[entry] = value;
+            insertSlot(hash, entry);
+            linkHead(entry);
+        }
+
+        // ==================== Index table ====================
+
+        /**
+         * @return the slot holding key, or -1 if absent
+         */
+        private int findSlot(long key, int hash) {
+            for (int slot = hash & tableMask; ; slot = (slot + 1) & tableMask) {
+                int entry = table[slot] - 1;
+                if (entry == NIL) {
+                    return -1; // Hit an empty slot - the key can't be further on
+                }
+                if (keys[entry] == key) {
+                    return slot;
+                }
+            }
+        }
+
+        private void insertSlot(int hash, int entry) {
+            int slot = hash & tableMask;
+            while (table[slot] != 0) {
+                slot = (slot + 1) & tableMask;
+            }
+            table[slot] = entry + 1;
+        }
+
+        /**
+         * Empties a slot, shifting later entries of the probe run back into the hole.
+         *
+         * 💡 THINK: An entry at slot i whose home slot is h may move into the
+         * hole only if the hole lies on its probe path, i.e. between h and i
+         * (cyclically). Otherwise it would land BEFORE its home slot, where a
+         * lookup starting at h never looks.
+         */
+        private void deleteSlot(int slot) {
+            int hole = slot;
+            for (int i = (slot + 1) & tableMask; table[i] != 0; i = (i + 1) & tableMask) {
+                int home = hash(keys[table[i] - 1]) & tableMask;
+                if (((i - home) & tableMask) >= ((i - hole) & tableMask)) {
+                    table[hole] = table[i];
+                    hole = i;
+                }
+            }
+            table[hole] = 0;
+        }
+
+        // ==================== Recency list ====================
+
+        private void linkHead(int entry) {
+            prev[entry] = NIL;
+            next[entry] = head;
+            if (head != NIL) {
+                prev[head] = entry;
+            } else {
+                tail = entry;
+            }
+            head = entry;
+        }
+
+        private void unlink(int entry) {
+            int p = prev[entry];
+            int n = next[entry];
+            if (p != NIL) {
+                next[p] = n;
+            } else {
+                head = n;
+            }
+            if (n != NIL) {
+                prev[n] = p;
+            } else {
+                tail = p;
+            }
+        }
+
+        private void moveToHead(int entry) {
+            if (entry != head) {
+                unlink(entry);
+                linkHead(entry);
+            }
+        }
+    }
+
+    private final int capacity;
+    private final Segment<V>[] segments;
+    private final int segmentShift;
+
+    public LongKeyLRUCache(int capacity) {
+        this(capacity, 1);
+    }
+
+    /**
+     * Creates a segmented cache.
+     *
+     * @param capacity total number of entries across all segments
+     * @param segmentCount number of independently locked segments
+     *                     (rounded up to a power of two; 1 = classic single-list LRU)
+     */
+    @SuppressWarnings("unchecked")
+    public LongKeyLRUCache(int capacity, int segmentCount) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Capacity must be positive");
+        }
+        if (segmentCount <= 0) {
+            throw new IllegalArgumentException("Segment count must be positive");
+        }
+        int segmentBits = 32 - Integer.numberOfLeadingZeros(segmentCount - 1);
+        int count = 1 << segmentBits;
+        if (count > capacity) {
+            throw new IllegalArgumentException(
+                "Segment count (" + count + ") must not exceed capacity (" + capacity + ")");
+        }
+        this.capacity = capacity;
+        this.segmentShift = 32 - segmentBits;
+
+        // Split capacity evenly; the first (capacity % count) segments get one extra entry
+        this.segments = (Segment<V>[]) new Segment[count];
+        for (int i = 0; i < count; i++) {
+            segments[i] = new Segment<>(capacity / count + (i < capacity % count ? 1 : 0));
+        }
+    }
+
+    /**
+     * Spreads a long key over 32 bits (Fibonacci hashing).
+     *
+     * 📝 NOTE: Sequential ids (1, 2, 3...) would otherwise fill neighbouring
+     * slots and build long probe runs. The HIGH bits pick the segment, the
+     * LOW bits the slot - so the two choices don't correlate.
+     */
+    private static int hash(long key) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+
+    private Segment<V> segmentFor(int hash) {
+        // segmentShift == 32 for a single segment: Java masks the shift to 0
+        return segments.length == 1 ? segments[0] : segments[hash >>> segmentShift];
+    }
+
+    /**
+     * @param key the key to look up
+     * @return the value, or null if not found
+     */
+    public V get(long key) {
+        int hash = hash(key);
+        Segment<V> segment = segmentFor(hash);
+        segment.lock.lock();
+        try {
+            return segment.get(key, hash);
+        } finally {
+            segment.lock.unlock();
+        }
+    }
+
+    /**
+     * @param key the key
+     * @param value the value (must not be null)
+     */
+    public void put(long key, V value) {
+        if (value == null) {
+            throw new IllegalArgumentException("Value must not be null");
+        }
+        int hash = hash(key);
+        Segment<V> segment = segmentFor(hash);
+        segment.lock.lock();
+        try {
+            segment.put(key, hash, value);
+        } finally {
+            segment.lock.unlock();
+        }
+    }
+
+    public int size() {
+        int total = 0;
+        for (Segment<V> segment : segments) {
+            segment.lock.lock();
+            try {
+                total += segment.size;
+            } finally {
+                segment.lock.unlock();
+            }
+        }
+        return total;
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    public int getSegmentCount() {
+        return segments.length;
+    }
+
+    /**
+     * Returns counters summed over all segments.
+     */
+    public ConcurrentLRUCache.CacheStats getStats() {
+        long hits = 0;
+        long misses = 0;
+        long evictions = 0;
+        int size = 0;
+        for (Segment<V> segment : segments) {
+            segment.lock.lock();
+            try {
+                hits += segment.hits;
+                misses += segment.misses;
+                evictions += segment.evictions;
+                size += segment.size;
+            } finally {
+                segment.lock.unlock();
+            }
+        }
+        return new ConcurrentLRUCache.CacheStats(hits, misses, evictions, 0, 0, size);
+    }
+}
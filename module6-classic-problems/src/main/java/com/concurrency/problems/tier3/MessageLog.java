@@ -0,0 +1,452 @@
+package com.concurrency.problems.tier3;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+/**
+ * Segmented, memory-mapped write-ahead log for ConcurrentMessageQueue.
+ *
+ *   Segments: files named by a 20-digit sequence number, each preallocated
+ *             to segmentBytes and mapped read-write
+ *   Record:   length (int), crc32 of the payload (int), then the payload:
+ *             type (byte), idLength (int), id bytes
+ *             SEND only: enqueuedAt (long), priority (byte), groupIdLength
+ *             (int, -1 for none), groupId bytes, body bytes
+ *   A zero length ends a segment - new files are zero-filled.
+ *
+ * 📝 NOTE: Group commit. An fsync costs the same for one record as for a
+ * hundred, so sync() elects a leader: the first thread in forces the mapped
+ * segment and publishes how far the file is durable. Threads that queued
+ * behind it find their records already covered and return without forcing.
+ * Under load, one fsync is shared by every producer that appended meanwhile.
+ *
+ * 💡 THINK: Which events must be durable before the caller continues?
+ *   Only SEND - the producer is told "stored". A lost RECEIVE under-counts
+ *   deliveries and a lost ACK redelivers the message: both are allowed by
+ *   at-least-once delivery, so they ride along with the next fsync.
+ *
+ * ⚠️ AVOID: Deleting a segment just because its own messages were acked!
+ * Its ACK records may refer to messages sent in an older segment; drop it
+ * first and those messages come back to life on restart. Compaction only
+ * ever removes the OLDEST segments, while every message they sent is acked.
+ *
+ * 📝 NOTE: Every startup opens a fresh segment. The previous run's last
+ * segment may end in a torn record - replay stops at the first record whose
+ * length or checksum doesn't add up, and never writes after it.
+ */
+final class MessageLog implements Closeable {
+
+    static final byte SEND = 1;
+    static final byte RECEIVE = 2;
+    static final byte ACK = 3;
+    static final byte DEAD_LETTER = 4;
+    static final byte REDRIVE = 5;
+
+    static final int DEFAULT_SEGMENT_BYTES = 64 << 20;
+    private static final int MIN_SEGMENT_BYTES = 4 << 10;
+    private static final int RECORD_HEADER = 8;
+    private static final String SUFFIX = ".log";
+
+    /**
+     * One log file. Counts the messages it SENT that are not yet acknowledged.
+     */
+    static final class Segment {
+        final long sequence;
+        final Path path;
+        final MappedByteBuffer buffer; // null for segments of a previous run
+        final AtomicInteger live = new AtomicInteger();
+        volatile boolean sealed;
+
+        Segment(long sequence, Path path, MappedByteBuffer buffer) {
+            this.sequence = sequence;
+            this.path = path;
+            this.buffer = buffer;
+        }
+    }
+
+    /**
+     * A message that was sent and not acknowledged before the restart.
+     */
+    static final class Recovered {
+        final String messageId;
+        final String groupId;
+        final int priority;
+        final byte[] body;
+        final long enqueuedAt;
+        final Segment segment;
+        int receiveCount;
+        boolean deadLetter;
+
+        Recovered(String messageId, String groupId, int priority, byte[] body, long enqueuedAt,
+                  Segment segment) {
+            this.messageId = messageId;
+            this.groupId = groupId;
+            this.priority = priority;
+            this.body = body;
+            this.enqueuedAt = enqueuedAt;
+            this.segment = segment;
+        }
+    }
+
+    private final Path directory;
+    private final int segmentBytes;
+
+    // Appends, rolls and compaction; segments is oldest first
+    private final ReentrantLock appendLock = new ReentrantLock();
+    private final ArrayDeque<Segment> segments = new ArrayDeque<>();
+    private final CRC32 crc = new CRC32();
+    private volatile Segment current;
+    private int position;
+
+    // Group commit: bytes appended so far vs bytes known to be on disk
+    private final ReentrantLock syncLock = new ReentrantLock();
+    private volatile long appended;
+    private volatile long durable;
+    private final LongAdder syncs = new LongAdder();
+
+    private LinkedHashMap<String, Recovered> recovered = new LinkedHashMap<>();
+
+    /**
+     * Opens (or creates) the log in directory and replays existing segments.
+     */
+    MessageLog(Path directory, int segmentBytes) throws IOException {
+        if (segmentBytes < MIN_SEGMENT_BYTES) {
+            throw new IllegalArgumentException("Segment size must be at least " + MIN_SEGMENT_BYTES);
+        }
+        this.directory = directory;
+        this.segmentBytes = segmentBytes;
+        Files.createDirectories(directory);
+
+        long nextSequence = 0;
+        for (Path path : listSegments(directory)) {
+            String name = path.getFileName().toString();
+            Segment segment = new Segment(Long.parseLong(name.substring(0, name.length() - SUFFIX.length())),
+                path, null);
+            segment.sealed = true;
+            segments.add(segment);
+            replay(segment);
+            nextSequence = segment.sequence + 1;
+        }
+        current = openSegment(nextSequence);
+        segments.add(current);
+        appendLock.lock();
+        try {
+            compact();
+        } finally {
+            appendLock.unlock();
+        }
+    }
+
+    /**
+     * Hands out the unacknowledged messages found on startup, oldest first.
+     * Can be called once.
+     */
+    Collection<Recovered> recovered() {
+        Collection<Recovered> messages = recovered.values();
+        recovered = null;
+        return messages;
+    }
+
+    /**
+     * Appends a SEND record. Not durable until sync() returns.
+     *
+     * @return the segment holding the record - pass it to appendAck()
+     */
+    Segment appendSend(String messageId, String groupId, int priority, long enqueuedAt, byte[] body) {
+        byte[] group = groupId == null ? null : groupId.getBytes(StandardCharsets.UTF_8);
+        appendLock.lock();
+        try {
+            Segment segment = writeRecord(SEND, messageId, enqueuedAt, (byte) priority, group, body);
+            segment.live.incrementAndGet();
+            return segment;
+        } finally {
+            appendLock.unlock();
+        }
+    }
+
+    void appendReceive(String messageId) {
+        append(RECEIVE, messageId);
+    }
+
+    void appendDeadLetter(String messageId) {
+        append(DEAD_LETTER, messageId);
+    }
+
+    void appendRedrive(String messageId) {
+        append(REDRIVE, messageId);
+    }
+
+    /**
+     * Appends an ACK record and releases the message from the segment that
+     * sent it - compacting the log if that was the last live message.
+     */
+    void appendAck(String messageId, Segment sentIn) {
+        appendLock.lock();
+        try {
+            writeRecord(ACK, messageId, 0, (byte) 0, null, null);
+            if (sentIn.live.decrementAndGet() == 0 && sentIn.sealed) {
+                compact();
+            }
+        } finally {
+            appendLock.unlock();
+        }
+    }
+
+    /**
+     * appendAck() for a batch: one lock and at most one compaction for all of them.
+     *
+     * @param sentIn the segment returned by appendSend() for each
+     */
+    <E> void appendAcks(List<E> acknowledged, Function<E, String> messageId, Function<E, Segment> sentIn) {
+        appendLock.lock();
+        try {
+            boolean released = false;
+            for (E entry : acknowledged) {
+                writeRecord(ACK, messageId.apply(entry), 0, (byte) 0, null, null);
+                Segment segment = sentIn.apply(entry);
+                released |= segment.live.decrementAndGet() == 0 && segment.sealed;
+            }
+            if (released) {
+                compact();
+            }
+        } finally {
+            appendLock.unlock();
+        }
+    }
+
+    /**
+     * Returns once everything appended before the call is on disk.
+     */
+    void sync() {
+        long target = appended;
+        if (durable >= target) {
+            return;
+        }
+        syncLock.lock();
+        try {
+            if (durable >= target) {
+                return; // The previous leader's force covered our records
+            }
+            // Read the position BEFORE the segment: anything up to it lives in
+            // this segment or in older ones, which roll() forced when sealing
+            long covered = appended;
+            current.buffer.force();
+            durable = covered;
+            syncs.increment();
+        } finally {
+            syncLock.unlock();
+        }
+    }
+
+    long syncCount() {
+        return syncs.sum();
+    }
+
+    int segmentCount() {
+        appendLock.lock();
+        try {
+            return segments.size();
+        } finally {
+            appendLock.unlock();
+        }
+    }
+
+    @Override
+    public void close() {
+        appendLock.lock();
+        try {
+            current.buffer.force();
+            durable = appended;
+        } finally {
+            appendLock.unlock();
+        }
+    }
+
+    private void append(byte type, String messageId) {
+        appendLock.lock();
+        try {
+            writeRecord(type, messageId, 0, (byte) 0, null, null);
+        } finally {
+            appendLock.unlock();
+        }
+    }
+
+    /**
+     * Writes one record at the end of the current segment (caller holds appendLock).
+     */
+    private Segment writeRecord(byte type, String messageId, long enqueuedAt, byte priority,
+                                byte[] group, byte[] body) {
+        byte[] id = messageId.getBytes(StandardCharsets.UTF_8);
+        int groupLength = group == null ? 0 : group.length;
+        int length = 1 + 4 + id.length + (body == null ? 0 : 8 + 1 + 4 + groupLength + body.length);
+        if (RECORD_HEADER + length > segmentBytes) {
+            throw new IllegalArgumentException(
+                "Log record of " + (RECORD_HEADER + length) + " bytes exceeds segment size " + segmentBytes);
+        }
+        if (position + RECORD_HEADER + length > segmentBytes) {
+            roll();
+        }
+        Segment segment = current;
+        MappedByteBuffer buffer = segment.buffer;
+        int payloadAt = position + RECORD_HEADER;
+        buffer.put(payloadAt, type);
+        buffer.putInt(payloadAt + 1, id.length);
+        buffer.put(payloadAt + 5, id);
+        if (body != null) {
+            int at = payloadAt + 5 + id.length;
+            buffer.putLong(at, enqueuedAt);
+            buffer.put(at + 8, priority);
+            buffer.putInt(at + 9, group == null ? -1 : group.length);
+            buffer.put(at + 13, group == null ? new byte[0] : group);
+            buffer.put(at + 13 + groupLength, body);
+        }
+        crc.reset();
+        crc.update(buffer.slice(payloadAt, length));
+        buffer.putInt(position + 4, (int) crc.getValue());
+        buffer.putInt(position, length);
+        position += RECORD_HEADER + length;
+        appended += RECORD_HEADER + length;
+        return segment;
+    }
+
+    /**
+     * Seals the full segment and starts the next one (caller holds appendLock).
+     */
+    private void roll() {
+        Segment full = current;
+        full.buffer.force();
+        full.sealed = true;
+        try {
+            current = openSegment(full.sequence + 1);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        segments.add(current);
+        position = 0;
+        compact(); // Every message of the full segment may already be acked
+    }
+
+    /**
+     * Deletes the oldest segments while all their messages are acknowledged
+     * (caller holds appendLock).
+     */
+    private void compact() {
+        Segment oldest;
+        while ((oldest = segments.peekFirst()) != null && oldest.sealed && oldest.live.get() == 0) {
+            segments.pollFirst();
+            try {
+                Files.deleteIfExists(oldest.path);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+
+    private Segment openSegment(long sequence) throws IOException {
+        Path path = directory.resolve(String.format("%020d%s", sequence, SUFFIX));
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE_NEW,
+                StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            // 📝 NOTE: The mapping stays valid after the channel is closed
+            return new Segment(sequence, path, channel.map(FileChannel.MapMode.READ_WRITE, 0, segmentBytes));
+        }
+    }
+
+    /**
+     * Applies a previous run's segment to the recovered messages.
+     */
+    private void replay(Segment segment) throws IOException {
+        ByteBuffer buffer;
+        try (FileChannel channel = FileChannel.open(segment.path, StandardOpenOption.READ)) {
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        while (buffer.remaining() >= RECORD_HEADER) {
+            int length = buffer.getInt();
+            int checksum = buffer.getInt();
+            if (length <= 0 || length > buffer.remaining()) {
+                return; // End of segment, or a torn tail
+            }
+            ByteBuffer payload = buffer.slice(buffer.position(), length);
+            crc.reset();
+            crc.update(payload.duplicate());
+            if ((int) crc.getValue() != checksum) {
+                return; // Torn write: nothing after it was acknowledged to anyone
+            }
+            buffer.position(buffer.position() + length);
+            apply(segment, payload);
+        }
+    }
+
+    private void apply(Segment segment, ByteBuffer payload) throws IOException {
+        byte type = payload.get();
+        byte[] id = new byte[payload.getInt()];
+        payload.get(id);
+        String messageId = new String(id, StandardCharsets.UTF_8);
+        if (type == SEND) {
+            long enqueuedAt = payload.getLong();
+            int priority = payload.get();
+            int groupLength = payload.getInt();
+            String groupId = null;
+            if (groupLength >= 0) {
+                byte[] group = new byte[groupLength];
+                payload.get(group);
+                groupId = new String(group, StandardCharsets.UTF_8);
+            }
+            byte[] body = new byte[payload.remaining()];
+            payload.get(body);
+            recovered.put(messageId, new Recovered(messageId, groupId, priority, body, enqueuedAt, segment));
+            segment.live.incrementAndGet();
+            return;
+        }
+        Recovered message = recovered.get(messageId);
+        if (message == null) {
+            return; // Sent in a segment that was compacted away
+        }
+        switch (type) {
+            case RECEIVE:
+                message.receiveCount++;
+                break;
+            case ACK:
+                recovered.remove(messageId);
+                message.segment.live.decrementAndGet();
+                break;
+            case DEAD_LETTER:
+                message.deadLetter = true;
+                break;
+            case REDRIVE:
+                message.deadLetter = false;
+                message.receiveCount = 0;
+                break;
+            default:
+                throw new IOException("Unknown record type " + type + " in " + segment.path);
+        }
+    }
+
+    private static List<Path> listSegments(Path directory) throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files
+                .filter(path -> path.getFileName().toString().matches("\\d{20}\\.log"))
+                .sorted()
+                .collect(Collectors.toCollection(ArrayList::new));
+        }
+    }
+}
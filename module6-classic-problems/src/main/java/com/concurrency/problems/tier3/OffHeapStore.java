@@ -0,0 +1,260 @@
+package com.concurrency.problems.tier3;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.concurrent.locks.StampedLock;
+
+/**
+ * Slab allocator for off-heap cache values (memcached-style).
+ *
+ * 📝 NOTE: Why off-heap? 20 GB of byte[] values on the Java heap means the
+ * GC has to trace and copy them - multi-second pauses. Bytes in direct
+ * ByteBuffers are invisible to the GC; the heap only keeps a long handle.
+ *
+ * Layout:
+ *   - Memory is cut into fixed-size SLABS (allocated lazily)
+ *   - Each slab is assigned to one SIZE CLASS (64B, 80B, 100B, ... x1.25)
+ *     and cut into equal chunks - no fragmentation inside a slab
+ *   - Free chunks form a linked list stored IN the free chunks themselves
+ *   - A slab whose last chunk is freed goes back to the unassigned pool,
+ *     so memory can move between size classes as value sizes shift
+ *
+ * Handle = [slab id: 16 bits][offset: 24 bits][length: 24 bits]
+ *
+ * 💡 THINK: How do readers copy bytes without the segment lock?
+ *   Every change to slab BYTES (writing a value, linking a free chunk) takes
+ *   the StampedLock write lock. Readers take an optimistic stamp, copy, and
+ *   validate; if a write slipped in, they retry under the read lock.
+ *   Allocation bookkeeping (which chunk is free) is guarded by the caller's
+ *   lock - ConcurrentLRUCache keeps one store per segment.
+ *
+ * ⚠️ AVOID: Freeing a chunk while a reader can still obtain its handle!
+ * Callers must retire the handle (publish a new one, or NO_HANDLE) BEFORE free().
+ */
+final class OffHeapStore {
+
+    static final long NO_HANDLE = -1L;
+
+    private static final int MIN_CHUNK_SIZE = 64;
+    private static final int MIN_SLAB_SIZE = 4 << 10;
+    private static final int MAX_SLAB_SIZE = 8 << 20; // must fit the 24-bit offset
+    private static final int MAX_SLABS = 1 << 16;     // must fit the 16-bit slab id
+    private static final int NONE = -1;
+
+    private final int slabSize;
+    private final int[] chunkSizes; // per size class
+
+    private final ByteBuffer[] slabs;
+    private final int[] slabClass;     // NONE = unassigned
+    private final int[] slabLive;      // allocated chunks per slab
+    private final int[] slabFreeHead;  // offset of first free chunk, NONE = empty list
+    private final int[] slabBump;      // offset of first never-used chunk
+
+    // Per-class doubly-linked list of slabs that still have room
+    private final int[] partialHead;
+    private final int[] partialNext;
+    private final int[] partialPrev;
+    private final boolean[] inPartial;
+
+    private final int[] unassigned; // stack of slab ids
+    private int unassignedCount;
+
+    private final StampedLock bytesLock = new StampedLock();
+
+    OffHeapStore(long capacityBytes) {
+        if (capacityBytes < MIN_CHUNK_SIZE) {
+            throw new IllegalArgumentException("Off-heap capacity too small: " + capacityBytes);
+        }
+        // Aim for >= 16 slabs so size classes can share memory
+        long target = Long.highestOneBit(Math.max(capacityBytes / 16, MIN_SLAB_SIZE));
+        this.slabSize = (int) Math.min(Math.min(target, MAX_SLAB_SIZE), Long.highestOneBit(capacityBytes));
+        int slabCount = (int) Math.min(capacityBytes / slabSize, MAX_SLABS);
+
+        int[] sizes = new int[64];
+        int classes = 0;
+        for (int size = MIN_CHUNK_SIZE; size < slabSize; size = ((size * 5 / 4) + 7) & ~7) {
+            sizes[classes++] = size;
+        }
+        sizes[classes++] = slabSize;
+        this.chunkSizes = Arrays.copyOf(sizes, classes);
+
+        this.slabs = new ByteBuffer[slabCount];
+        this.slabClass = new int[slabCount];
+        this.slabLive = new int[slabCount];
+        this.slabFreeHead = new int[slabCount];
+        this.slabBump = new int[slabCount];
+        this.partialNext = new int[slabCount];
+        this.partialPrev = new int[slabCount];
+        this.inPartial = new boolean[slabCount];
+        this.unassigned = new int[slabCount];
+        for (int slab = slabCount - 1; slab >= 0; slab--) {
+            resetSlab(slab);
+            unassigned[unassignedCount++] = slab;
+        }
+        this.partialHead = new int[classes];
+        Arrays.fill(partialHead, NONE);
+    }
+
+    /** Largest value (in bytes) the store can hold. */
+    int maxValueSize() {
+        return slabSize;
+    }
+
+    /** Size class a value of this length is stored in. */
+    int sizeClassOf(int length) {
+        int index = Arrays.binarySearch(chunkSizes, Math.max(length, 1));
+        return index >= 0 ? index : -index - 1;
+    }
+
+    static int lengthOf(long handle) {
+        return (int) (handle & 0xFFFFFF);
+    }
+
+    /**
+     * Copies the bytes into a free chunk of the right size class.
+     *
+     * @return the handle, or NO_HANDLE if the class is full and no slab is unassigned
+     */
+    long allocate(byte[] bytes) {
+        if (bytes.length > slabSize) {
+            throw new IllegalArgumentException(
+                "Value of " + bytes.length + " bytes exceeds the slab size of " + slabSize);
+        }
+        int sizeClass = sizeClassOf(bytes.length);
+        int slab = partialHead[sizeClass];
+        if (slab == NONE) {
+            if (unassignedCount == 0) {
+                return NO_HANDLE;
+            }
+            slab = unassigned[--unassignedCount];
+            slabClass[slab] = sizeClass;
+            if (slabs[slab] == null) {
+                slabs[slab] = ByteBuffer.allocateDirect(slabSize);
+            }
+            addPartial(sizeClass, slab);
+        }
+
+        int chunkSize = chunkSizes[sizeClass];
+        int offset;
+        long stamp = bytesLock.writeLock();
+        try {
+            if (slabFreeHead[slab] != NONE) {
+                offset = slabFreeHead[slab];
+                slabFreeHead[slab] = slabs[slab].getInt(offset);
+            } else {
+                offset = slabBump[slab];
+                slabBump[slab] += chunkSize;
+            }
+            slabs[slab].put(offset, bytes);
+        } finally {
+            bytesLock.unlockWrite(stamp);
+        }
+        slabLive[slab]++;
+        if (slabFreeHead[slab] == NONE && slabBump[slab] + chunkSize > slabSize) {
+            removePartial(sizeClass, slab); // Slab is full
+        }
+        return ((long) slab << 48) | ((long) offset << 24) | bytes.length;
+    }
+
+    /**
+     * Returns a chunk to its slab; an emptied slab becomes unassigned.
+     */
+    void free(long handle) {
+        int slab = (int) (handle >>> 48);
+        int offset = (int) ((handle >>> 24) & 0xFFFFFF);
+        int sizeClass = slabClass[slab];
+
+        long stamp = bytesLock.writeLock();
+        try {
+            slabs[slab].putInt(offset, slabFreeHead[slab]);
+        } finally {
+            bytesLock.unlockWrite(stamp);
+        }
+        slabFreeHead[slab] = offset;
+
+        if (--slabLive[slab] == 0) {
+            // 💡 THINK: This is what lets a 100B-heavy workload turn into a
+            // 1MB-heavy one without restarting - empty slabs change class.
+            if (inPartial[slab]) {
+                removePartial(sizeClass, slab);
+            }
+            resetSlab(slab);
+            unassigned[unassignedCount++] = slab;
+        } else if (!inPartial[slab]) {
+            addPartial(sizeClass, slab);
+        }
+    }
+
+    /**
+     * Copies a value out without blocking writers (optimistic read).
+     *
+     * @param handles supplies the CURRENT handle - re-read inside the stamp so a
+     *                handle retired concurrently is never dereferenced stale
+     * @return the bytes, or null if the handle is NO_HANDLE
+     */
+    byte[] read(HandleSource handles) {
+        long stamp = bytesLock.tryOptimisticRead();
+        if (stamp != 0) {
+            byte[] bytes = copy(handles.currentHandle());
+            if (bytesLock.validate(stamp)) {
+                return bytes;
+            }
+        }
+        stamp = bytesLock.readLock();
+        try {
+            return copy(handles.currentHandle());
+        } finally {
+            bytesLock.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * Where read() gets the handle from (the cache node).
+     */
+    interface HandleSource {
+        long currentHandle();
+    }
+
+    private byte[] copy(long handle) {
+        if (handle == NO_HANDLE) {
+            return null;
+        }
+        int slab = (int) (handle >>> 48);
+        int offset = (int) ((handle >>> 24) & 0xFFFFFF);
+        byte[] bytes = new byte[lengthOf(handle)];
+        slabs[slab].get(offset, bytes);
+        return bytes;
+    }
+
+    private void resetSlab(int slab) {
+        slabClass[slab] = NONE;
+        slabLive[slab] = 0;
+        slabFreeHead[slab] = NONE;
+        slabBump[slab] = 0;
+    }
+
+    private void addPartial(int sizeClass, int slab) {
+        int head = partialHead[sizeClass];
+        partialNext[slab] = head;
+        partialPrev[slab] = NONE;
+        if (head != NONE) {
+            partialPrev[head] = slab;
+        }
+        partialHead[sizeClass] = slab;
+        inPartial[slab] = true;
+    }
+
+    private void removePartial(int sizeClass, int slab) {
+        int prev = partialPrev[slab];
+        int next = partialNext[slab];
+        if (prev != NONE) {
+            partialNext[prev] = next;
+        } else {
+            partialHead[sizeClass] = next;
+        }
+        if (next != NONE) {
+            partialPrev[next] = prev;
+        }
+        inPartial[slab] = false;
+    }
+}
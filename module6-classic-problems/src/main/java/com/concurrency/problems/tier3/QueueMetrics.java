@@ -0,0 +1,86 @@
+package com.concurrency.problems.tier3;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Ready-made metrics listener for ConcurrentMessageQueue: latency
+ * histograms for send→receive and receive→ack, plus event counters.
+ *
+ * 📝 NOTE: send→receive is recorded for FIRST deliveries only - a
+ * redelivery's age includes the failed attempts before it and would hide
+ * how long fresh messages wait. Redeliveries are counted instead.
+ *
+ * 🔑 HINT:
+ *   QueueMetrics metrics = new QueueMetrics();
+ *   queue.setMetricsListener(metrics);
+ *   ...
+ *   System.out.println(metrics.report(queue));
+ */
+public class QueueMetrics implements ConcurrentMessageQueue.MetricsListener {
+
+    private final LatencyHistogram sendToReceive = new LatencyHistogram();
+    private final LatencyHistogram receiveToAck = new LatencyHistogram();
+    private final LongAdder sent = new LongAdder();
+    private final LongAdder received = new LongAdder();
+    private final LongAdder redelivered = new LongAdder();
+    private final LongAdder acknowledged = new LongAdder();
+    private final LongAdder timedOut = new LongAdder();
+    private final LongAdder deadLettered = new LongAdder();
+
+    @Override
+    public void onSend() {
+        sent.increment();
+    }
+
+    @Override
+    public void onReceive(long sendToReceiveNanos, int receiveCount) {
+        received.increment();
+        if (receiveCount == 1) {
+            sendToReceive.record(sendToReceiveNanos);
+        } else {
+            redelivered.increment();
+        }
+    }
+
+    @Override
+    public void onAcknowledge(long receiveToAckNanos) {
+        acknowledged.increment();
+        receiveToAck.record(receiveToAckNanos);
+    }
+
+    @Override
+    public void onAcknowledgeBatch(long[] receiveToAckNanos) {
+        acknowledged.add(receiveToAckNanos.length);
+        for (long nanos : receiveToAckNanos) {
+            receiveToAck.record(nanos);
+        }
+    }
+
+    @Override
+    public void onVisibilityTimeout(boolean movedToDeadLetters) {
+        timedOut.increment();
+        if (movedToDeadLetters) {
+            deadLettered.increment();
+        }
+    }
+
+    public LatencyHistogram getSendToReceive() { return sendToReceive; }
+    public LatencyHistogram getReceiveToAck() { return receiveToAck; }
+    public long getSentCount() { return sent.sum(); }
+    public long getReceivedCount() { return received.sum(); }
+    public long getRedeliveredCount() { return redelivered.sum(); }
+    public long getAcknowledgedCount() { return acknowledged.sum(); }
+    public long getTimedOutCount() { return timedOut.sum(); }
+    public long getDeadLetteredCount() { return deadLettered.sum(); }
+
+    /**
+     * One-line summary; queue depth and in-flight are read from the queue.
+     */
+    public String report(ConcurrentMessageQueue<?> queue) {
+        return String.format("depth=%d inFlight=%d sent=%d received=%d redelivered=%d acked=%d"
+                + " timedOut=%d deadLettered=%d | send->receive: %s | receive->ack: %s",
+            queue.getApproximateMessageCount(), queue.getInFlightCount(), getSentCount(),
+            getReceivedCount(), getRedeliveredCount(), getAcknowledgedCount(), getTimedOutCount(),
+            getDeadLetteredCount(), sendToReceive, receiveToAck);
+    }
+}
@@ -0,0 +1,94 @@
+package com.concurrency.problems.tier3;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Consumer;
+
+/**
+ * Striped, lossy ring buffers for recording cache reads (Caffeine-style).
+ *
+ * 📝 NOTE: Used by ConcurrentLRUCache so a hit does NOT take the list lock.
+ *   - Readers append the accessed node to "their" stripe with one CAS
+ *   - Whoever holds the list lock later drains all stripes in a batch
+ *   - If a stripe is full (or the CAS loses) the read is simply DROPPED
+ *
+ * 💡 THINK: Why is dropping reads OK?
+ *   LRU order is a heuristic. A hot key is read again soon, so losing a few
+ *   of its reads barely changes what gets evicted - but never blocking a
+ *   reader is a huge win. Writes are never dropped (they hold the lock).
+ *
+ * ⚠️ AVOID: Allocating on the read path! offer() only writes a reference into
+ * a preallocated array, so a cache hit stays allocation-free.
+ *
+ * @param <E> element type
+ */
+final class ReadBuffer<E> {
+
+    /** Slots per stripe - must be a power of two. */
+    static final int BUFFER_SIZE = 16;
+    private static final int MASK = BUFFER_SIZE - 1;
+
+    private static final class Stripe<E> {
+        final AtomicReferenceArray<E> slots = new AtomicReferenceArray<>(BUFFER_SIZE);
+        final AtomicLong writeCounter = new AtomicLong();
+        volatile long readCounter; // only advanced by the (single) drainer
+    }
+
+    private final Stripe<E>[] stripes;
+    private final int stripeMask;
+
+    @SuppressWarnings("unchecked")
+    ReadBuffer(int stripeCount) {
+        int count = 1 << (32 - Integer.numberOfLeadingZeros(Math.max(1, stripeCount) - 1));
+        this.stripes = (Stripe<E>[]) new Stripe[count];
+        for (int i = 0; i < count; i++) {
+            stripes[i] = new Stripe<>();
+        }
+        this.stripeMask = count - 1;
+    }
+
+    /**
+     * Records an element without blocking.
+     *
+     * @return true if the caller's stripe is now full and should be drained
+     */
+    boolean offer(E element) {
+        Stripe<E> stripe = stripes[stripeIndex()];
+        long tail = stripe.writeCounter.get();
+        long size = tail - stripe.readCounter;
+        if (size >= BUFFER_SIZE) {
+            return true; // Full - drop this read, ask for a drain
+        }
+        if (stripe.writeCounter.compareAndSet(tail, tail + 1)) {
+            stripe.slots.lazySet((int) (tail & MASK), element);
+            return size + 1 >= BUFFER_SIZE;
+        }
+        return false; // Lost the race - drop, another reader just recorded
+    }
+
+    /**
+     * Hands every recorded element to the consumer, in per-stripe order.
+     * Must be called by one thread at a time (the holder of the list lock).
+     */
+    void drainTo(Consumer<E> consumer) {
+        for (Stripe<E> stripe : stripes) {
+            long head = stripe.readCounter;
+            long tail = stripe.writeCounter.get();
+            for (; head < tail; head++) {
+                int index = (int) (head & MASK);
+                E element = stripe.slots.get(index);
+                if (element == null) {
+                    break; // Writer claimed the slot but hasn't published yet
+                }
+                stripe.slots.lazySet(index, null);
+                consumer.accept(element);
+            }
+            stripe.readCounter = head;
+        }
+    }
+
+    private int stripeIndex() {
+        int h = (int) Thread.currentThread().getId() * 0x9E3779B9;
+        return (h ^ (h >>> 16)) & stripeMask;
+    }
+}
@@ -0,0 +1,21 @@
+package com.concurrency.problems.tier3;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Converts objects to and from bytes.
+ *
+ * Used for ConcurrentLRUCache's off-heap values and snapshots, and for the
+ * message bodies in ConcurrentMessageQueue's write-ahead log.
+ *
+ * 📝 NOTE: serialize() runs before any lock is taken and deserialize() runs
+ * with no lock held, so a slow serializer never stalls other threads.
+ *
+ * @param <T> type of the objects converted
+ */
+public interface Serializer<T> {
+
+    byte[] serialize(T value);
+
+    T deserialize(ByteBuffer bytes);
+}
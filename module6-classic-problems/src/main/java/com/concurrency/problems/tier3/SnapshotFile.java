@@ -0,0 +1,204 @@
+package com.concurrency.problems.tier3;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * On-disk format for ConcurrentLRUCache snapshots.
+ *
+ *   Header:   magic (int), version (int), sectionCount (int)
+ *             per section: offset (long), length (long), count (int)
+ *   Sections: one per segment, records in recency order (LRU first):
+ *             keyLength (int), key bytes, valueLength (int), value bytes
+ *
+ * 📝 NOTE: Why one section per segment?
+ *   Order only matters WITHIN a segment - segments are independent LRUs.
+ *   So a restore can replay every section on its own thread: each one
+ *   takes a different segment lock, and each keeps its own order.
+ *
+ * 💡 THINK: Why memory-mapped?
+ *   The writer fills a mapped window of the file with plain put() calls -
+ *   no write() system call per record and no intermediate stream buffers.
+ *   When the window is full, the next one is mapped (the file grows).
+ *   The reader maps each section and hands out zero-copy slices.
+ *
+ * ⚠️ AVOID: Leaving a half-written snapshot where the next startup loads it!
+ * The writer fills a temporary file and atomically renames it when done.
+ */
+final class SnapshotFile {
+
+    private static final int MAGIC = 0x4C525553; // "LRUS"
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 12;
+    private static final int SECTION_ENTRY_SIZE = 20;
+    private static final int WINDOW_SIZE = 64 << 20;
+
+    private SnapshotFile() {
+    }
+
+    /**
+     * Streams records into a snapshot file, section by section.
+     */
+    static final class Writer implements Closeable {
+        private final Path target;
+        private final Path temp;
+        private final FileChannel channel;
+        private final long[] offsets;
+        private final long[] lengths;
+        private final int[] counts;
+        private int section = -1;
+        private boolean completed;
+
+        private MappedByteBuffer window;
+        private long windowStart;
+        private long position;
+
+        Writer(Path target, int sectionCount) throws IOException {
+            this.target = target;
+            this.temp = target.resolveSibling(target.getFileName() + ".tmp");
+            this.channel = FileChannel.open(temp, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            this.offsets = new long[sectionCount];
+            this.lengths = new long[sectionCount];
+            this.counts = new int[sectionCount];
+            this.position = HEADER_SIZE + (long) sectionCount * SECTION_ENTRY_SIZE;
+        }
+
+        void beginSection() {
+            section++;
+            offsets[section] = position;
+        }
+
+        void write(byte[] key, byte[] value) throws IOException {
+            int length = 8 + key.length + value.length;
+            ensureWindow(length);
+            window.putInt(key.length).put(key).putInt(value.length).put(value);
+            position += length;
+            counts[section]++;
+        }
+
+        void endSection() {
+            lengths[section] = position - offsets[section];
+        }
+
+        /**
+         * Writes the header and publishes the file under its final name.
+         *
+         * @return number of records written
+         */
+        int finish() throws IOException {
+            if (window != null) {
+                window.force();
+            }
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE + counts.length * SECTION_ENTRY_SIZE);
+            header.putInt(MAGIC).putInt(VERSION).putInt(counts.length);
+            int total = 0;
+            for (int i = 0; i < counts.length; i++) {
+                header.putLong(offsets[i]).putLong(lengths[i]).putInt(counts[i]);
+                total += counts[i];
+            }
+            header.flip();
+            while (header.hasRemaining()) {
+                channel.write(header, header.position());
+            }
+            channel.truncate(position); // Drop the unused tail of the last window
+            channel.force(true);
+            channel.close();
+            Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            completed = true;
+            return total;
+        }
+
+        private void ensureWindow(int length) throws IOException {
+            if (window != null && position + length <= windowStart + window.capacity()) {
+                return;
+            }
+            if (window != null) {
+                window.force();
+            }
+            windowStart = position;
+            window = channel.map(FileChannel.MapMode.READ_WRITE, position, Math.max(WINDOW_SIZE, length));
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (!completed) {
+                channel.close();
+                Files.deleteIfExists(temp);
+            }
+        }
+    }
+
+    /**
+     * Maps every section of a snapshot file read-only.
+     *
+     * @return one buffer per section, positioned at its first record
+     */
+    static List<ByteBuffer> readSections(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long fileSize = channel.size();
+            ByteBuffer header = readFully(channel, 0, HEADER_SIZE, fileSize);
+            if (header.getInt() != MAGIC || header.getInt() != VERSION) {
+                throw new IOException("Not a cache snapshot: " + file);
+            }
+            int sectionCount = header.getInt();
+            if (sectionCount < 0) {
+                throw new IOException("Corrupt snapshot header: " + file);
+            }
+
+            ByteBuffer table = readFully(channel, HEADER_SIZE,
+                (long) sectionCount * SECTION_ENTRY_SIZE, fileSize);
+            List<ByteBuffer> sections = new ArrayList<>(sectionCount);
+            for (int i = 0; i < sectionCount; i++) {
+                long offset = table.getLong();
+                long length = table.getLong();
+                table.getInt(); // record count - the buffer's limit already ends the section
+                if (offset < 0 || length < 0 || length > Integer.MAX_VALUE || offset + length > fileSize) {
+                    throw new IOException("Corrupt snapshot section " + i + ": " + file);
+                }
+                // 📝 NOTE: The mapping stays valid after the channel is closed
+                sections.add(channel.map(FileChannel.MapMode.READ_ONLY, offset, length));
+            }
+            return sections;
+        }
+    }
+
+    /**
+     * Reads the next length-prefixed field of a section as a zero-copy slice.
+     */
+    static ByteBuffer nextField(ByteBuffer section) throws IOException {
+        if (section.remaining() < 4) {
+            throw new IOException("Truncated snapshot record");
+        }
+        int length = section.getInt();
+        if (length < 0 || length > section.remaining()) {
+            throw new IOException("Corrupt snapshot record length: " + length);
+        }
+        ByteBuffer field = section.slice(section.position(), length).asReadOnlyBuffer();
+        section.position(section.position() + length);
+        return field;
+    }
+
+    private static ByteBuffer readFully(FileChannel channel, long position, long length, long fileSize)
+            throws IOException {
+        if (position + length > fileSize) {
+            throw new IOException("Truncated snapshot");
+        }
+        ByteBuffer buffer = ByteBuffer.allocate((int) length);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new IOException("Truncated snapshot");
+            }
+        }
+        return buffer.flip();
+    }
+}
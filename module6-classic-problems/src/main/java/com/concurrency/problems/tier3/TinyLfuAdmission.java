@@ -0,0 +1,41 @@
+package com.concurrency.problems.tier3;
+
+/**
+ * TinyLFU admission for ConcurrentLRUCache: a new entry only displaces the
+ * LRU victim if it has been seen MORE often recently.
+ *
+ * 📝 NOTE: Pure LRU admits everything, so one scan over cold keys flushes
+ * the whole hot working set. TinyLFU keeps a FrequencySketch of recent
+ * accesses (hits AND misses-turned-puts) and compares candidate vs victim.
+ *
+ * 💡 THINK: Why does the cache also keep a small window LRU in front?
+ *   A brand-new key has frequency ~1 and would always lose. The window
+ *   gives it a short time to build up frequency before it must compete -
+ *   that combination is W-TinyLFU (used by Caffeine).
+ *
+ * 🔑 HINT: new ConcurrentLRUCache<>(capacity, segments, true, TinyLfuAdmission::new)
+ *
+ * @param <K> key type
+ */
+public final class TinyLfuAdmission<K> implements ConcurrentLRUCache.AdmissionPolicy<K> {
+
+    private final FrequencySketch sketch;
+
+    /**
+     * @param maximumSize number of entries the owning segment can hold
+     */
+    public TinyLfuAdmission(int maximumSize) {
+        this.sketch = new FrequencySketch(maximumSize);
+    }
+
+    @Override
+    public void recordAccess(K key) {
+        sketch.increment(key);
+    }
+
+    @Override
+    public boolean admit(K candidate, K victim) {
+        // Ties go to the victim: it already proved itself in the main region
+        return sketch.frequency(candidate) > sketch.frequency(victim);
+    }
+}
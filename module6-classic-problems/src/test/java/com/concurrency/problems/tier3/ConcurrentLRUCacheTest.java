@@ -0,0 +1,542 @@
+package com.concurrency.problems.tier3;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertDoesNotThrow;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Tests for ConcurrentLRUCache implementation.
+ *
+ * Run with: mvn test -Dtest=ConcurrentLRUCacheTest
+ */
+class ConcurrentLRUCacheTest {
+
+    @Test
+    void testGetAndPut() {
+        ConcurrentLRUCache<String, Integer> cache = new ConcurrentLRUCache<>(3);
+
+        cache.put("a", 1);
+        cache.put("b", 2);
+
+        assertEquals(1, cache.get("a"));
+        assertEquals(2, cache.get("b"));
+        assertNull(cache.get("missing"));
+    }
+
+    @Test
+    void testEvictsLeastRecentlyUsed() {
+        ConcurrentLRUCache<String, Integer> cache = new ConcurrentLRUCache<>(2);
+
+        cache.put("a", 1);
+        cache.put("b", 2);
+        cache.get("a");       // "b" is now least recently used
+        cache.put("c", 3);
+
+        assertNull(cache.get("b"), "LRU entry should be evicted");
+        assertEquals(1, cache.get("a"));
+        assertEquals(3, cache.get("c"));
+        assertEquals(2, cache.size());
+    }
+
+    @Test
+    void testBufferedReadsStillAffectEviction() {
+        ConcurrentLRUCache<String, Integer> cache = new ConcurrentLRUCache<>(2, 1, true);
+
+        cache.put("a", 1);
+        cache.put("b", 2);
+        cache.get("a");       // Only recorded in the read buffer...
+        cache.put("c", 3);    // ...and replayed before this write evicts
+
+        assertNull(cache.get("b"), "Buffered read should have protected \"a\"");
+        assertEquals(1, cache.get("a"));
+        assertEquals(3, cache.get("c"));
+    }
+
+    @Test
+    void testTinyLfuSurvivesScan() {
+        ConcurrentLRUCache<Integer, Integer> cache =
+            new ConcurrentLRUCache<>(100, 1, false, TinyLfuAdmission::new);
+        for (int i = 0; i < 50; i++) {
+            cache.put(i, i);
+        }
+        for (int round = 0; round < 10; round++) {
+            for (int i = 0; i < 50; i++) {
+                cache.get(i);
+            }
+        }
+
+        // One pass over 1000 cold keys would flush everything in a pure LRU
+        for (int i = 1_000; i < 2_000; i++) {
+            cache.put(i, i);
+        }
+
+        for (int i = 0; i < 50; i++) {
+            assertEquals(i, cache.get(i), "Hot key " + i + " should survive the scan");
+        }
+        assertTrue(cache.getStats().getRejectionCount() > 0);
+        assertEquals(100, cache.size());
+    }
+
+    @Test
+    void testPureLruIsFlushedByScan() {
+        ConcurrentLRUCache<Integer, Integer> cache = new ConcurrentLRUCache<>(100);
+        for (int i = 0; i < 50; i++) {
+            cache.put(i, i);
+        }
+        for (int i = 1_000; i < 2_000; i++) {
+            cache.put(i, i);
+        }
+
+        assertNull(cache.get(0));
+        assertEquals(0, cache.getStats().getRejectionCount());
+    }
+
+    @Test
+    @Timeout(5)
+    void testExpireAfterWrite() throws InterruptedException {
+        ConcurrentLRUCache<String, Integer> cache =
+            new ConcurrentLRUCache<>(10, 100, 0, TimeUnit.MILLISECONDS);
+
+        cache.put("a", 1);
+        assertEquals(1, cache.get("a"));
+
+        Thread.sleep(150);
+        assertNull(cache.get("a"), "Entry should expire 100ms after the write");
+    }
+
+    @Test
+    @Timeout(5)
+    void testExpireAfterAccessIsExtendedByReads() throws InterruptedException {
+        ConcurrentLRUCache<String, Integer> cache =
+            new ConcurrentLRUCache<>(10, 0, 300, TimeUnit.MILLISECONDS);
+
+        cache.put("a", 1);
+        for (int i = 0; i < 5; i++) {
+            Thread.sleep(100);
+            assertEquals(1, cache.get("a"), "Reads should keep the entry alive");
+        }
+
+        Thread.sleep(400);
+        assertNull(cache.get("a"), "Entry should expire after being idle");
+    }
+
+    @Test
+    @Timeout(5)
+    void testTimerWheelRemovesExpiredEntries() throws InterruptedException {
+        ConcurrentLRUCache<Integer, Integer> cache =
+            new ConcurrentLRUCache<>(100, 50, 0, TimeUnit.MILLISECONDS);
+        for (int i = 0; i < 20; i++) {
+            cache.put(i, i);
+        }
+
+        // The finest wheel level ticks every ~1.07s
+        Thread.sleep(1_200);
+        cache.cleanUp();
+
+        assertEquals(0, cache.size(), "Expired entries should be removed from the map");
+        assertEquals(20, cache.getStats().getExpirationCount());
+    }
+
+    @Test
+    void testWeightedEvictionKeepsTotalUnderLimit() {
+        ConcurrentLRUCache<String, byte[]> cache =
+            new ConcurrentLRUCache<>(1_000, (key, value) -> value.length);
+
+        cache.put("small-1", new byte[100]);
+        cache.put("small-2", new byte[100]);
+        cache.put("small-3", new byte[100]);
+        assertEquals(300, cache.getWeightedSize());
+
+        // 850 bytes only fit after evicting the two least recently used entries
+        cache.put("large", new byte[850]);
+
+        assertNull(cache.get("small-1"));
+        assertNull(cache.get("small-2"));
+        assertEquals(100, cache.get("small-3").length);
+        assertEquals(950, cache.getWeightedSize());
+        assertEquals(2, cache.getStats().getEvictionCount());
+    }
+
+    @Test
+    void testWeightedUpdateTriggersEviction() {
+        ConcurrentLRUCache<String, byte[]> cache =
+            new ConcurrentLRUCache<>(1_000, (key, value) -> value.length);
+        cache.put("a", new byte[400]);
+        cache.put("b", new byte[400]);
+
+        cache.put("b", new byte[700]); // grows in place: "a" must go
+
+        assertNull(cache.get("a"));
+        assertEquals(700, cache.getWeightedSize());
+    }
+
+    @Test
+    void testEntryHeavierThanCapacityIsNotKept() {
+        ConcurrentLRUCache<String, byte[]> cache =
+            new ConcurrentLRUCache<>(1_000, (key, value) -> value.length);
+        cache.put("a", new byte[10]);
+
+        cache.put("huge", new byte[5_000]);
+
+        assertNull(cache.get("huge"));
+        assertEquals(10, cache.getWeightedSize());
+    }
+
+    @Test
+    void testOffHeapRoundTrip() {
+        ConcurrentLRUCache<String, String> cache =
+            new ConcurrentLRUCache<>(2, 1, false, UTF8, 64 << 10);
+
+        cache.put("a", "alpha");
+        cache.put("b", "beta");
+        cache.put("a", "alpha, rewritten");
+        cache.put("c", "gamma"); // evicts "b" by entry count
+
+        assertEquals("alpha, rewritten", cache.get("a"));
+        assertNull(cache.get("b"));
+        assertEquals("gamma", cache.get("c"));
+    }
+
+    @Test
+    void testOffHeapEvictsLeastRecentWhenSlabsAreFull() {
+        ConcurrentLRUCache<Integer, String> cache =
+            new ConcurrentLRUCache<>(10_000, 1, false, UTF8, 64 << 10);
+
+        for (int i = 0; i < 1_000; i++) {
+            cache.put(i, valueFor(i, 500));
+        }
+
+        assertTrue(cache.size() < 1_000, "64KB cannot hold 500KB: " + cache.size());
+        assertEquals(valueFor(999, 500), cache.get(999));
+        assertNull(cache.get(0));
+        assertTrue(cache.getStats().getEvictionCount() > 0);
+    }
+
+    @Test
+    void testOffHeapSlabsMoveBetweenSizeClasses() {
+        ConcurrentLRUCache<Integer, String> cache =
+            new ConcurrentLRUCache<>(10_000, 1, false, UTF8, 64 << 10);
+        for (int i = 0; i < 1_000; i++) {
+            cache.put(i, valueFor(i, 100)); // every slab now holds small chunks
+        }
+
+        for (int i = 1_000; i < 1_050; i++) {
+            cache.put(i, valueFor(i, 3_000));
+        }
+
+        for (int i = 1_040; i < 1_050; i++) {
+            assertEquals(valueFor(i, 3_000), cache.get(i));
+        }
+    }
+
+    @Test
+    void testOffHeapValueHeavierThanSlabIsRejected() {
+        ConcurrentLRUCache<Integer, String> cache =
+            new ConcurrentLRUCache<>(100, 1, false, UTF8, 64 << 10);
+
+        assertThrows(IllegalArgumentException.class, () -> cache.put(1, valueFor(1, 10_000)));
+    }
+
+    @Test
+    @Timeout(10)
+    void testOffHeapConcurrentReadsAreNeverTorn() throws InterruptedException {
+        // Tiny budget: chunks are freed and reused constantly under the readers
+        ConcurrentLRUCache<Integer, String> cache =
+            new ConcurrentLRUCache<>(1_000, 2, true, UTF8, 16 << 10);
+        int numThreads = 4;
+        AtomicInteger wrongValues = new AtomicInteger();
+        CountDownLatch endLatch = new CountDownLatch(numThreads);
+
+        for (int t = 0; t < numThreads; t++) {
+            final int seed = t;
+            new Thread(() -> {
+                try {
+                    for (int i = 0; i < 20_000; i++) {
+                        int key = (i * 31 + seed) % 200;
+                        if (i % 3 == 0) {
+                            cache.put(key, valueFor(key, 64 + key));
+                        } else {
+                            String value = cache.get(key);
+                            if (value != null && !value.equals(valueFor(key, 64 + key))) {
+                                wrongValues.incrementAndGet();
+                            }
+                        }
+                    }
+                } finally {
+                    endLatch.countDown();
+                }
+            }).start();
+        }
+
+        assertTrue(endLatch.await(8, TimeUnit.SECONDS));
+        assertEquals(0, wrongValues.get());
+    }
+
+    @Test
+    @Timeout(10)
+    void testGetOrLoadCoalescesConcurrentMisses() throws InterruptedException {
+        ConcurrentLRUCache<String, String> cache = new ConcurrentLRUCache<>(10);
+        AtomicInteger loads = new AtomicInteger();
+        int numThreads = 10;
+
+        ExecutorService executor = Executors.newFixedThreadPool(numThreads);
+        CountDownLatch startLatch = new CountDownLatch(1);
+        List<Future<String>> results = new ArrayList<>();
+        for (int i = 0; i < numThreads; i++) {
+            results.add(executor.submit(() -> {
+                startLatch.await();
+                return cache.getOrLoad("key", k -> {
+                    loads.incrementAndGet();
+                    sleepQuietly(200);
+                    return "value-of-" + k;
+                });
+            }));
+        }
+
+        startLatch.countDown();
+        for (Future<String> result : results) {
+            assertEquals("value-of-key", assertDoesNotThrow(() -> result.get(5, TimeUnit.SECONDS)));
+        }
+        executor.shutdown();
+
+        assertEquals(1, loads.get(), "Concurrent misses should share one load");
+        assertEquals("value-of-key", cache.get("key"));
+    }
+
+    @Test
+    void testGetOrLoadFailureIsNotCached() {
+        ConcurrentLRUCache<String, String> cache = new ConcurrentLRUCache<>(10);
+
+        assertThrows(IllegalStateException.class, () -> cache.getOrLoad("key", k -> {
+            throw new IllegalStateException("backend down");
+        }));
+
+        assertEquals("ok", cache.getOrLoad("key", k -> "ok"), "Next call should retry the load");
+    }
+
+    @Test
+    @Timeout(5)
+    void testRefreshAheadReplacesValueBeforeExpiry() throws InterruptedException {
+        ConcurrentLRUCache<String, Integer> cache =
+            new ConcurrentLRUCache<>(10, 1_000, 0, TimeUnit.MILLISECONDS);
+        AtomicInteger version = new AtomicInteger();
+
+        assertEquals(1, cache.getOrLoad("key", k -> version.incrementAndGet()));
+
+        // Inside the last 20% of the TTL: returns the old value, reloads in the background
+        Thread.sleep(850);
+        assertEquals(1, cache.getOrLoad("key", k -> version.incrementAndGet()));
+
+        long deadline = System.currentTimeMillis() + 1_000;
+        while (!Integer.valueOf(2).equals(cache.get("key")) && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(2, cache.get("key"), "Refresh should have installed the new value");
+
+        Thread.sleep(300); // Past the ORIGINAL expiry - the refreshed entry is still alive
+        assertEquals(2, cache.get("key"));
+    }
+
+    @Test
+    void testSnapshotRestoresRecencyOrder(@TempDir Path dir) throws IOException {
+        ConcurrentLRUCache<String, String> cache = new ConcurrentLRUCache<>(3);
+        cache.put("a", "alpha");
+        cache.put("b", "beta");
+        cache.put("c", "gamma");
+        cache.get("a"); // order is now b, c, a (least recent first)
+        Path file = dir.resolve("cache.snapshot");
+
+        assertEquals(3, cache.writeSnapshot(file, UTF8, UTF8));
+        ConcurrentLRUCache<String, String> restored = new ConcurrentLRUCache<>(3);
+        assertEquals(3, restored.loadSnapshot(file, UTF8, UTF8));
+        restored.put("d", "delta");
+
+        assertNull(restored.get("b"), "b was least recently used before the restart");
+        assertEquals("alpha", restored.get("a"));
+        assertEquals("gamma", restored.get("c"));
+    }
+
+    @Test
+    void testSnapshotRoundTripAcrossSegments(@TempDir Path dir) throws IOException {
+        ConcurrentLRUCache<Integer, String> cache =
+            new ConcurrentLRUCache<>(1_000, 8, true, TinyLfuAdmission::new);
+        for (int i = 0; i < 1_000; i++) {
+            cache.put(i, valueFor(i, 20));
+        }
+        Path file = dir.resolve("cache.snapshot");
+
+        int written = cache.writeSnapshot(file, INTS, UTF8);
+        ConcurrentLRUCache<Integer, String> restored =
+            new ConcurrentLRUCache<>(1_000, 8, true, TinyLfuAdmission::new);
+        int loaded = restored.loadSnapshot(file, INTS, UTF8);
+
+        assertEquals(cache.size(), written);
+        assertEquals(written, loaded);
+        assertEquals(cache.size(), restored.size());
+        for (int i = 0; i < 1_000; i++) {
+            assertEquals(cache.get(i), restored.get(i));
+        }
+    }
+
+    @Test
+    void testLoadRejectsForeignFile(@TempDir Path dir) throws IOException {
+        Path file = dir.resolve("not-a-snapshot");
+        Files.write(file, "hello, world".getBytes(StandardCharsets.UTF_8));
+
+        ConcurrentLRUCache<String, String> cache = new ConcurrentLRUCache<>(3);
+        assertThrows(IOException.class, () -> cache.loadSnapshot(file, UTF8, UTF8));
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    void testSegmentCountRoundedToPowerOfTwo() {
+        ConcurrentLRUCache<Integer, Integer> cache = new ConcurrentLRUCache<>(100, 5);
+
+        assertEquals(8, cache.getSegmentCount());
+        assertThrows(IllegalArgumentException.class, () -> new ConcurrentLRUCache<>(4, 8));
+    }
+
+    @Test
+    void testSegmentedCacheRespectsCapacity() {
+        ConcurrentLRUCache<Integer, Integer> cache = new ConcurrentLRUCache<>(64, 4);
+
+        for (int i = 0; i < 1_000; i++) {
+            cache.put(i, i);
+        }
+
+        assertEquals(64, cache.size());
+        assertEquals(1_000 - 64, cache.getStats().getEvictionCount());
+    }
+
+    @Test
+    void testPerSegmentStats() {
+        ConcurrentLRUCache<Integer, Integer> cache = new ConcurrentLRUCache<>(64, 4);
+        for (int i = 0; i < 32; i++) {
+            cache.put(i, i);
+        }
+        for (int i = 0; i < 64; i++) {
+            cache.get(i); // 32 hits, 32 misses
+        }
+
+        List<ConcurrentLRUCache.CacheStats> segments = cache.getSegmentStats();
+        assertEquals(4, segments.size());
+
+        ConcurrentLRUCache.CacheStats total = cache.getStats();
+        assertEquals(32, total.getHitCount());
+        assertEquals(32, total.getMissCount());
+        assertEquals(32, total.getSize());
+        assertEquals(0.5, total.getHitRate(), 1e-9);
+    }
+
+    @Test
+    @Timeout(10)
+    void testConcurrentAccess() throws InterruptedException {
+        runConcurrentAccess(new ConcurrentLRUCache<>(100, 8));
+    }
+
+    @Test
+    @Timeout(10)
+    void testConcurrentAccessWithBufferedReads() throws InterruptedException {
+        runConcurrentAccess(new ConcurrentLRUCache<>(100, 2, true));
+    }
+
+    private void runConcurrentAccess(ConcurrentLRUCache<Integer, Integer> cache)
+            throws InterruptedException {
+        int numThreads = 8;
+        int opsPerThread = 10_000;
+
+        ExecutorService executor = Executors.newFixedThreadPool(numThreads);
+        CountDownLatch startLatch = new CountDownLatch(1);
+        CountDownLatch endLatch = new CountDownLatch(numThreads);
+
+        for (int t = 0; t < numThreads; t++) {
+            final int seed = t;
+            executor.submit(() -> {
+                try {
+                    startLatch.await();
+                    for (int i = 0; i < opsPerThread; i++) {
+                        int key = (i * 31 + seed) % 500;
+                        if (i % 4 == 0) {
+                            cache.put(key, key);
+                        } else {
+                            Integer value = cache.get(key);
+                            if (value != null && value != key) {
+                                throw new AssertionError("Wrong value for key " + key);
+                            }
+                        }
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } finally {
+                    endLatch.countDown();
+                }
+            });
+        }
+
+        startLatch.countDown();
+        assertTrue(endLatch.await(5, TimeUnit.SECONDS));
+        executor.shutdown();
+
+        assertTrue(cache.size() <= 100, "Size should never exceed capacity: " + cache.size());
+        assertEquals(cache.size(), cache.getStats().getSize(), "Map and lists must agree");
+    }
+
+    private static final Serializer<String> UTF8 = new Serializer<>() {
+            @Override
+            public byte[] serialize(String value) {
+                return value.getBytes(StandardCharsets.UTF_8);
+            }
+
+            @Override
+            public String deserialize(ByteBuffer bytes) {
+                return StandardCharsets.UTF_8.decode(bytes).toString();
+            }
+        };
+
+    private static final Serializer<Integer> INTS = new Serializer<>() {
+            @Override
+            public byte[] serialize(Integer value) {
+                return ByteBuffer.allocate(4).putInt(value).array();
+            }
+
+            @Override
+            public Integer deserialize(ByteBuffer bytes) {
+                return bytes.getInt();
+            }
+        };
+
+    private static String valueFor(int key, int length) {
+        StringBuilder sb = new StringBuilder(length);
+        while (sb.length() < length) {
+            sb.append(key).append(':');
+        }
+        return sb.substring(0, length);
+    }
+
+    private static void sleepQuietly(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
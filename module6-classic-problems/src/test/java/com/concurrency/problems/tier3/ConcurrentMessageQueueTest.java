@@ -0,0 +1,920 @@
+package com.concurrency.problems.tier3;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Tests for ConcurrentMessageQueue.
+ *
+ * Run with: mvn test -Dtest=ConcurrentMessageQueueTest
+ */
+class ConcurrentMessageQueueTest {
+
+    private static final Serializer<String> UTF8 = new Serializer<>() {
+            @Override
+            public byte[] serialize(String value) {
+                return value.getBytes(StandardCharsets.UTF_8);
+            }
+
+            @Override
+            public String deserialize(ByteBuffer bytes) {
+                return StandardCharsets.UTF_8.decode(bytes).toString();
+            }
+        };
+
+    @TempDir
+    Path logDirectory;
+
+    @Test
+    void testReceiveHidesUntilAcknowledged() {
+        ConcurrentMessageQueue<String> queue = new ConcurrentMessageQueue<>(5_000, 3);
+        String id = queue.send("hello");
+
+        ConcurrentMessageQueue.Message<String> message = queue.receive();
+
+        assertEquals(id, message.getMessageId());
+        assertEquals("hello", message.getBody());
+        assertEquals(1, message.getReceiveCount());
+        assertNull(queue.receive(), "An in-flight message is invisible");
+        assertEquals(1, queue.getInFlightCount());
+
+        assertTrue(queue.acknowledge(message.getReceiptHandle()));
+        assertFalse(queue.acknowledge(message.getReceiptHandle()), "Handles are single-use");
+        assertEquals(0, queue.getInFlightCount());
+        assertEquals(0, queue.getApproximateMessageCount());
+    }
+
+    @Test
+    void testTimedOutMessageIsRedeliveredWithNewHandle() {
+        ConcurrentMessageQueue<String> queue = new ConcurrentMessageQueue<>(50, 3);
+        queue.send("retry me");
+        ConcurrentMessageQueue.Message<String> first = queue.receive();
+
+        sleepQuietly(120);
+        ConcurrentMessageQueue.Message<String> second = queue.receive();
+
+        assertNotNull(second);
+        assertEquals(first.getMessageId(), second.getMessageId());
+        assertEquals(2, second.getReceiveCount());
+        assertNotEquals(first.getReceiptHandle(), second.getReceiptHandle());
+        assertFalse(queue.acknowledge(first.getReceiptHandle()), "Stale handle");
+        assertTrue(queue.acknowledge(second.getReceiptHandle()));
+    }
+
+    @Test
+    void testExtendVisibilityKeepsMessageHidden() {
+        ConcurrentMessageQueue<String> queue = new ConcurrentMessageQueue<>(100, 3);
+        queue.send("slow job");
+        ConcurrentMessageQueue.Message<String> message = queue.receive();
+
+        assertTrue(queue.extendVisibility(message.getReceiptHandle(), 500));
+        sleepQuietly(200);
+
+        assertNull(queue.receive());
+        assertTrue(queue.acknowledge(message.getReceiptHandle()));
+        assertFalse(queue.extendVisibility(message.getReceiptHandle(), 500));
+    }
+
+    @Test
+    void testTimingWheelRedeliversOnlyUnextendedMessages() {
+        ConcurrentMessageQueue<Integer> queue = new ConcurrentMessageQueue<>(150, 3, 4);
+        int count = 10_000;
+        for (int i = 0; i < count; i++) {
+            queue.send(i);
+        }
+        for (int i = 0; i < count; i++) {
+            ConcurrentMessageQueue.Message<Integer> message = queue.receive();
+            if (message.getBody() % 2 == 0) {
+                assertTrue(queue.extendVisibility(message.getReceiptHandle(), 10_000));
+            }
+        }
+        assertEquals(0, queue.getApproximateMessageCount());
+
+        sleepQuietly(400);
+
+        assertEquals(count / 2, queue.getApproximateMessageCount());
+        assertEquals(count / 2, queue.getInFlightCount());
+    }
+
+    @Test
+    void testAcknowledgedDeliveriesLeaveTheWheel() {
+        ConcurrentMessageQueue<Integer> queue = new ConcurrentMessageQueue<>(50, 3, 4);
+        for (int i = 0; i < 1_000; i++) {
+            queue.send(i);
+            assertTrue(queue.acknowledge(queue.receive().getReceiptHandle()));
+        }
+        assertEquals(1_000, queue.getWheelTimerCount(), "Acks don't touch the wheel");
+
+        sleepQuietly(150);
+        assertEquals(0, queue.getInFlightCount()); // Advances the wheels
+
+        assertEquals(0, queue.getWheelTimerCount());
+    }
+
+    @Test
+    void testPoisonMessageMovesToDeadLetters() {
+        ConcurrentMessageQueue<String> queue = new ConcurrentMessageQueue<>(20, 2);
+        queue.send("poison");
+
+        assertNotNull(queue.receive());
+        sleepQuietly(60);
+        assertNotNull(queue.receive());
+        sleepQuietly(60);
+
+        assertNull(queue.receive(), "Third receive would exceed maxReceiveCount");
+        assertEquals(1, queue.getDeadLetterCount());
+    }
+
+    @Test
+    void testRedriveMovesDeadLettersBackInBatches() {
+        ConcurrentMessageQueue<Integer> queue = new ConcurrentMessageQueue<>(20, 1, 4);
+        int count = 200;
+        for (int i = 0; i < count; i++) {
+            queue.send(i);
+        }
+        while (queue.receive() != null) {
+            // Receive every message once and never acknowledge
+        }
+        sleepQuietly(80);
+
+        assertEquals(0, queue.getApproximateMessageCount());
+        assertEquals(count, queue.getDeadLetterCount());
+        assertEquals(count, queue.getDeadLetteredCount());
+
+        assertEquals(150, queue.redrive(150));
+
+        assertEquals(50, queue.getDeadLetterCount());
+        assertEquals(150, queue.getApproximateMessageCount());
+        assertEquals(150, queue.getRedrivenCount());
+        assertTrue(queue.getRedriveRate() > 0);
+        ConcurrentMessageQueue.Message<Integer> redriven = queue.receive();
+        assertEquals(1, redriven.getReceiveCount(), "Receive count starts over");
+        assertTrue(queue.acknowledge(redriven.getReceiptHandle()));
+
+        assertEquals(50, queue.redrive(1_000), "Only what is left");
+        assertEquals(0, queue.getDeadLetterCount());
+    }
+
+    @Test
+    @Timeout(10)
+    void testRedriveDuringLiveTrafficLosesNothing() throws InterruptedException {
+        ConcurrentMessageQueue<Integer> queue = new ConcurrentMessageQueue<>(20, 1, 4);
+        int deadCount = 5_000;
+        for (int i = 0; i < deadCount; i++) {
+            queue.send(-1 - i);
+        }
+        while (queue.receive() != null) {
+            // Let them all time out into the DLQ
+        }
+        sleepQuietly(80);
+        assertEquals(deadCount, queue.getDeadLetterCount());
+
+        int liveCount = 5_000;
+        Set<Integer> received = ConcurrentHashMap.newKeySet();
+        Thread producer = new Thread(() -> {
+            for (int i = 0; i < liveCount; i++) {
+                queue.send(i);
+            }
+        });
+        Thread consumer = new Thread(() -> {
+            try {
+                while (received.size() < deadCount + liveCount) {
+                    ConcurrentMessageQueue.Message<Integer> message =
+                        queue.receive(10, TimeUnit.MILLISECONDS);
+                    if (message != null && queue.acknowledge(message.getReceiptHandle())) {
+                        received.add(message.getBody());
+                    }
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        producer.start();
+        consumer.start();
+        assertEquals(deadCount, queue.redrive(Integer.MAX_VALUE));
+        producer.join();
+        consumer.join(8_000);
+
+        assertEquals(deadCount + liveCount, received.size());
+    }
+
+    @Test
+    @Timeout(5)
+    void testLongPollWakesOnSend() throws InterruptedException {
+        ConcurrentMessageQueue<String> queue = new ConcurrentMessageQueue<>(5_000, 3);
+        new Thread(() -> {
+            sleepQuietly(100);
+            queue.send("late");
+        }).start();
+
+        ConcurrentMessageQueue.Message<String> message = queue.receive(3, TimeUnit.SECONDS);
+
+        assertNotNull(message);
+        assertEquals("late", message.getBody());
+        assertNull(queue.receive(50, TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    void testBatchSendReceiveAcknowledge() throws InterruptedException {
+        ConcurrentMessageQueue<Integer> queue = new ConcurrentMessageQueue<>(5_000, 3, 4);
+        List<Integer> bodies = new ArrayList<>();
+        for (int i = 0; i < 250; i++) {
+            bodies.add(i);
+        }
+
+        List<String> ids = queue.sendBatch(bodies);
+
+        assertEquals(250, ids.size());
+        assertEquals(250, Set.copyOf(ids).size());
+        assertEquals(250, queue.getApproximateMessageCount());
+
+        List<ConcurrentMessageQueue.Message<Integer>> batch = queue.receiveBatch(100, 0);
+        assertEquals(100, batch.size());
+        assertEquals(150, queue.getApproximateMessageCount());
+        assertEquals(100, queue.getInFlightCount());
+
+        List<String> handles = new ArrayList<>();
+        Set<Integer> received = ConcurrentHashMap.newKeySet();
+        for (ConcurrentMessageQueue.Message<Integer> message : batch) {
+            handles.add(message.getReceiptHandle());
+            received.add(message.getBody());
+        }
+        handles.add("no-such-handle");
+        handles.add(handles.get(0));
+
+        assertEquals(100, queue.acknowledgeBatch(handles), "Unknown and repeated handles are skipped");
+        assertEquals(0, queue.getInFlightCount());
+
+        List<ConcurrentMessageQueue.Message<Integer>> rest = queue.receiveBatch(1_000, 0);
+        assertEquals(150, rest.size(), "A batch never waits to fill up");
+        for (ConcurrentMessageQueue.Message<Integer> message : rest) {
+            assertTrue(received.add(message.getBody()));
+        }
+        assertEquals(250, received.size());
+        assertTrue(queue.receiveBatch(10, 0).isEmpty());
+        assertThrows(IllegalArgumentException.class, () -> queue.receiveBatch(0, 0));
+    }
+
+    @Test
+    void testBatchDeliveriesTimeOut() throws InterruptedException {
+        ConcurrentMessageQueue<Integer> queue = new ConcurrentMessageQueue<>(50, 3, 4);
+        queue.sendBatch(List.of(1, 2, 3, 4, 5));
+        assertEquals(5, queue.receiveBatch(10, 0).size());
+
+        sleepQuietly(150);
+
+        List<ConcurrentMessageQueue.Message<Integer>> redelivered = queue.receiveBatch(10, 0);
+        assertEquals(5, redelivered.size());
+        for (ConcurrentMessageQueue.Message<Integer> message : redelivered) {
+            assertEquals(2, message.getReceiveCount());
+        }
+    }
+
+    @Test
+    void testSendBatchToPriorityLaneAndGroup() throws InterruptedException {
+        ConcurrentMessageQueue<String> queue = new ConcurrentMessageQueue<>(5_000, 3, 4);
+        queue.sendBatch(List.of("h1", "h2"), ConcurrentMessageQueue.Priority.HIGH);
+        assertEquals(2, queue.getApproximateMessageCount(ConcurrentMessageQueue.Priority.HIGH));
+        assertThrows(IllegalArgumentException.class, () -> queue.sendBatch(List.of("x"), null));
+        queue.receiveBatch(10, 0).forEach(m -> queue.acknowledge(m.getReceiptHandle()));
+
+        queue.send("orders", "created");
+        List<String> ids = queue.sendBatch("orders", List.of("paid", "shipped"));
+        assertEquals(2, ids.size());
+        assertEquals(3, queue.getApproximateMessageCount(), "Two wait behind the group's head");
+
+        List<String> order = new ArrayList<>();
+        ConcurrentMessageQueue.Message<String> message;
+        while ((message = queue.receive()) != null) {
+            assertNull(queue.receive(), "One in flight per group");
+            order.add(message.getBody());
+            assertTrue(queue.acknowledge(message.getReceiptHandle()));
+        }
+        assertEquals(List.of("created", "paid", "shipped"), order);
+    }
+
+    @Test
+    void testAcknowledgeBatchReportsOnceToMetrics() throws InterruptedException {
+        ConcurrentMessageQueue<Integer> queue = new ConcurrentMessageQueue<>(5_000, 3, 4);
+        AtomicInteger callbacks = new AtomicInteger();
+        AtomicInteger acknowledged = new AtomicInteger();
+        queue.setMetricsListener(new ConcurrentMessageQueue.MetricsListener() {
+            @Override
+            public void onAcknowledge(long receiveToAckNanos) {
+                callbacks.incrementAndGet();
+                acknowledged.incrementAndGet();
+            }
+
+            @Override
+            public void onAcknowledgeBatch(long[] receiveToAckNanos) {
+                callbacks.incrementAndGet();
+                acknowledged.addAndGet(receiveToAckNanos.length);
+            }
+        });
+        queue.sendBatch(List.of(1, 2, 3, 4, 5));
+        List<String> handles = new ArrayList<>();
+        for (ConcurrentMessageQueue.Message<Integer> message : queue.receiveBatch(10, 0)) {
+            handles.add(message.getReceiptHandle());
+        }
+
+        assertEquals(5, queue.acknowledgeBatch(handles));
+        assertEquals(1, callbacks.get());
+        assertEquals(5, acknowledged.get());
+        assertEquals(0, queue.acknowledgeBatch(handles), "Already acknowledged: no callback");
+        assertEquals(1, callbacks.get());
+    }
+
+    @Test
+    @Timeout(5)
+    void testReceiveBatchLongPollWakesOnSendBatch() throws InterruptedException {
+        ConcurrentMessageQueue<String> queue = new ConcurrentMessageQueue<>(5_000, 3);
+        new Thread(() -> {
+            sleepQuietly(100);
+            queue.sendBatch(List.of("a", "b", "c"));
+        }).start();
+
+        List<ConcurrentMessageQueue.Message<String>> batch = queue.receiveBatch(10, 3_000);
+
+        assertEquals(3, batch.size());
+        assertTrue(queue.receiveBatch(10, 50).isEmpty());
+    }
+
+    @Test
+    void testMessageGroupDeliversInOrderOneAtATime() throws InterruptedException {
+        ConcurrentMessageQueue<String> queue = new ConcurrentMessageQueue<>(5_000, 3, 4);
+        queue.send("orders", "created");
+        queue.send("orders", "paid");
+        queue.send("orders", "shipped");
+        queue.send("refunds", "requested");
+        queue.send("plain");
+        assertEquals(5, queue.getApproximateMessageCount());
+
+        List<ConcurrentMessageQueue.Message<String>> heads = queue.receiveBatch(10, 0);
+
+        assertEquals(3, heads.size(), "One per group, plus the ungrouped message");
+        assertNull(queue.receive(), "The rest wait behind their group's head");
+        ConcurrentMessageQueue.Message<String> orders = null;
+        for (ConcurrentMessageQueue.Message<String> message : heads) {
+            if ("orders".equals(message.getGroupId())) {
+                orders = message;
+            }
+        }
+        assertEquals("created", orders.getBody());
+
+        assertTrue(queue.acknowledge(orders.getReceiptHandle()));
+        ConcurrentMessageQueue.Message<String> next = queue.receive();
+        assertEquals("paid", next.getBody());
+        assertTrue(queue.acknowledge(next.getReceiptHandle()));
+        assertEquals("shipped", queue.receive().getBody());
+        assertThrows(IllegalArgumentException.class, () -> queue.send(null, "no group"));
+    }
+
+    @Test
+    void testMessageGroupRedeliversHeadBeforeNext() {
+        ConcurrentMessageQueue<String> queue = new ConcurrentMessageQueue<>(50, 2, 4);
+        queue.send("g", "first");
+        queue.send("g", "second");
+        assertEquals("first", queue.receive().getBody());
+
+        sleepQuietly(120);
+        ConcurrentMessageQueue.Message<String> retry = queue.receive();
+        assertEquals("first", retry.getBody());
+        assertEquals(2, retry.getReceiveCount());
+        assertNull(queue.receive());
+
+        sleepQuietly(120);
+        assertEquals("second", queue.receive().getBody(), "A dead-lettered head releases the group");
+        assertEquals(1, queue.getDeadLetterCount());
+    }
+
+    @Test
+    @Timeout(10)
+    void testMessageGroupsKeepOrderUnderCompetingConsumers() throws InterruptedException {
+        ConcurrentMessageQueue<Integer> queue = new ConcurrentMessageQueue<>(30_000, 3, 4);
+        int groupCount = 16;
+        int perGroup = 500;
+        Map<String, List<Integer>> receivedByGroup = new ConcurrentHashMap<>();
+        AtomicInteger received = new AtomicInteger();
+        CountDownLatch done = new CountDownLatch(4 + 4);
+
+        for (int p = 0; p < 4; p++) {
+            final int firstGroup = p * (groupCount / 4);
+            new Thread(() -> {
+                for (int i = 0; i < perGroup; i++) {
+                    for (int g = firstGroup; g < firstGroup + groupCount / 4; g++) {
+                        queue.send("group-" + g, i);
+                    }
+                }
+                done.countDown();
+            }).start();
+        }
+        for (int c = 0; c < 4; c++) {
+            new Thread(() -> {
+                try {
+                    while (received.get() < groupCount * perGroup) {
+                        ConcurrentMessageQueue.Message<Integer> message =
+                            queue.receive(10, TimeUnit.MILLISECONDS);
+                        if (message == null) {
+                            continue;
+                        }
+                        // Safe without a lock: only one message per group is in flight
+                        receivedByGroup.computeIfAbsent(message.getGroupId(), g -> new ArrayList<>())
+                            .add(message.getBody());
+                        received.incrementAndGet();
+                        queue.acknowledge(message.getReceiptHandle());
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } finally {
+                    done.countDown();
+                }
+            }).start();
+        }
+
+        assertTrue(done.await(8, TimeUnit.SECONDS));
+        assertEquals(groupCount, receivedByGroup.size());
+        for (List<Integer> bodies : receivedByGroup.values()) {
+            assertEquals(perGroup, bodies.size());
+            for (int i = 0; i < perGroup; i++) {
+                assertEquals(i, bodies.get(i));
+            }
+        }
+        assertEquals(0, queue.getApproximateMessageCount());
+    }
+
+    @Test
+    void testDurableQueueRecoversMessageGroupsInOrder() throws Exception {
+        ConcurrentMessageQueue<String> queue = new ConcurrentMessageQueue<>(5_000, 3, 2, logDirectory, UTF8);
+        queue.send("g", "one");
+        queue.send("g", "two");
+        queue.send("g", "three");
+        queue.acknowledge(queue.receive().getReceiptHandle());
+        queue.close();
+
+        ConcurrentMessageQueue<String> restarted =
+            new ConcurrentMessageQueue<>(5_000, 3, 2, logDirectory, UTF8);
+
+        assertEquals(2, restarted.getApproximateMessageCount());
+        ConcurrentMessageQueue.Message<String> head = restarted.receive();
+        assertEquals("two", head.getBody());
+        assertEquals("g", head.getGroupId());
+        assertNull(restarted.receive());
+        restarted.acknowledge(head.getReceiptHandle());
+        assertEquals("three", restarted.receive().getBody());
+        restarted.close();
+    }
+
+    @Test
+    void testDurableQueueRecoversUnacknowledgedMessages() throws Exception {
+        ConcurrentMessageQueue<String> queue = new ConcurrentMessageQueue<>(5_000, 3, 2, logDirectory, UTF8);
+        queue.sendBatch(List.of("acked", "in-flight", "waiting"));
+        ConcurrentMessageQueue.Message<String> first = queue.receive();
+        ConcurrentMessageQueue.Message<String> second = queue.receive();
+        queue.acknowledge(first.getReceiptHandle());
+        queue.close();
+
+        ConcurrentMessageQueue<String> restarted =
+            new ConcurrentMessageQueue<>(5_000, 3, 2, logDirectory, UTF8);
+
+        assertEquals(2, restarted.getApproximateMessageCount());
+        Set<String> bodies = ConcurrentHashMap.newKeySet();
+        for (ConcurrentMessageQueue.Message<String> message : restarted.receiveBatch(10, 0)) {
+            bodies.add(message.getBody());
+            if (message.getMessageId().equals(second.getMessageId())) {
+                assertEquals(2, message.getReceiveCount(), "Receive count survives the restart");
+            } else {
+                assertEquals(1, message.getReceiveCount());
+            }
+        }
+        assertFalse(bodies.contains(first.getBody()), "Acknowledged before the restart");
+        assertEquals(2, bodies.size());
+        restarted.close();
+    }
+
+    @Test
+    void testDurableQueueRestoresDeadLettersAndRedrive() throws IOException {
+        ConcurrentMessageQueue<String> queue = new ConcurrentMessageQueue<>(20, 1, 2, logDirectory, UTF8);
+        queue.send("poison");
+        assertNotNull(queue.receive());
+        sleepQuietly(80);
+        assertEquals(1, queue.getDeadLetterCount());
+        queue.close();
+
+        ConcurrentMessageQueue<String> restarted = new ConcurrentMessageQueue<>(20, 1, 2, logDirectory, UTF8);
+        assertEquals(1, restarted.getDeadLetterCount());
+        assertEquals(0, restarted.getApproximateMessageCount());
+        assertEquals(1, restarted.redrive(10));
+        restarted.close();
+
+        ConcurrentMessageQueue<String> again = new ConcurrentMessageQueue<>(20, 1, 2, logDirectory, UTF8);
+        assertEquals(0, again.getDeadLetterCount());
+        ConcurrentMessageQueue.Message<String> message = again.receive();
+        assertEquals("poison", message.getBody());
+        assertEquals(1, message.getReceiveCount(), "Redrive reset the count");
+        again.close();
+    }
+
+    @Test
+    void testLogCompactionDeletesAcknowledgedSegments() throws Exception {
+        ConcurrentMessageQueue<String> queue =
+            new ConcurrentMessageQueue<>(5_000, 3, 2, logDirectory, UTF8, 4 << 10);
+        for (int i = 0; i < 500; i++) {
+            queue.send("message-" + i);
+        }
+        assertTrue(countFiles(logDirectory) > 5, "Small segments roll over");
+
+        List<ConcurrentMessageQueue.Message<String>> messages = queue.receiveBatch(500, 0);
+        ConcurrentMessageQueue.Message<String> pinned = messages.get(0);
+        List<String> handles = new ArrayList<>();
+        for (ConcurrentMessageQueue.Message<String> message : messages) {
+            if (message != pinned) {
+                handles.add(message.getReceiptHandle());
+            }
+        }
+        assertEquals(499, queue.acknowledgeBatch(handles)); // One log append for all ACKs
+        long pinnedSegments = countFiles(logDirectory);
+        queue.acknowledge(pinned.getReceiptHandle());
+
+        assertTrue(countFiles(logDirectory) < pinnedSegments,
+            "The oldest unacknowledged message held back compaction");
+        assertTrue(countFiles(logDirectory) <= 2);
+        queue.close();
+
+        ConcurrentMessageQueue<String> restarted =
+            new ConcurrentMessageQueue<>(5_000, 3, 2, logDirectory, UTF8, 4 << 10);
+        assertEquals(0, restarted.getApproximateMessageCount());
+        restarted.close();
+    }
+
+    @Test
+    @Timeout(20)
+    void testGroupCommitSharesSyncsAcrossProducers() throws Exception {
+        ConcurrentMessageQueue<String> queue = new ConcurrentMessageQueue<>(5_000, 3, 4, logDirectory, UTF8);
+        int producers = 8;
+        int perProducer = 250;
+        CountDownLatch done = new CountDownLatch(producers);
+        for (int p = 0; p < producers; p++) {
+            final int base = p * perProducer;
+            new Thread(() -> {
+                for (int i = 0; i < perProducer; i++) {
+                    queue.send("message-" + (base + i));
+                }
+                done.countDown();
+            }).start();
+        }
+
+        assertTrue(done.await(15, TimeUnit.SECONDS));
+        assertEquals(producers * perProducer, queue.getApproximateMessageCount());
+        assertTrue(queue.getLogSyncCount() < producers * perProducer,
+            "Concurrent sends share fsyncs: " + queue.getLogSyncCount());
+        queue.close();
+
+        ConcurrentMessageQueue<String> restarted =
+            new ConcurrentMessageQueue<>(5_000, 3, 4, logDirectory, UTF8);
+        assertEquals(producers * perProducer, restarted.getApproximateMessageCount());
+        restarted.close();
+    }
+
+    @Test
+    @Timeout(10)
+    void testLongPollHandsEachMessageToOneParkedConsumer() throws InterruptedException {
+        ConcurrentMessageQueue<Integer> queue = new ConcurrentMessageQueue<>(30_000, 3, 4);
+        int consumers = 50;
+        Set<Integer> received = ConcurrentHashMap.newKeySet();
+        AtomicInteger emptyReturns = new AtomicInteger();
+        CountDownLatch done = new CountDownLatch(consumers);
+        for (int c = 0; c < consumers; c++) {
+            new Thread(() -> {
+                try {
+                    ConcurrentMessageQueue.Message<Integer> message = queue.receive(8, TimeUnit.SECONDS);
+                    if (message == null) {
+                        emptyReturns.incrementAndGet();
+                    } else {
+                        received.add(message.getBody());
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } finally {
+                    done.countDown();
+                }
+            }).start();
+        }
+        sleepQuietly(200); // Let them all park
+
+        queue.send(0);
+        sleepQuietly(200);
+        assertEquals(1, received.size(), "One send wakes exactly one consumer");
+        assertEquals(consumers - 1, done.getCount());
+
+        for (int i = 1; i < consumers; i++) {
+            queue.send(i);
+        }
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        assertEquals(consumers, received.size());
+        assertEquals(0, emptyReturns.get());
+        assertEquals(0, queue.getApproximateMessageCount());
+    }
+
+    @Test
+    @Timeout(5)
+    void testParkedConsumerReceivesTimedOutDelivery() throws InterruptedException {
+        ConcurrentMessageQueue<String> queue = new ConcurrentMessageQueue<>(100, 3, 4);
+        queue.send("abandoned");
+        assertNotNull(queue.receive());
+
+        // Nobody else calls into the queue: the parked consumer must drive the timers
+        ConcurrentMessageQueue.Message<String> retry = queue.receive(3, TimeUnit.SECONDS);
+
+        assertNotNull(retry);
+        assertEquals(2, retry.getReceiveCount());
+    }
+
+    @Test
+    @Timeout(5)
+    void testInterruptedLongPollLosesNoMessage() throws InterruptedException {
+        ConcurrentMessageQueue<String> queue = new ConcurrentMessageQueue<>(5_000, 3);
+        AtomicInteger interrupted = new AtomicInteger();
+        Thread consumer = new Thread(() -> {
+            try {
+                queue.receive(10, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                interrupted.incrementAndGet();
+            }
+        });
+        consumer.start();
+        sleepQuietly(100);
+        consumer.interrupt();
+        consumer.join();
+
+        assertEquals(1, interrupted.get());
+        queue.send("after");
+        assertEquals("after", queue.receive().getBody(), "Not handed to the departed waiter");
+    }
+
+    @Test
+    void testSendDeduplicatedDropsRetries() {
+        ConcurrentMessageQueue<String> queue = new ConcurrentMessageQueue<>(5_000, 3);
+        String first = queue.sendDeduplicated("payment-42", "charge $10");
+
+        assertEquals(first, queue.sendDeduplicated("payment-42", "charge $10"));
+        assertEquals(first, queue.sendDeduplicated("payment-42", "something else"), "The id decides");
+        assertNotEquals(first, queue.sendDeduplicated("payment-43", "charge $10"));
+
+        String content = queue.sendDeduplicated("same body");
+        assertEquals(content, queue.sendDeduplicated("same body"));
+
+        assertEquals(3, queue.getApproximateMessageCount());
+        assertEquals(3, queue.getDuplicateCount());
+        assertThrows(IllegalArgumentException.class, () -> queue.sendDeduplicated(null, "x"));
+    }
+
+    @Test
+    void testDeduplicationWindowExpires() {
+        ConcurrentMessageQueue<String> queue = new ConcurrentMessageQueue<>(5_000, 3, 4, 100);
+        String first = queue.sendDeduplicated("retry", "body");
+        assertEquals(first, queue.sendDeduplicated("retry", "body"));
+
+        sleepQuietly(250);
+
+        assertNotEquals(first, queue.sendDeduplicated("retry", "body"));
+        assertEquals(2, queue.getApproximateMessageCount());
+    }
+
+    @Test
+    void testFailedDeduplicatedSendDoesNotSwallowTheRetry() throws Exception {
+        ConcurrentMessageQueue<String> queue =
+            new ConcurrentMessageQueue<>(5_000, 3, 2, logDirectory, UTF8, 4 << 10);
+        String oversized = "x".repeat(8 << 10); // Bigger than a whole log segment
+
+        assertThrows(IllegalArgumentException.class, () -> queue.sendDeduplicated("order-1", oversized));
+        assertEquals(0, queue.getApproximateMessageCount());
+
+        String retried = queue.sendDeduplicated("order-1", "fits");
+        assertEquals(1, queue.getApproximateMessageCount(), "The retry is sent, not dropped as a duplicate");
+        assertEquals(retried, queue.receive().getMessageId());
+        assertEquals(0, queue.getDuplicateCount());
+        queue.close();
+    }
+
+    @Test
+    void testContentDeduplicationHashesSerializedBody() throws Exception {
+        ConcurrentMessageQueue<String> queue = new ConcurrentMessageQueue<>(5_000, 3, 2, logDirectory, UTF8);
+        String first = queue.sendDeduplicated(new String("hello"));
+
+        assertEquals(first, queue.sendDeduplicated(new String("hello")));
+        assertNotEquals(first, queue.sendDeduplicated("hello!"));
+        assertEquals(2, queue.getApproximateMessageCount());
+        queue.close();
+    }
+
+    @Test
+    @Timeout(10)
+    void testConcurrentRetriesProduceOneMessageEach() throws InterruptedException {
+        ConcurrentMessageQueue<Integer> queue = new ConcurrentMessageQueue<>(30_000, 3, 4);
+        int producers = 8;
+        int ids = 2_000;
+        CountDownLatch done = new CountDownLatch(producers);
+        for (int p = 0; p < producers; p++) {
+            new Thread(() -> {
+                for (int i = 0; i < ids; i++) {
+                    queue.sendDeduplicated("request-" + i, i);
+                }
+                done.countDown();
+            }).start();
+        }
+
+        assertTrue(done.await(8, TimeUnit.SECONDS));
+        assertEquals(ids, queue.getApproximateMessageCount());
+        assertEquals((long) ids * (producers - 1), queue.getDuplicateCount());
+    }
+
+    @Test
+    void testPriorityLanesDrainWeightedFair() {
+        ConcurrentMessageQueue<Integer> queue = new ConcurrentMessageQueue<>(30_000, 3, 4);
+        for (int i = 0; i < 700; i++) {
+            queue.send(i, ConcurrentMessageQueue.Priority.LOW);
+            queue.send(i, ConcurrentMessageQueue.Priority.NORMAL);
+            queue.send(i, ConcurrentMessageQueue.Priority.HIGH);
+        }
+        assertEquals(700, queue.getApproximateMessageCount(ConcurrentMessageQueue.Priority.HIGH));
+        assertEquals(2_100, queue.getApproximateMessageCount());
+
+        Map<ConcurrentMessageQueue.Priority, Integer> counts = new ConcurrentHashMap<>();
+        for (int i = 0; i < 700; i++) {
+            counts.merge(queue.receive().getPriority(), 1, Integer::sum);
+        }
+
+        // Expected about 400 / 200 / 100 (weights 4:2:1)
+        int high = counts.getOrDefault(ConcurrentMessageQueue.Priority.HIGH, 0);
+        int normal = counts.getOrDefault(ConcurrentMessageQueue.Priority.NORMAL, 0);
+        int low = counts.getOrDefault(ConcurrentMessageQueue.Priority.LOW, 0);
+        assertTrue(high > normal && normal > low, counts.toString());
+        assertTrue(low > 50, "Low priority is not starved: " + counts);
+        assertEquals(700 - high, queue.getApproximateMessageCount(ConcurrentMessageQueue.Priority.HIGH));
+        assertEquals(700, queue.getInFlightCount());
+    }
+
+    @Test
+    void testPriorityFallsBackAndSurvivesRedelivery() throws InterruptedException {
+        ConcurrentMessageQueue<String> queue = new ConcurrentMessageQueue<>(50, 3, 4);
+        queue.send("bulk", ConcurrentMessageQueue.Priority.LOW);
+        queue.send("bulk too", ConcurrentMessageQueue.Priority.LOW);
+
+        ConcurrentMessageQueue.Message<String> message = queue.receive();
+        assertEquals(ConcurrentMessageQueue.Priority.LOW, message.getPriority(), "Other lanes are empty");
+        assertEquals(1, queue.receiveBatch(10, 0).size());
+
+        sleepQuietly(120);
+        assertEquals(2, queue.getApproximateMessageCount(ConcurrentMessageQueue.Priority.LOW));
+        assertEquals(0, queue.getApproximateMessageCount(ConcurrentMessageQueue.Priority.NORMAL));
+        assertEquals(ConcurrentMessageQueue.Priority.LOW, queue.receive().getPriority());
+        assertThrows(IllegalArgumentException.class, () -> queue.send("x", (ConcurrentMessageQueue.Priority) null));
+    }
+
+    @Test
+    void testDurableQueueRecoversPriorities() throws Exception {
+        ConcurrentMessageQueue<String> queue = new ConcurrentMessageQueue<>(5_000, 3, 2, logDirectory, UTF8);
+        queue.send("urgent", ConcurrentMessageQueue.Priority.HIGH);
+        queue.send("bulk", ConcurrentMessageQueue.Priority.LOW);
+        queue.close();
+
+        ConcurrentMessageQueue<String> restarted =
+            new ConcurrentMessageQueue<>(5_000, 3, 2, logDirectory, UTF8);
+        assertEquals(1, restarted.getApproximateMessageCount(ConcurrentMessageQueue.Priority.HIGH));
+        assertEquals(1, restarted.getApproximateMessageCount(ConcurrentMessageQueue.Priority.LOW));
+        restarted.close();
+    }
+
+    @Test
+    void testMetricsListenerSeesLatenciesAndRedeliveries() throws InterruptedException {
+        ConcurrentMessageQueue<String> queue = new ConcurrentMessageQueue<>(50, 2, 2);
+        QueueMetrics metrics = new QueueMetrics();
+        queue.setMetricsListener(metrics);
+        queue.send("a");
+        queue.sendBatch(List.of("b", "c"));
+        queue.sendDeduplicated("order-1", "d");
+        queue.sendDeduplicated("order-1", "d"); // Duplicate: not a send
+
+        sleepQuietly(5);
+        List<ConcurrentMessageQueue.Message<String>> batch = queue.receiveBatch(3, 0);
+        assertEquals(3, batch.size());
+        for (ConcurrentMessageQueue.Message<String> message : batch) {
+            assertTrue(queue.acknowledge(message.getReceiptHandle()));
+        }
+        assertNotNull(queue.receive()); // Never acknowledged
+
+        sleepQuietly(120);
+        assertNotNull(queue.receive(), "Redelivered after the timeout");
+        sleepQuietly(120);
+        assertEquals(1, queue.getDeadLetterCount());
+
+        assertEquals(4, metrics.getSentCount());
+        assertEquals(5, metrics.getReceivedCount());
+        assertEquals(1, metrics.getRedeliveredCount());
+        assertEquals(3, metrics.getAcknowledgedCount());
+        assertEquals(2, metrics.getTimedOutCount());
+        assertEquals(1, metrics.getDeadLetteredCount());
+        assertEquals(4, metrics.getSendToReceive().getCount(), "First deliveries only");
+        assertTrue(metrics.getSendToReceive().getValueAtPercentile(50) >= TimeUnit.MILLISECONDS.toNanos(5));
+        assertEquals(3, metrics.getReceiveToAck().getCount());
+        assertTrue(metrics.report(queue).contains("inFlight=0"));
+        assertThrows(IllegalArgumentException.class, () -> queue.setMetricsListener(null));
+    }
+
+    @Test
+    void testShardCountRoundedToPowerOfTwo() {
+        assertEquals(8, new ConcurrentMessageQueue<String>(1_000, 3, 5).getShardCount());
+        assertThrows(IllegalArgumentException.class, () -> new ConcurrentMessageQueue<String>(0, 3));
+    }
+
+    @Test
+    @Timeout(10)
+    void testCompetingConsumersReceiveEachMessageOnce() throws InterruptedException {
+        ConcurrentMessageQueue<Integer> queue = new ConcurrentMessageQueue<>(30_000, 3, 4);
+        int producers = 4;
+        int consumers = 4;
+        int perProducer = 5_000;
+        int total = producers * perProducer;
+        Set<Integer> received = ConcurrentHashMap.newKeySet();
+        AtomicInteger duplicates = new AtomicInteger();
+        AtomicInteger failedAcks = new AtomicInteger();
+        CountDownLatch done = new CountDownLatch(producers + consumers);
+
+        for (int p = 0; p < producers; p++) {
+            final int base = p * perProducer;
+            new Thread(() -> {
+                for (int i = 0; i < perProducer; i++) {
+                    queue.send(base + i);
+                }
+                done.countDown();
+            }).start();
+        }
+        for (int c = 0; c < consumers; c++) {
+            new Thread(() -> {
+                try {
+                    while (received.size() < total) {
+                        ConcurrentMessageQueue.Message<Integer> message =
+                            queue.receive(10, TimeUnit.MILLISECONDS);
+                        if (message == null) {
+                            continue;
+                        }
+                        if (!received.add(message.getBody())) {
+                            duplicates.incrementAndGet();
+                        }
+                        if (!queue.acknowledge(message.getReceiptHandle())) {
+                            failedAcks.incrementAndGet();
+                        }
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } finally {
+                    done.countDown();
+                }
+            }).start();
+        }
+
+        assertTrue(done.await(8, TimeUnit.SECONDS));
+        assertEquals(total, received.size());
+        assertEquals(0, duplicates.get());
+        assertEquals(0, failedAcks.get());
+        assertEquals(0, queue.getApproximateMessageCount());
+        assertEquals(0, queue.getInFlightCount());
+    }
+
+    private static long countFiles(Path directory) throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.count();
+        }
+    }
+
+    private static void sleepQuietly(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,95 @@
+package com.concurrency.problems.tier3;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
+
+/**
+ * Tests for DeduplicationWindow.
+ *
+ * Run with: mvn test -Dtest=DeduplicationWindowTest
+ */
+class DeduplicationWindowTest {
+
+    @Test
+    void testRemembersKeysForTheWindow() {
+        DeduplicationWindow window = new DeduplicationWindow(1_000, 10);
+
+        assertNull(window.putIfAbsent("order-1", "m1", 0));
+        assertEquals("m1", window.putIfAbsent("order-1", "m2", 500));
+        assertEquals("m1", window.putIfAbsent("order-1", "m3", 999));
+        assertNull(window.putIfAbsent("order-2", "m4", 999));
+        assertEquals(2, window.size(999));
+    }
+
+    @Test
+    void testExpiresWholeBucketsAfterTheWindow() {
+        DeduplicationWindow window = new DeduplicationWindow(1_000, 10);
+        for (int i = 0; i < 100; i++) {
+            window.putIfAbsent("early-" + i, "id", 50); // bucket [0, 100)
+        }
+        window.putIfAbsent("late", "id", 550);
+
+        assertEquals(101, window.size(1_000));
+        assertEquals(1, window.size(1_100), "The first bucket left the window at once");
+        assertNull(window.putIfAbsent("early-0", "again", 1_100));
+        assertEquals("id", window.putIfAbsent("late", "again", 1_100));
+        assertNull(window.putIfAbsent("late", "again", 1_600));
+    }
+
+    @Test
+    void testRemoveOnlyForgetsTheMatchingId() {
+        DeduplicationWindow window = new DeduplicationWindow(1_000, 10);
+        window.putIfAbsent("order-1", "m1", 0);
+
+        assertFalse(window.remove("order-1", "m2"), "Someone else's record stays");
+        assertTrue(window.remove("order-1", "m1"));
+        assertNull(window.putIfAbsent("order-1", "m3", 10));
+    }
+
+    @Test
+    void testRejectsInvalidWindow() {
+        assertThrows(IllegalArgumentException.class, () -> new DeduplicationWindow(0, 10));
+        assertThrows(IllegalArgumentException.class, () -> new DeduplicationWindow(1_000, 0));
+    }
+
+    @Test
+    @Timeout(10)
+    void testConcurrentInsertsOfOneKeyAdmitExactlyOne() throws InterruptedException {
+        DeduplicationWindow window = new DeduplicationWindow(TimeUnit.SECONDS.toNanos(60), 10);
+        int threads = 8;
+        int keys = 10_000;
+        AtomicInteger admitted = new AtomicInteger();
+        CountDownLatch start = new CountDownLatch(1);
+        CountDownLatch done = new CountDownLatch(threads);
+        for (int t = 0; t < threads; t++) {
+            new Thread(() -> {
+                try {
+                    start.await();
+                    String name = Thread.currentThread().getName();
+                    for (int k = 0; k < keys; k++) {
+                        if (window.putIfAbsent(k, name, System.nanoTime() & Long.MAX_VALUE) == null) {
+                            admitted.incrementAndGet();
+                        }
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } finally {
+                    done.countDown();
+                }
+            }).start();
+        }
+        start.countDown();
+
+        assertTrue(done.await(8, TimeUnit.SECONDS));
+        assertEquals(keys, admitted.get());
+    }
+}
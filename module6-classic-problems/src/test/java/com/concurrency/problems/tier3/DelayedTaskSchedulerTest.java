@@ -0,0 +1,289 @@
+package com.concurrency.problems.tier3;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
+
+/**
+ * Tests for DelayedTaskScheduler.
+ *
+ * Run with: mvn test -Dtest=DelayedTaskSchedulerTest
+ */
+class DelayedTaskSchedulerTest {
+
+    @Test
+    @Timeout(10)
+    void testHeapModeRunsTasksInDeadlineOrder() throws InterruptedException {
+        DelayedTaskScheduler scheduler = new DelayedTaskScheduler();
+        List<String> order = new CopyOnWriteArrayList<>();
+        CountDownLatch done = new CountDownLatch(3);
+        scheduler.schedule(() -> { order.add("c"); done.countDown(); }, 150, TimeUnit.MILLISECONDS);
+        scheduler.schedule(() -> { order.add("a"); done.countDown(); }, 10, TimeUnit.MILLISECONDS);
+        scheduler.schedule(() -> { order.add("b"); done.countDown(); }, 80, TimeUnit.MILLISECONDS);
+
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        assertEquals(List.of("a", "b", "c"), order);
+        scheduler.shutdown();
+    }
+
+    @Test
+    @Timeout(10)
+    void testWheelModeNeverFiresEarly() throws InterruptedException {
+        DelayedTaskScheduler scheduler = new DelayedTaskScheduler(1, TimeUnit.MILLISECONDS, 8);
+        int tasks = 200;
+        CountDownLatch done = new CountDownLatch(tasks);
+        AtomicLong early = new AtomicLong();
+        for (int i = 0; i < tasks; i++) {
+            // Up to 500ms spans three levels of an 8-slot, 1ms wheel: tasks must cascade
+            long delayMs = ThreadLocalRandom.current().nextLong(500);
+            long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(delayMs);
+            scheduler.schedule(() -> {
+                if (System.nanoTime() < deadline) {
+                    early.incrementAndGet();
+                }
+                done.countDown();
+            }, delayMs, TimeUnit.MILLISECONDS);
+        }
+
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        assertEquals(0, early.get());
+        assertEquals(0, scheduler.getPendingCount());
+        scheduler.shutdown();
+    }
+
+    @Test
+    @Timeout(10)
+    void testWheelModeFiresWithinATickOnOverflowLevels() throws InterruptedException {
+        // 1ms tick, 8 slots: level 1 covers 8-64ms, level 2 64-512ms, level 3 512-4096ms
+        DelayedTaskScheduler scheduler = new DelayedTaskScheduler(1, TimeUnit.MILLISECONDS, 8);
+        long[] delaysMs = {30, 45, 70, 300, 450, 700, 1_500};
+        CountDownLatch done = new CountDownLatch(delaysMs.length);
+        AtomicLong maxLatenessNanos = new AtomicLong();
+        for (long delayMs : delaysMs) {
+            long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(delayMs);
+            scheduler.schedule(() -> {
+                maxLatenessNanos.accumulateAndGet(System.nanoTime() - deadline, Math::max);
+                done.countDown();
+            }, delayMs, TimeUnit.MILLISECONDS);
+        }
+
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        // One tick plus scheduling jitter - not a whole 64ms or 512ms overflow span
+        long latenessMs = TimeUnit.NANOSECONDS.toMillis(maxLatenessNanos.get());
+        assertTrue(latenessMs < 30, "Fired " + latenessMs + "ms late");
+        scheduler.shutdown();
+    }
+
+    @Test
+    @Timeout(10)
+    void testWheelModeHeapHoldsOneEntryPerBucket() throws InterruptedException {
+        DelayedTaskScheduler scheduler = new DelayedTaskScheduler(10, TimeUnit.MILLISECONDS, 16);
+        CountDownLatch done = new CountDownLatch(10_000);
+        for (int i = 0; i < 10_000; i++) {
+            scheduler.schedule(done::countDown, 1_000 + i % 100, TimeUnit.MILLISECONDS);
+        }
+
+        assertEquals(10_000, scheduler.getPendingCount());
+        assertTrue(scheduler.getHeapSize() <= 2 * 16, "Heap size " + scheduler.getHeapSize());
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        scheduler.shutdown();
+    }
+
+    @Test
+    @Timeout(10)
+    void testWheelModeRunsPastDeadlinesAndScalesWithProducers() throws InterruptedException {
+        DelayedTaskScheduler scheduler = new DelayedTaskScheduler(1, TimeUnit.MILLISECONDS, 64);
+        int producers = 4;
+        int perProducer = 5_000;
+        CountDownLatch done = new CountDownLatch(producers * perProducer);
+        for (int p = 0; p < producers; p++) {
+            new Thread(() -> {
+                for (int i = 0; i < perProducer; i++) {
+                    scheduler.schedule(done::countDown, i % 3 == 0 ? 0 : i % 50, TimeUnit.MILLISECONDS);
+                }
+            }).start();
+        }
+
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        scheduler.shutdown();
+    }
+
+    @Test
+    @Timeout(10)
+    void testSlowTaskDoesNotDelayLaterTimersOnAnExecutor() throws InterruptedException {
+        ExecutorService pool = Executors.newFixedThreadPool(4);
+        DelayedTaskScheduler scheduler = new DelayedTaskScheduler(1, TimeUnit.MILLISECONDS, 64, pool);
+        CountDownLatch slowStarted = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch fastDone = new CountDownLatch(1);
+        scheduler.schedule(() -> {
+            slowStarted.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }, 10, TimeUnit.MILLISECONDS);
+        scheduler.schedule(fastDone::countDown, 50, TimeUnit.MILLISECONDS);
+
+        assertTrue(slowStarted.await(5, TimeUnit.SECONDS));
+        assertTrue(fastDone.await(1, TimeUnit.SECONDS), "Ran while the slow task still blocks");
+        release.countDown();
+
+        assertEquals(2, scheduler.getDispatchLateness().getCount());
+        assertEquals(2, scheduler.getStartLateness().getCount());
+        assertTrue(scheduler.getDispatchLateness().getMax() >= 0);
+        scheduler.shutdown();
+        pool.shutdown();
+    }
+
+    @Test
+    @Timeout(10)
+    void testInlineSchedulerRecordsLateness() throws InterruptedException {
+        DelayedTaskScheduler scheduler = new DelayedTaskScheduler();
+        CountDownLatch done = new CountDownLatch(2);
+        scheduler.schedule(() -> sleepQuietly(50), 0, TimeUnit.MILLISECONDS);
+        scheduler.schedule(done::countDown, 10, TimeUnit.MILLISECONDS);
+        scheduler.schedule(done::countDown, 20, TimeUnit.MILLISECONDS);
+
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        // Both waited behind the 50ms task on the single worker
+        assertTrue(scheduler.getStartLateness().getMax() >= TimeUnit.MILLISECONDS.toNanos(25),
+            "Lateness " + scheduler.getStartLateness());
+        scheduler.shutdown();
+    }
+
+    @Test
+    @Timeout(10)
+    void testRejectedTasksAreCountedAndWorkerSurvives() throws InterruptedException {
+        AtomicLong calls = new AtomicLong();
+        DelayedTaskScheduler scheduler = new DelayedTaskScheduler(task -> {
+            if (calls.incrementAndGet() == 1) {
+                throw new RejectedExecutionException("full");
+            }
+            task.run();
+        });
+        CountDownLatch done = new CountDownLatch(1);
+        scheduler.schedule(() -> { }, 0, TimeUnit.MILLISECONDS);
+        scheduler.schedule(done::countDown, 20, TimeUnit.MILLISECONDS);
+
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        assertEquals(1, scheduler.getRejectedCount());
+        assertThrows(IllegalArgumentException.class, () -> new DelayedTaskScheduler(null));
+        scheduler.shutdown();
+    }
+
+    @Test
+    @Timeout(10)
+    void testCancelledTasksNeverRun() throws InterruptedException {
+        for (DelayedTaskScheduler scheduler : List.of(new DelayedTaskScheduler(),
+                new DelayedTaskScheduler(1, TimeUnit.MILLISECONDS, 64))) {
+            AtomicLong ran = new AtomicLong();
+            DelayedTaskScheduler.ScheduledHandle cancelled =
+                scheduler.schedule(ran::incrementAndGet, 30, TimeUnit.MILLISECONDS);
+            CountDownLatch done = new CountDownLatch(1);
+            DelayedTaskScheduler.ScheduledHandle kept = scheduler.schedule(done::countDown, 60, TimeUnit.MILLISECONDS);
+
+            assertTrue(cancelled.cancel());
+            assertFalse(cancelled.cancel(), "Only the first cancel wins");
+            assertTrue(cancelled.isCancelled());
+            assertEquals(1, scheduler.getPendingCount());
+
+            assertTrue(done.await(5, TimeUnit.SECONDS));
+            sleepQuietly(20);
+            assertEquals(0, ran.get());
+            assertTrue(kept.isDone());
+            assertFalse(kept.cancel(), "Too late: already dispatched");
+            assertFalse(kept.isCancelled());
+            scheduler.shutdown();
+        }
+    }
+
+    @Test
+    @Timeout(10)
+    void testHeapModePurgesTombstones() {
+        DelayedTaskScheduler scheduler = new DelayedTaskScheduler();
+        List<DelayedTaskScheduler.ScheduledHandle> handles = new ArrayList<>();
+        for (int i = 0; i < 10_000; i++) {
+            handles.add(scheduler.schedule(() -> { }, 1, TimeUnit.HOURS));
+        }
+        // Cancel 95% - the heap must shrink instead of keeping every tombstone
+        for (int i = 0; i < handles.size(); i++) {
+            if (i % 20 != 0) {
+                handles.get(i).cancel();
+            }
+        }
+
+        assertEquals(500, scheduler.getPendingCount());
+        assertTrue(scheduler.getPurgeCount() > 0);
+        assertTrue(scheduler.getHeapSize() <= 2 * 500 + DelayedTaskScheduler.MIN_PURGE_TOMBSTONES,
+            "Heap size " + scheduler.getHeapSize());
+        scheduler.shutdown();
+    }
+
+    @Test
+    @Timeout(10)
+    void testWheelModeCancelUnlinksImmediately() {
+        DelayedTaskScheduler scheduler = new DelayedTaskScheduler(1, TimeUnit.MILLISECONDS, 64);
+        List<DelayedTaskScheduler.ScheduledHandle> handles = new ArrayList<>();
+        for (int i = 0; i < 10_000; i++) {
+            handles.add(scheduler.schedule(() -> { }, 1, TimeUnit.HOURS));
+        }
+        handles.forEach(DelayedTaskScheduler.ScheduledHandle::cancel);
+
+        assertEquals(0, scheduler.getPendingCount());
+        scheduler.shutdown();
+    }
+
+    @Test
+    @Timeout(10)
+    void testConcurrentCancelAndDispatchRunEachTaskAtMostOnce() throws InterruptedException {
+        DelayedTaskScheduler scheduler = new DelayedTaskScheduler();
+        int tasks = 2_000;
+        AtomicLong ran = new AtomicLong();
+        List<DelayedTaskScheduler.ScheduledHandle> handles = new ArrayList<>();
+        for (int i = 0; i < tasks; i++) {
+            handles.add(scheduler.schedule(ran::incrementAndGet, i % 20, TimeUnit.MILLISECONDS));
+        }
+        long cancelled = handles.stream().filter(DelayedTaskScheduler.ScheduledHandle::cancel).count();
+
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (scheduler.getPendingCount() > 0 && System.nanoTime() < deadline) {
+            sleepQuietly(10);
+        }
+        sleepQuietly(20);
+        assertEquals(tasks, cancelled + ran.get());
+        assertEquals(0, scheduler.getPendingCount());
+        scheduler.shutdown();
+    }
+
+    @Test
+    void testWheelModeRejectsBadConfiguration() {
+        assertThrows(IllegalArgumentException.class,
+            () -> new DelayedTaskScheduler(0, TimeUnit.MILLISECONDS, 64));
+        assertThrows(IllegalArgumentException.class,
+            () -> new DelayedTaskScheduler(1, TimeUnit.MILLISECONDS, 0));
+    }
+
+    private static void sleepQuietly(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
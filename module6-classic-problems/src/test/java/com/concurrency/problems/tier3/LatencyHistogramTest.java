@@ -0,0 +1,88 @@
+package com.concurrency.problems.tier3;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
+
+/**
+ * Tests for LatencyHistogram.
+ *
+ * Run with: mvn test -Dtest=LatencyHistogramTest
+ */
+class LatencyHistogramTest {
+
+    @Test
+    void testSmallValuesAreExact() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int value = 1; value <= 100; value++) {
+            histogram.record(value);
+        }
+
+        assertEquals(100, histogram.getCount());
+        assertEquals(50, histogram.getValueAtPercentile(50));
+        assertEquals(99, histogram.getValueAtPercentile(99));
+        assertEquals(100, histogram.getValueAtPercentile(100));
+        assertEquals(50.5, histogram.getMean(), 1e-9);
+        assertEquals(100, histogram.getMax());
+    }
+
+    @Test
+    void testLargeValuesWithinOnePercent() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (long micros = 1; micros <= 10_000; micros++) {
+            histogram.record(TimeUnit.MICROSECONDS.toNanos(micros));
+        }
+
+        long p99 = histogram.getValueAtPercentile(99);
+        long exact = TimeUnit.MICROSECONDS.toNanos(9_900);
+        assertTrue(p99 >= exact && p99 <= exact * 1.01, "p99 was " + p99);
+        assertEquals(TimeUnit.MICROSECONDS.toNanos(10_000), histogram.getValueAtPercentile(100));
+    }
+
+    @Test
+    void testBucketsAreContiguous() {
+        for (int index = 1; index < 2_000; index++) {
+            long low = LatencyHistogram.highestValueAt(index - 1) + 1;
+            assertEquals(index, LatencyHistogram.indexOf(low));
+            assertEquals(index, LatencyHistogram.indexOf(LatencyHistogram.highestValueAt(index)));
+        }
+        assertEquals(Long.MAX_VALUE,
+            LatencyHistogram.highestValueAt(LatencyHistogram.indexOf(Long.MAX_VALUE)));
+    }
+
+    @Test
+    void testEmptyAndInvalid() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        assertEquals(0, histogram.getValueAtPercentile(99));
+        assertEquals(0.0, histogram.getMean());
+        histogram.record(-5);
+        assertEquals(0, histogram.getMax());
+        assertThrows(IllegalArgumentException.class, () -> histogram.getValueAtPercentile(101));
+    }
+
+    @Test
+    @Timeout(10)
+    void testConcurrentRecordsAreNotLost() throws InterruptedException {
+        LatencyHistogram histogram = new LatencyHistogram();
+        int threads = 8;
+        int perThread = 50_000;
+        CountDownLatch done = new CountDownLatch(threads);
+        for (int t = 0; t < threads; t++) {
+            new Thread(() -> {
+                for (int i = 0; i < perThread; i++) {
+                    histogram.record(i % 1_000);
+                }
+                done.countDown();
+            }).start();
+        }
+
+        assertTrue(done.await(8, TimeUnit.SECONDS));
+        assertEquals((long) threads * perThread, histogram.getCount());
+        assertEquals(999, histogram.getMax());
+    }
+}
@@ -0,0 +1,131 @@
+package com.concurrency.problems.tier3;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
+
+/**
+ * Tests for the primitive long-keyed LongKeyLRUCache.
+ *
+ * Run with: mvn test -Dtest=LongKeyLRUCacheTest
+ */
+class LongKeyLRUCacheTest {
+
+    @Test
+    void testGetAndPut() {
+        LongKeyLRUCache<String> cache = new LongKeyLRUCache<>(3);
+
+        cache.put(1L, "one");
+        cache.put(-7L, "minus seven");
+        cache.put(1L, "uno");
+
+        assertEquals("uno", cache.get(1L));
+        assertEquals("minus seven", cache.get(-7L));
+        assertNull(cache.get(0L));
+        assertEquals(2, cache.size());
+    }
+
+    @Test
+    void testEvictsLeastRecentlyUsed() {
+        LongKeyLRUCache<String> cache = new LongKeyLRUCache<>(3);
+        cache.put(1L, "a");
+        cache.put(2L, "b");
+        cache.put(3L, "c");
+
+        cache.get(1L);     // 2 is now least recently used
+        cache.put(4L, "d");
+
+        assertNull(cache.get(2L));
+        assertEquals("a", cache.get(1L));
+        assertEquals("c", cache.get(3L));
+        assertEquals("d", cache.get(4L));
+        assertEquals(1, cache.getStats().getEvictionCount());
+    }
+
+    @Test
+    void testMatchesLinkedHashMapUnderChurn() {
+        // Constant eviction exercises backward-shift deletion in the index table
+        int capacity = 64;
+        LongKeyLRUCache<Long> cache = new LongKeyLRUCache<>(capacity);
+        Map<Long, Long> model = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Long, Long> eldest) {
+                return size() > capacity;
+            }
+        };
+
+        Random random = new Random(42);
+        for (int i = 0; i < 200_000; i++) {
+            long key = random.nextInt(256) * 1024L; // clustered keys collide
+            if (random.nextBoolean()) {
+                cache.put(key, (long) i);
+                model.put(key, (long) i);
+            } else {
+                assertEquals(model.get(key), cache.get(key), "key " + key + " at op " + i);
+            }
+        }
+        assertEquals(model.size(), cache.size());
+    }
+
+    @Test
+    void testSegmentCountRoundedToPowerOfTwo() {
+        assertEquals(8, new LongKeyLRUCache<String>(100, 5).getSegmentCount());
+        assertThrows(IllegalArgumentException.class, () -> new LongKeyLRUCache<String>(4, 8));
+        assertThrows(IllegalArgumentException.class, () -> new LongKeyLRUCache<String>(4).put(1L, null));
+    }
+
+    @Test
+    void testSegmentedCacheRespectsCapacity() {
+        LongKeyLRUCache<Long> cache = new LongKeyLRUCache<>(100, 8);
+        for (long i = 0; i < 10_000; i++) {
+            cache.put(i, i);
+        }
+
+        assertEquals(100, cache.size());
+        assertEquals(9_900, cache.getStats().getEvictionCount());
+    }
+
+    @Test
+    @Timeout(10)
+    void testConcurrentAccess() throws InterruptedException {
+        LongKeyLRUCache<Long> cache = new LongKeyLRUCache<>(100, 4);
+        int numThreads = 8;
+        AtomicInteger wrongValues = new AtomicInteger();
+        CountDownLatch endLatch = new CountDownLatch(numThreads);
+
+        for (int t = 0; t < numThreads; t++) {
+            final int seed = t;
+            new Thread(() -> {
+                try {
+                    for (int i = 0; i < 10_000; i++) {
+                        long key = (i * 31L + seed) % 500;
+                        if (i % 4 == 0) {
+                            cache.put(key, key);
+                        } else {
+                            Long value = cache.get(key);
+                            if (value != null && value != key) {
+                                wrongValues.incrementAndGet();
+                            }
+                        }
+                    }
+                } finally {
+                    endLatch.countDown();
+                }
+            }).start();
+        }
+
+        assertTrue(endLatch.await(5, TimeUnit.SECONDS));
+        assertEquals(0, wrongValues.get());
+        assertTrue(cache.size() <= 100, "Size should never exceed capacity: " + cache.size());
+    }
+}
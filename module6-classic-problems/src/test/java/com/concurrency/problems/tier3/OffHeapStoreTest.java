@@ -0,0 +1,66 @@
+package com.concurrency.problems.tier3;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests for the slab allocator behind ConcurrentLRUCache's off-heap mode.
+ *
+ * Run with: mvn test -Dtest=OffHeapStoreTest
+ */
+class OffHeapStoreTest {
+
+    @Test
+    void testReadsBackWhatWasWritten() {
+        OffHeapStore store = new OffHeapStore(64 << 10);
+        byte[] bytes = {1, 2, 3, 4, 5};
+
+        long handle = store.allocate(bytes);
+
+        assertEquals(5, OffHeapStore.lengthOf(handle));
+        assertArrayEquals(bytes, store.read(() -> handle));
+        assertNull(store.read(() -> OffHeapStore.NO_HANDLE));
+    }
+
+    @Test
+    void testFreedChunkIsReused() {
+        OffHeapStore store = new OffHeapStore(64 << 10);
+        long first = store.allocate(new byte[100]);
+        store.allocate(new byte[100]); // keep the slab assigned
+
+        store.free(first);
+        long second = store.allocate(new byte[90]); // same size class
+
+        assertEquals(first >>> 24, second >>> 24, "Same slab and offset");
+    }
+
+    @Test
+    void testFullStoreReturnsNoHandle() {
+        OffHeapStore store = new OffHeapStore(64 << 10); // 16 slabs of 4KB
+        int allocated = 0;
+        while (store.allocate(new byte[4096]) != OffHeapStore.NO_HANDLE) {
+            allocated++;
+        }
+
+        assertEquals(16, allocated);
+    }
+
+    @Test
+    void testEmptySlabChangesSizeClass() {
+        OffHeapStore store = new OffHeapStore(64 << 10);
+        long[] small = new long[16];
+        for (int i = 0; i < small.length; i++) {
+            small[i] = store.allocate(new byte[4000]); // one chunk per slab
+        }
+        assertEquals(OffHeapStore.NO_HANDLE, store.allocate(new byte[64]));
+
+        store.free(small[3]);
+        long tiny = store.allocate(new byte[64]);
+
+        assertNotEquals(OffHeapStore.NO_HANDLE, tiny);
+        assertEquals(small[3] >>> 48, tiny >>> 48, "The emptied slab was reassigned");
+    }
+}
@@ -0,0 +1,96 @@
+package com.concurrency.problems.tier3;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests for the hierarchical TimerWheel used by ConcurrentLRUCache expiry.
+ *
+ * Run with: mvn test -Dtest=TimerWheelTest
+ */
+class TimerWheelTest {
+
+    private static final class Entry extends TimerWheel.Timer {
+        final String name;
+
+        Entry(String name, long expiresAt) {
+            this.name = name;
+            this.expiresAt = expiresAt;
+        }
+    }
+
+    @Test
+    void testExpiresOnlyDueTimers() {
+        TimerWheel<Entry> wheel = new TimerWheel<>(0);
+        wheel.schedule(new Entry("2s", TimeUnit.SECONDS.toNanos(2)));
+        wheel.schedule(new Entry("10s", TimeUnit.SECONDS.toNanos(10)));
+
+        List<String> expired = new ArrayList<>();
+        wheel.advance(TimeUnit.SECONDS.toNanos(5), e -> expired.add(e.name));
+        assertEquals(List.of("2s"), expired);
+
+        wheel.advance(TimeUnit.SECONDS.toNanos(12), e -> expired.add(e.name));
+        assertEquals(List.of("2s", "10s"), expired);
+    }
+
+    @Test
+    void testCascadesFromCoarseLevels() {
+        TimerWheel<Entry> wheel = new TimerWheel<>(0);
+        wheel.schedule(new Entry("5min", TimeUnit.MINUTES.toNanos(5)));
+        wheel.schedule(new Entry("3h", TimeUnit.HOURS.toNanos(3)));
+        wheel.schedule(new Entry("10d", TimeUnit.DAYS.toNanos(10)));
+
+        List<String> expired = new ArrayList<>();
+        // Advance in 30s steps for 4 hours, as a busy cache would
+        for (long t = 0; t <= TimeUnit.HOURS.toNanos(4); t += TimeUnit.SECONDS.toNanos(30)) {
+            wheel.advance(t, e -> expired.add(e.name));
+        }
+        assertEquals(List.of("5min", "3h"), expired);
+
+        wheel.advance(TimeUnit.DAYS.toNanos(11), e -> expired.add(e.name));
+        assertEquals(List.of("5min", "3h", "10d"), expired);
+    }
+
+    @Test
+    void testFineResolutionExpiresWithinMilliseconds() {
+        TimerWheel<Entry> wheel = new TimerWheel<>(0, 20); // ~1ms ticks
+        wheel.schedule(new Entry("30ms", TimeUnit.MILLISECONDS.toNanos(30)));
+        wheel.schedule(new Entry("2s", TimeUnit.SECONDS.toNanos(2)));
+
+        List<String> expired = new ArrayList<>();
+        wheel.advance(TimeUnit.MILLISECONDS.toNanos(29), e -> expired.add(e.name));
+        assertTrue(expired.isEmpty());
+
+        wheel.advance(TimeUnit.MILLISECONDS.toNanos(32), e -> expired.add(e.name));
+        assertEquals(List.of("30ms"), expired);
+
+        wheel.advance(TimeUnit.SECONDS.toNanos(2) + TimeUnit.MILLISECONDS.toNanos(2),
+            e -> expired.add(e.name));
+        assertEquals(List.of("30ms", "2s"), expired);
+    }
+
+    @Test
+    void testDescheduleAndReschedule() {
+        TimerWheel<Entry> wheel = new TimerWheel<>(0);
+        Entry cancelled = new Entry("cancelled", TimeUnit.SECONDS.toNanos(2));
+        Entry extended = new Entry("extended", TimeUnit.SECONDS.toNanos(2));
+        wheel.schedule(cancelled);
+        wheel.schedule(extended);
+
+        wheel.deschedule(cancelled);
+        extended.expiresAt = TimeUnit.SECONDS.toNanos(20);
+        wheel.schedule(extended);
+
+        List<String> expired = new ArrayList<>();
+        wheel.advance(TimeUnit.SECONDS.toNanos(5), e -> expired.add(e.name));
+        assertTrue(expired.isEmpty());
+
+        wheel.advance(TimeUnit.SECONDS.toNanos(25), e -> expired.add(e.name));
+        assertEquals(List.of("extended"), expired);
+    }
+}
@@ -1,7 +1,9 @@
 package com.concurrency.projects.scheduler;
 
+import java.util.Objects;
 import java.util.concurrent.*;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
 import java.util.concurrent.locks.*;
 
 /**
@@ -21,16 +23,70 @@ import java.util.concurrent.locks.*;
  *   - Efficiently waiting for the next task
  *   - Handling new tasks with earlier deadlines
  *   - Cancellation without memory leaks
+ * 
+ * 🚀 WORK-STEALING MODE (new MiniTaskScheduler(n, true)):
+ *   In the default mode every worker waits on the same lock and Condition,
+ *   so all of them contend on every dequeue. In work-stealing mode:
+ *   - ONE timer thread owns the heap: it waits for the next deadline and
+ *     hands each due task to a worker's local deque (an idle worker if
+ *     there is one, else round-robin).
+ *   - Each worker takes from the head of its OWN deque - no shared lock.
+ *   - A worker with an empty deque STEALS from the tail of another
+ *     worker's deque (opposite end, like BDEQueue.popTop in the Herlihy &
+ *     Shavit ch16 WorkStealingThread), and parks only when every deque
+ *     is empty.
+ *   The heap lock is now touched only by the timer and by schedule().
+ * 
+ * 💡 THINK: Why not the book's BDEQueue? Its pushBottom() may only be
+ * called by the owner, but here the timer pushes into everyone's deque.
+ * ConcurrentLinkedDeque is lock-free at both ends for any thread.
+ * 
+ * 🚀 PERIODIC SCHEDULING:
+ *   - scheduleWithFixedDelay(): next run = END of this run + delay.
+ *     Slow runs push everything later; nothing is ever "missed".
+ *   - scheduleAtFixedRate(): next run = SCHEDULED time of this run + period.
+ *     Anchoring on the scheduled time (not "now") means no drift: a run
+ *     that starts 3 ms late does not make every later run 3 ms late too.
+ *   When the workers are saturated, a fixed-rate slot can already be in
+ *   the past when the task is re-queued - a MISSED period. CatchUpPolicy
+ *   decides what happens to missed slots:
+ *   - SKIP:     drop them all, resume at the next slot in the future
+ *   - RUN_ONCE: run once right away for the latest one, drop the rest
+ *   - RUN_ALL:  run every one of them back to back (the JDK's behaviour)
+ *   Missed and skipped periods are counted per task and per scheduler.
  */
 public class MiniTaskScheduler {
     
     private final PriorityBlockingQueue<ScheduledTask> taskQueue;
     private final Thread[] workers;
+    
+    // Work-stealing mode only (null in shared-queue mode)
+    private final Worker[] stealingWorkers;
+    private final Thread timer;
+    private final LongAdder steals = new LongAdder();
+    
+    private final LongAdder missedPeriods = new LongAdder();
+    private final LongAdder skippedPeriods = new LongAdder();
+    private int nextTarget; // Round-robin cursor, timer thread only
+    
     private final Lock lock = new ReentrantLock();
     private final Condition available = lock.newCondition();
     private volatile boolean running = true;
     private final AtomicLong taskIdGenerator = new AtomicLong(0);
     
+    /**
+     * What a fixed-rate task does with periods it missed because it ran
+     * (or waited for a worker) too long.
+     */
+    public enum CatchUpPolicy {
+        /** Drop every missed period and wait for the next future slot. */
+        SKIP,
+        /** Run once immediately, dropping the other missed periods. */
+        RUN_ONCE,
+        /** Run once per missed period, back to back. */
+        RUN_ALL
+    }
+    
     /**
      * A scheduled task.
      */
@@ -39,15 +95,23 @@ public class MiniTaskScheduler {
         private final Runnable command;
         private volatile long nextExecutionTime;
         private final long period; // 0 for one-shot tasks
+        private final boolean fixedRate;
+        private final CatchUpPolicy catchUp;
+        // Written only by the worker running the task - runs never overlap
+        private volatile long missed;
+        private volatile long skipped;
         private volatile boolean cancelled = false;
         private volatile boolean done = false;
         private final CountDownLatch completionLatch = new CountDownLatch(1);
         
-        ScheduledTask(Runnable command, long delayNanos, long periodNanos) {
+        ScheduledTask(Runnable command, long delayNanos, long periodNanos,
+                      boolean fixedRate, CatchUpPolicy catchUp) {
             this.id = taskIdGenerator.incrementAndGet();
             this.command = command;
             this.nextExecutionTime = System.nanoTime() + delayNanos;
             this.period = periodNanos;
+            this.fixedRate = fixedRate;
+            this.catchUp = catchUp;
         }
         
         void run() {
@@ -61,7 +125,7 @@ public class MiniTaskScheduler {
             
             if (period > 0 && !cancelled) {
                 // Reschedule periodic task
-                nextExecutionTime = System.nanoTime() + period;
+                nextExecutionTime = fixedRate ? nextFixedRateTime() : System.nanoTime() + period;
                 taskQueue.add(this);
                 signalAvailable();
             } else {
@@ -70,10 +134,53 @@ public class MiniTaskScheduler {
             }
         }
         
+        /**
+         * Next slot on the fixed-rate grid, after applying the catch-up
+         * policy if that slot has already passed.
+         * 
+         * 💡 THINK: Under RUN_ALL only the very next slot is counted as
+         * missed here; each later one is counted when IT is re-queued, so
+         * no slot is counted twice.
+         */
+        private long nextFixedRateTime() {
+            long next = nextExecutionTime + period;
+            long lateBy = System.nanoTime() - next;
+            if (lateBy < 0) {
+                return next; // On cadence
+            }
+            
+            long behind = catchUp == CatchUpPolicy.RUN_ALL ? 1 : lateBy / period + 1;
+            long drop = switch (catchUp) {
+                case SKIP -> behind;         // Next slot after "now"
+                case RUN_ONCE -> behind - 1; // Latest past slot: runs right away
+                case RUN_ALL -> 0;
+            };
+            missed += behind;
+            skipped += drop;
+            missedPeriods.add(behind);
+            skippedPeriods.add(drop);
+            return next + drop * period;
+        }
+        
         long getDelay() {
             return nextExecutionTime - System.nanoTime();
         }
         
+        /**
+         * Returns how many fixed-rate periods were already due when this
+         * task was re-queued.
+         */
+        public long getMissedPeriods() {
+            return missed;
+        }
+        
+        /**
+         * Returns how many missed periods the catch-up policy dropped.
+         */
+        public long getSkippedPeriods() {
+            return skipped;
+        }
+        
         @Override
         public int compareTo(ScheduledTask other) {
             return Long.compare(this.nextExecutionTime, other.nextExecutionTime);
@@ -113,41 +220,176 @@ public class MiniTaskScheduler {
         }
     }
     
+    /**
+     * A work-stealing worker: its local deque of ready tasks plus an idle
+     * flag the timer uses to pick whom to hand the next task to.
+     */
+    private final class Worker implements Runnable {
+        private final int index;
+        private final ConcurrentLinkedDeque<ScheduledTask> ready = new ConcurrentLinkedDeque<>();
+        private volatile boolean idle;
+        private Thread thread;
+        
+        Worker(int index) {
+            this.index = index;
+        }
+        
+        @Override
+        public void run() {
+            while (running) {
+                ScheduledTask task = ready.pollFirst();
+                if (task == null) {
+                    task = steal();
+                }
+                if (task == null) {
+                    // ⚠️ CRITICAL: Announce idle, THEN re-check. A task pushed
+                    // after the re-check comes with an unpark(), and a permit
+                    // granted before park() makes park() return at once.
+                    idle = true;
+                    task = ready.pollFirst();
+                    if (task == null) {
+                        task = steal();
+                    }
+                    if (task == null) {
+                        LockSupport.park(this);
+                        idle = false;
+                        continue;
+                    }
+                    idle = false;
+                }
+                task.run();
+            }
+        }
+        
+        /**
+         * Scans every other deque once, starting at a random victim.
+         */
+        private ScheduledTask steal() {
+            int n = stealingWorkers.length;
+            int start = ThreadLocalRandom.current().nextInt(n);
+            for (int i = 0; i < n; i++) {
+                Worker victim = stealingWorkers[(start + i) % n];
+                if (victim == this) continue;
+                ScheduledTask task = victim.ready.pollLast();
+                if (task != null) {
+                    steals.increment();
+                    return task;
+                }
+            }
+            return null;
+        }
+    }
+    
     /**
      * Creates a scheduler with the specified number of worker threads.
      */
     public MiniTaskScheduler(int numWorkers) {
+        this(numWorkers, false);
+    }
+    
+    /**
+     * Creates a scheduler, optionally in work-stealing mode.
+     * 
+     * @param workStealing true to give each worker its own deque of ready
+     *                     tasks, fed by a single timer thread
+     */
+    public MiniTaskScheduler(int numWorkers, boolean workStealing) {
+        if (numWorkers <= 0) {
+            throw new IllegalArgumentException("numWorkers must be positive");
+        }
         this.taskQueue = new PriorityBlockingQueue<>();
         this.workers = new Thread[numWorkers];
         
+        if (!workStealing) {
+            this.stealingWorkers = null;
+            this.timer = null;
+            for (int i = 0; i < numWorkers; i++) {
+                workers[i] = new Thread(this::workerLoop, "Scheduler-Worker-" + i);
+                workers[i].start();
+            }
+            return;
+        }
+        
+        this.stealingWorkers = new Worker[numWorkers];
         for (int i = 0; i < numWorkers; i++) {
-            workers[i] = new Thread(this::workerLoop, "Scheduler-Worker-" + i);
-            workers[i].start();
+            stealingWorkers[i] = new Worker(i);
+            workers[i] = new Thread(stealingWorkers[i], "Scheduler-Worker-" + i);
+            stealingWorkers[i].thread = workers[i];
+        }
+        // Start only once the array is complete - steal() reads all of it
+        for (Thread worker : workers) {
+            worker.start();
         }
+        this.timer = new Thread(this::timerLoop, "Scheduler-Timer");
+        timer.start();
     }
     
     /**
      * TODO: Schedule a one-shot task with delay.
      */
     public ScheduledTask schedule(Runnable command, long delay, TimeUnit unit) {
-        ScheduledTask task = new ScheduledTask(command, unit.toNanos(delay), 0);
-        taskQueue.add(task);
-        signalAvailable();
-        return task;
+        ScheduledTask task = new ScheduledTask(command, unit.toNanos(delay), 0, false, null);
+        return enqueue(task);
     }
     
     /**
      * TODO: Schedule a periodic task.
+     * 
+     * Runs every missed period (CatchUpPolicy.RUN_ALL), like
+     * ScheduledThreadPoolExecutor.
      */
     public ScheduledTask scheduleAtFixedRate(Runnable command, 
                                               long initialDelay, 
                                               long period, 
                                               TimeUnit unit) {
+        return scheduleAtFixedRate(command, initialDelay, period, unit, CatchUpPolicy.RUN_ALL);
+    }
+    
+    /**
+     * Schedules a task on a fixed-rate grid: initialDelay, +period,
+     * +2*period, ... regardless of how long each run takes.
+     * 
+     * @param catchUp what to do with periods missed under load
+     */
+    public ScheduledTask scheduleAtFixedRate(Runnable command, 
+                                              long initialDelay, 
+                                              long period, 
+                                              TimeUnit unit,
+                                              CatchUpPolicy catchUp) {
+        if (period <= 0) {
+            throw new IllegalArgumentException("period must be positive");
+        }
+        ScheduledTask task = new ScheduledTask(
+            command, 
+            unit.toNanos(initialDelay), 
+            unit.toNanos(period),
+            true,
+            Objects.requireNonNull(catchUp)
+        );
+        return enqueue(task);
+    }
+    
+    /**
+     * Schedules a task that runs again delay after each run finishes.
+     */
+    public ScheduledTask scheduleWithFixedDelay(Runnable command, 
+                                                 long initialDelay, 
+                                                 long delay, 
+                                                 TimeUnit unit) {
+        if (delay <= 0) {
+            throw new IllegalArgumentException("delay must be positive");
+        }
         ScheduledTask task = new ScheduledTask(
             command, 
             unit.toNanos(initialDelay), 
-            unit.toNanos(period)
+            unit.toNanos(delay),
+            false,
+            null
         );
+        return enqueue(task);
+    }
+    
+    private ScheduledTask enqueue(ScheduledTask task) {
         taskQueue.add(task);
         signalAvailable();
         return task;
@@ -203,6 +445,61 @@ public class MiniTaskScheduler {
         }
     }
     
+    /**
+     * Work-stealing mode: the only thread waiting on the heap. Same wait
+     * pattern as workerLoop(), but due tasks are handed off, not run.
+     */
+    private void timerLoop() {
+        lock.lock();
+        try {
+            while (running) {
+                ScheduledTask task = taskQueue.peek();
+                if (task == null) {
+                    available.await();
+                    continue;
+                }
+                
+                long delay = task.getDelay();
+                if (delay > 0) {
+                    available.awaitNanos(delay);
+                    continue;
+                }
+                
+                taskQueue.poll();
+                if (!task.cancelled) {
+                    handOff(task);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            lock.unlock();
+        }
+    }
+    
+    /**
+     * Pushes a due task to an idle worker's deque if one is idle, else to
+     * the next worker round-robin (an idle thief will take it from there).
+     */
+    private void handOff(ScheduledTask task) {
+        int n = stealingWorkers.length;
+        Worker target = null;
+        for (int i = 0; i < n; i++) {
+            Worker candidate = stealingWorkers[(nextTarget + i) % n];
+            if (candidate.idle) {
+                target = candidate;
+                break;
+            }
+        }
+        if (target == null) {
+            target = stealingWorkers[nextTarget % n];
+        }
+        nextTarget = (target.index + 1) % n;
+        
+        target.ready.offerLast(task);
+        LockSupport.unpark(target.thread);
+    }
+    
     private void signalAvailable() {
         lock.lock();
         try {
@@ -219,6 +516,14 @@ public class MiniTaskScheduler {
         running = false;
         signalAvailable();
         
+        if (timer != null) {
+            timer.interrupt();
+            try {
+                timer.join(1000);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
         for (Thread worker : workers) {
             worker.interrupt();
             try {
@@ -229,6 +534,44 @@ public class MiniTaskScheduler {
         }
     }
     
+    /**
+     * Returns true once shutdown() has stopped every worker (and the timer).
+     */
+    public boolean isTerminated() {
+        if (running || (timer != null && timer.isAlive())) {
+            return false;
+        }
+        for (Thread worker : workers) {
+            if (worker.isAlive()) {
+                return false;
+            }
+        }
+        return true;
+    }
+    
+    /**
+     * Returns how many tasks idle workers stole from another worker's
+     * deque (always 0 in shared-queue mode).
+     */
+    public long getStealCount() {
+        return steals.sum();
+    }
+    
+    /**
+     * Returns how many fixed-rate periods, across all tasks, were already
+     * due when their task was re-queued.
+     */
+    public long getMissedPeriodCount() {
+        return missedPeriods.sum();
+    }
+    
+    /**
+     * Returns how many missed periods the catch-up policies dropped.
+     */
+    public long getSkippedPeriodCount() {
+        return skippedPeriods.sum();
+    }
+    
     /**
      * Example usage.
      */
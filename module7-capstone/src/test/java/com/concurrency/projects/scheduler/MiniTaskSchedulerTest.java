@@ -0,0 +1,217 @@
+package com.concurrency.projects.scheduler;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
+
+/**
+ * Tests for MiniTaskScheduler, in both shared-queue and work-stealing mode.
+ *
+ * Run with: mvn test -Dtest=MiniTaskSchedulerTest
+ */
+class MiniTaskSchedulerTest {
+
+    private static final boolean[] MODES = {false, true}; // workStealing
+
+    @Test
+    @Timeout(20)
+    void testEveryTaskRunsOnceWithManyWorkers() throws InterruptedException {
+        for (boolean workStealing : MODES) {
+            MiniTaskScheduler scheduler = new MiniTaskScheduler(4, workStealing);
+            int tasks = 20_000;
+            CountDownLatch done = new CountDownLatch(tasks);
+            AtomicInteger runs = new AtomicInteger();
+            for (int i = 0; i < tasks; i++) {
+                scheduler.schedule(() -> {
+                    // A few slow tasks leave work behind in busy workers' deques
+                    if (ThreadLocalRandom.current().nextInt(100) == 0) {
+                        sleepQuietly(1);
+                    }
+                    runs.incrementAndGet();
+                    done.countDown();
+                }, i % 20, TimeUnit.MILLISECONDS);
+            }
+
+            assertTrue(done.await(10, TimeUnit.SECONDS), "Lost tasks, work stealing: " + workStealing);
+            sleepQuietly(20);
+            assertEquals(tasks, runs.get(), "Each task runs exactly once");
+            scheduler.shutdown();
+        }
+    }
+
+    @Test
+    @Timeout(20)
+    void testNoLostWakeupWhenAllWorkersAreParked() throws InterruptedException {
+        MiniTaskScheduler scheduler = new MiniTaskScheduler(4, true);
+        for (int i = 0; i < 200; i++) {
+            // Let every worker find nothing and park, then hand out one task
+            if (i % 10 == 0) {
+                sleepQuietly(5);
+            }
+            CountDownLatch ran = new CountDownLatch(1);
+            scheduler.schedule(ran::countDown, 0, TimeUnit.MILLISECONDS);
+            assertTrue(ran.await(2, TimeUnit.SECONDS), "Task " + i + " was never picked up");
+        }
+        scheduler.shutdown();
+    }
+
+    @Test
+    @Timeout(10)
+    void testCancelledTaskIsNotRun() throws Exception {
+        for (boolean workStealing : MODES) {
+            MiniTaskScheduler scheduler = new MiniTaskScheduler(2, workStealing);
+            AtomicInteger runs = new AtomicInteger();
+            MiniTaskScheduler.ScheduledTask cancelled =
+                scheduler.schedule(runs::incrementAndGet, 50, TimeUnit.MILLISECONDS);
+            MiniTaskScheduler.ScheduledTask kept = scheduler.schedule(() -> { }, 100, TimeUnit.MILLISECONDS);
+
+            assertTrue(cancelled.cancel(false));
+            assertTrue(cancelled.isCancelled());
+            kept.get(5, TimeUnit.SECONDS);
+            sleepQuietly(20);
+
+            assertEquals(0, runs.get());
+            assertTrue(kept.isDone());
+            assertFalse(kept.isCancelled());
+            scheduler.shutdown();
+        }
+    }
+
+    @Test
+    @Timeout(10)
+    void testShutdownJoinsTimerAndWorkers() throws InterruptedException {
+        for (boolean workStealing : MODES) {
+            MiniTaskScheduler scheduler = new MiniTaskScheduler(4, workStealing);
+            CountDownLatch ran = new CountDownLatch(1);
+            scheduler.schedule(ran::countDown, 0, TimeUnit.MILLISECONDS);
+            scheduler.schedule(() -> { }, 1, TimeUnit.HOURS); // Timer is waiting on this one
+            assertTrue(ran.await(5, TimeUnit.SECONDS));
+            assertFalse(scheduler.isTerminated());
+
+            scheduler.shutdown();
+
+            assertTrue(scheduler.isTerminated(), "Work stealing: " + workStealing);
+        }
+    }
+
+    @Test
+    @Timeout(10)
+    void testCatchUpPolicies() throws InterruptedException {
+        long period = TimeUnit.MILLISECONDS.toNanos(40);
+        for (MiniTaskScheduler.CatchUpPolicy policy : MiniTaskScheduler.CatchUpPolicy.values()) {
+            MiniTaskScheduler scheduler = new MiniTaskScheduler(2);
+            List<Long> starts = new CopyOnWriteArrayList<>();
+            CountDownLatch sixRuns = new CountDownLatch(6);
+            long base = System.nanoTime();
+            MiniTaskScheduler.ScheduledTask task = scheduler.scheduleAtFixedRate(() -> {
+                starts.add(System.nanoTime() - base);
+                if (starts.size() == 1) {
+                    // Stall until 4.5 periods in: the slots at 1-4 periods are missed
+                    sleepQuietly(TimeUnit.NANOSECONDS.toMillis(base + period * 9 / 2 - System.nanoTime()));
+                }
+                sixRuns.countDown();
+            }, 0, 40, TimeUnit.MILLISECONDS, policy);
+
+            assertTrue(sixRuns.await(5, TimeUnit.SECONDS));
+            task.cancel(false);
+            scheduler.shutdown();
+
+            // Index of the first run back on the grid (the slot at 5 periods)
+            int expectedFirstOnGrid = switch (policy) {
+                case SKIP -> 1;     // Nothing extra
+                case RUN_ONCE -> 2; // One catch-up run
+                case RUN_ALL -> 5;  // One run per missed slot
+            };
+            for (int i = 1; i < expectedFirstOnGrid; i++) {
+                assertTrue(starts.get(i) < 5 * period, policy + ": run " + i + " should catch up");
+            }
+            assertTrue(starts.get(expectedFirstOnGrid) >= 5 * period, policy + ": " + starts);
+
+            assertEquals(4, task.getMissedPeriods(), policy.toString());
+            assertEquals(4 - (expectedFirstOnGrid - 1), task.getSkippedPeriods(), policy.toString());
+            assertEquals(task.getMissedPeriods(), scheduler.getMissedPeriodCount());
+            assertEquals(task.getSkippedPeriods(), scheduler.getSkippedPeriodCount());
+        }
+    }
+
+    @Test
+    @Timeout(10)
+    void testFixedRateStaysOnGrid() throws InterruptedException {
+        MiniTaskScheduler scheduler = new MiniTaskScheduler(2);
+        long initialDelay = TimeUnit.MILLISECONDS.toNanos(30);
+        long period = TimeUnit.MILLISECONDS.toNanos(20);
+        List<Long> starts = new CopyOnWriteArrayList<>();
+        CountDownLatch done = new CountDownLatch(10);
+        long base = System.nanoTime();
+        MiniTaskScheduler.ScheduledTask task = scheduler.scheduleAtFixedRate(() -> {
+            starts.add(System.nanoTime() - base);
+            sleepQuietly(5); // Would add up to 45ms of drift if the grid followed run ends
+            done.countDown();
+        }, 30, 20, TimeUnit.MILLISECONDS);
+
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        task.cancel(false);
+        scheduler.shutdown();
+
+        for (int k = 0; k < 10; k++) {
+            long slot = initialDelay + k * period;
+            long lateMs = TimeUnit.NANOSECONDS.toMillis(starts.get(k) - slot);
+            assertTrue(starts.get(k) >= slot, "Run " + k + " started early");
+            assertTrue(lateMs < 15, "Run " + k + " started " + lateMs + "ms late");
+        }
+        assertEquals(0, task.getMissedPeriods());
+    }
+
+    @Test
+    @Timeout(10)
+    void testFixedDelayMeasuresFromEndOfPreviousRun() throws InterruptedException {
+        MiniTaskScheduler scheduler = new MiniTaskScheduler(2);
+        long delay = TimeUnit.MILLISECONDS.toNanos(20);
+        List<Long> starts = new CopyOnWriteArrayList<>();
+        List<Long> ends = new CopyOnWriteArrayList<>();
+        CountDownLatch done = new CountDownLatch(5);
+        MiniTaskScheduler.ScheduledTask task = scheduler.scheduleWithFixedDelay(() -> {
+            starts.add(System.nanoTime());
+            sleepQuietly(15);
+            ends.add(System.nanoTime());
+            done.countDown();
+        }, 0, 20, TimeUnit.MILLISECONDS);
+
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        task.cancel(false);
+        scheduler.shutdown();
+
+        for (int k = 1; k < 5; k++) {
+            assertTrue(starts.get(k) - ends.get(k - 1) >= delay, "Run " + k + " started too soon");
+        }
+        assertEquals(0, task.getMissedPeriods());
+    }
+
+    @Test
+    void testPeriodicSchedulingRejectsNonPositivePeriod() {
+        MiniTaskScheduler scheduler = new MiniTaskScheduler(1);
+        assertThrows(IllegalArgumentException.class,
+            () -> scheduler.scheduleAtFixedRate(() -> { }, 0, 0, TimeUnit.MILLISECONDS));
+        assertThrows(IllegalArgumentException.class,
+            () -> scheduler.scheduleWithFixedDelay(() -> { }, 0, -1, TimeUnit.MILLISECONDS));
+        scheduler.shutdown();
+    }
+
+    private static void sleepQuietly(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}